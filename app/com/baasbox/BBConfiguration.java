@@ -30,6 +30,38 @@ public class BBConfiguration implements IBBConfigurationKeys {
 	public static Configuration configuration = Play.application().configuration();
 	private static Boolean computeMetrics;
 	private static Boolean pushMock;;
+	private static Boolean connectionPoolEnabled;
+	private static Integer connectionPoolMaxIdlePerUser;
+	private static Integer connectionPoolMaxUsers;
+	private static Integer connectionPoolIdleTimeout;
+	private static Integer scriptEnginePoolSize;
+	private static Integer scriptEnginePoolTimeout;
+	private static Integer scriptEngineClassCacheSize;
+	private static Integer pushQueueWorkers;
+	private static Integer pushQueueCapacity;
+	private static Integer pushIosBatchSize;
+	private static Integer pushIosConnections;
+	private static Boolean sessionsJournalEnabled;
+	private static Integer sessionsJournalCompactionInterval;
+	private static Integer filesChunkSize;
+	private static Integer imagesResizeWorkers;
+	private static Integer imagesResizeQueueCapacity;
+	private static Integer imagesResizeTimeout;
+	private static Integer filesExtractionWorkers;
+	private static Integer filesExtractionQueueCapacity;
+	private static Integer filesExtractionMaxTextLength;
+	private static Integer binaryCacheSize;
+	private static Integer binaryCacheMaxEntrySize;
+	private static Boolean binaryCacheOffHeap;
+	private static Boolean queryStatsEnabled;
+	private static Integer queryStatsMaxFingerprints;
+	private static Integer querySlowThreshold;
+	private static Integer statementCacheSize;
+	private static Integer recordCountersResyncInterval;
+	private static Integer documentsBulkBatchSize;
+	private static Integer documentsStreamWorkers;
+	private static Integer documentsStreamQueueCapacity;
+	private static Integer documentsStreamTimeout;
 	
 	//this is a percentage needed by the console to show alerts on dashboard when DB size is near the defined Threshold
 	private static Integer dbAlertThreshold=Integer.valueOf(10); 
@@ -49,6 +81,333 @@ public class BBConfiguration implements IBBConfigurationKeys {
 		return configuration.getInt(MVCC_MAX_RETRIES);
 	}
 	
+	public static boolean getConnectionPoolEnabled(){
+		if (connectionPoolEnabled==null) connectionPoolEnabled=!BooleanUtils.isFalse(configuration.getBoolean(CONNECTION_POOL_ENABLED));
+		return connectionPoolEnabled;
+	}
+	
+	public static int getConnectionPoolMaxIdlePerUser(){
+		if (connectionPoolMaxIdlePerUser==null) {
+			Integer value = configuration.getInt(CONNECTION_POOL_MAX_IDLE_PER_USER);
+			connectionPoolMaxIdlePerUser = value==null ? 10 : value;
+		}
+		return connectionPoolMaxIdlePerUser;
+	}
+	
+	public static int getConnectionPoolMaxUsers(){
+		if (connectionPoolMaxUsers==null) {
+			Integer value = configuration.getInt(CONNECTION_POOL_MAX_USERS);
+			connectionPoolMaxUsers = value==null ? 1000 : value;
+		}
+		return connectionPoolMaxUsers;
+	}
+	
+	/**
+	 * @return the seconds an idle pooled connection, or the pool of a user not seen for this time, is kept open. 0 means forever
+	 */
+	public static int getConnectionPoolIdleTimeout(){
+		if (connectionPoolIdleTimeout==null) {
+			Integer value = configuration.getInt(CONNECTION_POOL_IDLE_TIMEOUT);
+			connectionPoolIdleTimeout = value==null ? 300 : value;
+		}
+		return connectionPoolIdleTimeout;
+	}
+	
+	public static int getScriptEnginePoolSize(){
+		if (scriptEnginePoolSize==null) {
+			Integer value = configuration.getInt(SCRIPT_ENGINE_POOL_SIZE);
+			scriptEnginePoolSize = value==null ? 2 * Runtime.getRuntime().availableProcessors() : value;
+		}
+		return scriptEnginePoolSize;
+	}
+	
+	/**
+	 * @return how many milliseconds a request waits for a free script engine
+	 */
+	public static int getScriptEnginePoolTimeout(){
+		if (scriptEnginePoolTimeout==null) {
+			Integer value = configuration.getInt(SCRIPT_ENGINE_POOL_TIMEOUT);
+			scriptEnginePoolTimeout = value==null ? 30000 : value;
+		}
+		return scriptEnginePoolTimeout;
+	}
+	
+	public static int getScriptEngineClassCacheSize(){
+		if (scriptEngineClassCacheSize==null) {
+			Integer value = configuration.getInt(SCRIPT_ENGINE_CLASS_CACHE_SIZE);
+			scriptEngineClassCacheSize = value==null ? 256 : value;
+		}
+		return scriptEngineClassCacheSize;
+	}
+	
+	public static boolean getSessionsJournalEnabled(){
+		if (sessionsJournalEnabled==null) sessionsJournalEnabled=BooleanUtils.isTrue(configuration.getBoolean(SESSIONS_JOURNAL_ENABLED));
+		return sessionsJournalEnabled;
+	}
+	
+	public static String getSessionsJournalPath(){
+		String value = configuration.getString(SESSIONS_JOURNAL_PATH);
+		return StringUtils.isEmpty(value) ? "db/sessions.journal" : value;
+	}
+	
+	/**
+	 * @return how many seconds pass between two compactions of the sessions journal
+	 */
+	public static int getSessionsJournalCompactionInterval(){
+		if (sessionsJournalCompactionInterval==null) {
+			Integer value = configuration.getInt(SESSIONS_JOURNAL_COMPACTION_INTERVAL);
+			sessionsJournalCompactionInterval = value==null ? 300 : value;
+		}
+		return sessionsJournalCompactionInterval;
+	}
+
+	/**
+	 * @return the size in bytes of the records the content of the files is split into
+	 */
+	public static int getFilesChunkSize(){
+		if (filesChunkSize==null) {
+			Integer value = configuration.getInt(FILES_CHUNK_SIZE);
+			filesChunkSize = value==null ? 256 * 1024 : value;
+		}
+		return filesChunkSize;
+	}
+
+	/**
+	 * @return number of threads resizing the images
+	 */
+	public static int getImagesResizeWorkers(){
+		if (imagesResizeWorkers==null) {
+			Integer value = configuration.getInt(IMAGES_RESIZE_WORKERS);
+			imagesResizeWorkers = value==null ? Runtime.getRuntime().availableProcessors() : value;
+		}
+		return imagesResizeWorkers;
+	}
+
+	/**
+	 * @return max number of images waiting to be resized
+	 */
+	public static int getImagesResizeQueueCapacity(){
+		if (imagesResizeQueueCapacity==null) {
+			Integer value = configuration.getInt(IMAGES_RESIZE_QUEUE_CAPACITY);
+			imagesResizeQueueCapacity = value==null ? 100 : value;
+		}
+		return imagesResizeQueueCapacity;
+	}
+
+	/**
+	 * @return how many seconds a request waits for an image to be resized
+	 */
+	public static int getImagesResizeTimeout(){
+		if (imagesResizeTimeout==null) {
+			Integer value = configuration.getInt(IMAGES_RESIZE_TIMEOUT);
+			imagesResizeTimeout = value==null ? 30 : value;
+		}
+		return imagesResizeTimeout;
+	}
+
+	/**
+	 * @return number of threads extracting the metadata and the text of the uploaded files
+	 */
+	public static int getFilesExtractionWorkers(){
+		if (filesExtractionWorkers==null) {
+			Integer value = configuration.getInt(FILES_EXTRACTION_WORKERS);
+			filesExtractionWorkers = value==null ? 1 : value;
+		}
+		return filesExtractionWorkers;
+	}
+
+	/**
+	 * @return max number of files waiting for the extraction of their metadata and text
+	 */
+	public static int getFilesExtractionQueueCapacity(){
+		if (filesExtractionQueueCapacity==null) {
+			Integer value = configuration.getInt(FILES_EXTRACTION_QUEUE_CAPACITY);
+			filesExtractionQueueCapacity = value==null ? 100 : value;
+		}
+		return filesExtractionQueueCapacity;
+	}
+
+	/**
+	 * @return max number of characters of text extracted from a file, -1 for no limit
+	 */
+	public static int getFilesExtractionMaxTextLength(){
+		if (filesExtractionMaxTextLength==null) {
+			Integer value = configuration.getInt(FILES_EXTRACTION_MAX_TEXT_LENGTH);
+			filesExtractionMaxTextLength = value==null ? 1000000 : value;
+		}
+		return filesExtractionMaxTextLength;
+	}
+
+	/**
+	 * @return bytes of assets and resized images kept in memory, 0 disables the cache
+	 */
+	public static int getBinaryCacheSize(){
+		if (binaryCacheSize==null) {
+			Integer value = configuration.getInt(BINARY_CACHE_SIZE);
+			binaryCacheSize = value==null ? 33554432 : value;
+		}
+		return binaryCacheSize;
+	}
+
+	/**
+	 * @return assets and resized images larger than this are never cached
+	 */
+	public static int getBinaryCacheMaxEntrySize(){
+		if (binaryCacheMaxEntrySize==null) {
+			Integer value = configuration.getInt(BINARY_CACHE_MAX_ENTRY_SIZE);
+			binaryCacheMaxEntrySize = value==null ? 1048576 : value;
+		}
+		return binaryCacheMaxEntrySize;
+	}
+
+	/**
+	 * @return true if the cached assets and resized images are kept in direct buffers, out of the heap
+	 */
+	public static boolean getBinaryCacheOffHeap(){
+		if (binaryCacheOffHeap==null) binaryCacheOffHeap=BooleanUtils.isTrue(configuration.getBoolean(BINARY_CACHE_OFFHEAP));
+		return binaryCacheOffHeap;
+	}
+
+	/**
+	 * @return true if the execution times of the queries are aggregated by statement
+	 */
+	public static boolean getQueryStatsEnabled(){
+		if (queryStatsEnabled==null) queryStatsEnabled=!BooleanUtils.isFalse(configuration.getBoolean(QUERY_STATS_ENABLED));
+		return queryStatsEnabled;
+	}
+
+	/**
+	 * @return max number of distinct statements tracked, the others are aggregated together
+	 */
+	public static int getQueryStatsMaxFingerprints(){
+		if (queryStatsMaxFingerprints==null) {
+			Integer value = configuration.getInt(QUERY_STATS_MAX_FINGERPRINTS);
+			queryStatsMaxFingerprints = value==null ? 1000 : value;
+		}
+		return queryStatsMaxFingerprints;
+	}
+
+	/**
+	 * @return milliseconds after which a query is written to the slow query log, -1 to disable it
+	 */
+	public static int getQuerySlowThreshold(){
+		if (querySlowThreshold==null) {
+			Integer value = configuration.getInt(QUERY_SLOW_THRESHOLD);
+			querySlowThreshold = value==null ? 500 : value;
+		}
+		return querySlowThreshold;
+	}
+
+	/**
+	 * @return max number of analyzed statements kept in memory
+	 */
+	public static int getStatementCacheSize(){
+		if (statementCacheSize==null) {
+			Integer value = configuration.getInt(STATEMENT_CACHE_SIZE);
+			statementCacheSize = value==null ? 1000 : value;
+		}
+		return statementCacheSize;
+	}
+
+	/**
+	 * @return seconds after which the in-memory record counters are read again from the database
+	 */
+	public static int getRecordCountersResyncInterval(){
+		if (recordCountersResyncInterval==null) {
+			Integer value = configuration.getInt(RECORD_COUNTERS_RESYNC_INTERVAL);
+			recordCountersResyncInterval = value==null ? 600 : value;
+		}
+		return recordCountersResyncInterval;
+	}
+
+	/**
+	 * @return number of bulk document operations committed in the same transaction
+	 */
+	public static int getDocumentsBulkBatchSize(){
+		if (documentsBulkBatchSize==null) {
+			Integer value = configuration.getInt(DOCUMENTS_BULK_BATCH_SIZE);
+			documentsBulkBatchSize = value==null ? 100 : value;
+		}
+		return documentsBulkBatchSize;
+	}
+	
+	/**
+	 * @return number of threads reading the collections requested with stream=true
+	 */
+	public static int getDocumentsStreamWorkers(){
+		if (documentsStreamWorkers==null) {
+			Integer value = configuration.getInt(DOCUMENTS_STREAM_WORKERS);
+			documentsStreamWorkers = value==null ? 4 : value;
+		}
+		return documentsStreamWorkers;
+	}
+	
+	/**
+	 * @return max number of streams waiting for a free worker
+	 */
+	public static int getDocumentsStreamQueueCapacity(){
+		if (documentsStreamQueueCapacity==null) {
+			Integer value = configuration.getInt(DOCUMENTS_STREAM_QUEUE_CAPACITY);
+			documentsStreamQueueCapacity = value==null ? 20 : value;
+		}
+		return documentsStreamQueueCapacity;
+	}
+	
+	/**
+	 * @return seconds a stream waits for a client that does not read
+	 */
+	public static int getDocumentsStreamTimeout(){
+		if (documentsStreamTimeout==null) {
+			Integer value = configuration.getInt(DOCUMENTS_STREAM_TIMEOUT);
+			documentsStreamTimeout = value==null ? 60 : value;
+		}
+		return documentsStreamTimeout;
+	}
+	
+	/**
+	 * @return number of threads sending the queued push notifications
+	 */
+	public static int getPushQueueWorkers(){
+		if (pushQueueWorkers==null) {
+			Integer value = configuration.getInt(PUSH_QUEUE_WORKERS);
+			pushQueueWorkers = value==null ? 2 : value;
+		}
+		return pushQueueWorkers;
+	}
+	
+	/**
+	 * @return max number of push jobs waiting to be sent
+	 */
+	public static int getPushQueueCapacity(){
+		if (pushQueueCapacity==null) {
+			Integer value = configuration.getInt(PUSH_QUEUE_CAPACITY);
+			pushQueueCapacity = value==null ? 1000 : value;
+		}
+		return pushQueueCapacity;
+	}
+	
+	/**
+	 * @return number of iOS devices a notification is sent to through a single APNs call
+	 */
+	public static int getPushIosBatchSize(){
+		if (pushIosBatchSize==null) {
+			Integer value = configuration.getInt(PUSH_IOS_BATCH_SIZE);
+			pushIosBatchSize = value==null ? 100 : value;
+		}
+		return pushIosBatchSize;
+	}
+	
+	/**
+	 * @return number of connections kept open to APNs for each push profile
+	 */
+	public static int getPushIosConnections(){
+		if (pushIosConnections==null) {
+			Integer value = configuration.getInt(PUSH_IOS_CONNECTIONS);
+			pushIosConnections = value==null ? 2 : value;
+		}
+		return pushIosConnections;
+	}
+	
 	public static String getBaasBoxUsername(){
 		return configuration.getString(ANONYMOUS_USERNAME);
 	}
@@ -34,6 +34,8 @@ import play.Application;
 import play.Configuration;
 import play.GlobalSettings;
 import com.baasbox.service.logging.BaasBoxLogger;
+import com.baasbox.service.push.PushService;
+import com.baasbox.service.push.providers.APNServer;
 import play.Play;
 import play.api.mvc.EssentialFilter;
 import play.core.j.JavaResultExtractor;
@@ -46,11 +48,17 @@ import play.mvc.SimpleResult;
 import com.baasbox.configuration.Internal;
 import com.baasbox.configuration.IosCertificateHandler;
 import com.baasbox.configuration.PropertiesConfigurationHelper;
+import com.baasbox.dao.IndexDao;
+import com.baasbox.db.ConnectionPool;
 import com.baasbox.db.DbHelper;
+import com.baasbox.db.async.StreamDocumentsJob;
 import com.baasbox.metrics.BaasBoxMetric;
 import com.baasbox.security.ISessionTokenProvider;
 import com.baasbox.security.ScriptingSandboxSecutrityManager;
 import com.baasbox.security.SessionTokenProvider;
+import com.baasbox.service.permissions.PermissionTagService;
+import com.baasbox.service.storage.ContentExtractor;
+import com.baasbox.service.storage.ImageResizer;
 import com.baasbox.service.storage.StatisticsService;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -168,6 +176,8 @@ public class Global extends GlobalSettings {
     		db = DbHelper.open( BBConfiguration.getAPPCODE(), BBConfiguration.getBaasBoxAdminUsername(), BBConfiguration.getBaasBoxAdminPassword());
     		DbHelper.evolveDB(db);
 			DbHelper.updateDefaultUsers();
+			IndexDao.loadCache();
+			PermissionTagService.loadSnapshot();
 			
 			String bbid=Internal.INSTALLATION_ID.getValueAsString();
 			if (bbid==null) throw new Exception ("Unique id not found! Hint: could the DB be corrupted?");
@@ -271,8 +281,18 @@ public class Global extends GlobalSettings {
 		debug("Global.onStop() called");
 	    info("BaasBox is shutting down...");
 	    try{
+	    	info("Stopping the push notification workers...");
+	    	PushService.shutdown();
+	    	APNServer.closeAll();
+	    	info("Stopping the image resize workers...");
+	    	ImageResizer.shutdown();
+	    	info("Stopping the content extraction workers...");
+	    	ContentExtractor.shutdown();
+	    	info("Stopping the document stream workers...");
+	    	StreamDocumentsJob.shutdown();
 	    	info("Closing the DB connections...");
 	    	ODatabaseDocumentPool.global().close();
+	    	ConnectionPool.shutdown();
 	    	info("Shutting down embedded OrientDB Server");
 	    	Orient.instance().shutdown();
 	    	info("...ok");
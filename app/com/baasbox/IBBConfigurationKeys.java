@@ -36,7 +36,40 @@ public interface IBBConfigurationKeys {
 	public static final String WRAP_RESPONSE="baasbox.wrapresponse";
 	
 	public static final String PUSH_CERTIFICATES_FOLDER = "push.baasbox.certificates.folder";
+	public static final String PUSH_QUEUE_WORKERS = "push.baasbox.queue.workers";
+	public static final String PUSH_QUEUE_CAPACITY = "push.baasbox.queue.capacity";
+	public static final String PUSH_IOS_BATCH_SIZE = "push.baasbox.ios.batch_size";
+	public static final String PUSH_IOS_CONNECTIONS = "push.baasbox.ios.connections";
 	public static final String MVCC_MAX_RETRIES = "orient.baasbox.MVCC.maxRetries";
+	public static final String CONNECTION_POOL_ENABLED = "orient.baasbox.pool.enabled";
+	public static final String CONNECTION_POOL_MAX_IDLE_PER_USER = "orient.baasbox.pool.max_idle_per_user";
+	public static final String CONNECTION_POOL_MAX_USERS = "orient.baasbox.pool.max_users";
+	public static final String CONNECTION_POOL_IDLE_TIMEOUT = "orient.baasbox.pool.idle_timeout";
+	public static final String SCRIPT_ENGINE_POOL_SIZE = "baasbox.scripts.engine.pool.size";
+	public static final String SCRIPT_ENGINE_POOL_TIMEOUT = "baasbox.scripts.engine.pool.timeout";
+	public static final String SCRIPT_ENGINE_CLASS_CACHE_SIZE = "baasbox.scripts.engine.class_cache_size";
+	public static final String SESSIONS_JOURNAL_ENABLED = "baasbox.sessions.journal.enabled";
+	public static final String SESSIONS_JOURNAL_PATH = "baasbox.sessions.journal.path";
+	public static final String SESSIONS_JOURNAL_COMPACTION_INTERVAL = "baasbox.sessions.journal.compaction_interval";
+	public static final String FILES_CHUNK_SIZE = "baasbox.files.chunk_size";
+	public static final String IMAGES_RESIZE_WORKERS = "baasbox.images.resize.workers";
+	public static final String IMAGES_RESIZE_QUEUE_CAPACITY = "baasbox.images.resize.queue.capacity";
+	public static final String IMAGES_RESIZE_TIMEOUT = "baasbox.images.resize.timeout";
+	public static final String FILES_EXTRACTION_WORKERS = "baasbox.files.extraction.workers";
+	public static final String FILES_EXTRACTION_QUEUE_CAPACITY = "baasbox.files.extraction.queue.capacity";
+	public static final String FILES_EXTRACTION_MAX_TEXT_LENGTH = "baasbox.files.extraction.max_text_length";
+	public static final String BINARY_CACHE_SIZE = "baasbox.cache.binary.size";
+	public static final String BINARY_CACHE_MAX_ENTRY_SIZE = "baasbox.cache.binary.max_entry_size";
+	public static final String BINARY_CACHE_OFFHEAP = "baasbox.cache.binary.offheap";
+	public static final String QUERY_STATS_ENABLED = "baasbox.query.stats.enabled";
+	public static final String QUERY_STATS_MAX_FINGERPRINTS = "baasbox.query.stats.max_fingerprints";
+	public static final String QUERY_SLOW_THRESHOLD = "baasbox.query.slow_threshold";
+	public static final String STATEMENT_CACHE_SIZE = "baasbox.query.statement_cache.size";
+	public static final String RECORD_COUNTERS_RESYNC_INTERVAL = "baasbox.counters.resync_interval";
+	public static final String DOCUMENTS_BULK_BATCH_SIZE = "baasbox.documents.bulk.batch_size";
+	public static final String DOCUMENTS_STREAM_WORKERS = "baasbox.documents.stream.workers";
+	public static final String DOCUMENTS_STREAM_QUEUE_CAPACITY = "baasbox.documents.stream.queue.capacity";
+	public static final String DOCUMENTS_STREAM_TIMEOUT = "baasbox.documents.stream.timeout";
 	
 	public static final String STATISTICS_SYSTEM_OS="baasbox.statistics.system.os";
 	public static final String STATISTICS_SYSTEM_MEMORY="baasbox.statistics.system.memory";
@@ -28,22 +28,14 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.collect.ImmutableMap;
 
 import java.util.Collection;
-import java.util.EnumSet;
 import java.util.Map;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
 
 /**
  * Created by Andrea Tortorella on 30/06/14.
  */
 public abstract class BaseRestResource extends Resource {
 
-    protected static final Predicate<BaasBoxPrivateFields> removeVisible = ((Predicate<BaasBoxPrivateFields>)BaasBoxPrivateFields::isVisibleByTheClient).negate();
-
-    protected static final Collection<String> TO_REMOVE = EnumSet.allOf(BaasBoxPrivateFields.class)
-	                                                               .stream().filter(removeVisible)
-	                                                                        .map(BaasBoxPrivateFields::toString)
-	                                                                        .collect(Collectors.toSet());
+    protected static final Collection<String> TO_REMOVE = BaasBoxPrivateFields.getHiddenFields();
 
 	private final ImmutableMap.Builder<String,ScriptCommand> baseCommands =
             ImmutableMap.<String, ScriptCommand>builder()
@@ -18,9 +18,11 @@
 
 package com.baasbox.commands;
 
+import com.baasbox.BBConfiguration;
 import com.baasbox.commands.exceptions.CommandException;
 import com.baasbox.commands.exceptions.CommandExecutionException;
 import com.baasbox.commands.exceptions.CommandParsingException;
+import com.baasbox.controllers.Document;
 import com.baasbox.controllers.actions.exceptions.RidNotFoundException;
 import com.baasbox.dao.exception.*;
 import com.baasbox.enumerations.Permissions;
@@ -28,13 +30,10 @@ import com.baasbox.exception.AclNotValidException;
 import com.baasbox.exception.RoleNotFoundException;
 import com.baasbox.exception.UserNotFoundException;
 import com.baasbox.service.scripting.base.JsonCallback;
-import com.baasbox.service.scripting.js.Json;
 import com.baasbox.service.storage.DocumentService;
-import com.baasbox.util.JSONFormats;
+import com.baasbox.util.DocumentJsonConverter;
 import com.baasbox.util.QueryParams;
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.BooleanNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.base.Predicates;
@@ -47,7 +46,6 @@ import org.apache.commons.lang.exception.ExceptionUtils;
 
 import com.baasbox.service.logging.BaasBoxLogger;
 
-import java.io.IOException;
 import java.util.List;
 import java.util.UUID;
 
@@ -91,6 +89,17 @@ import java.util.UUID;
  *   }}
  *
  *
+ *  {resource: 'documents',
+ *   name: 'bulk',
+ *   params: {
+ *       collection: <collection>,
+ *       operations: [{op: 'create', data: {}},
+ *                    {op: 'update', id: <uuid>, data: {}},
+ *                    {op: 'delete', id: <uuid>}],
+ *       batchSize: <number of operations per transaction>*
+ *   }}
+ *
+ *
  *
  * Created by Andrea Tortorella on 30/06/14.
  */
@@ -103,6 +112,8 @@ class DocumentsResource extends BaseRestResource {
     private static final String QUERY = "query";
     private static final String DATA = "data";
     private static final String AUTHOR = "author";
+    private static final String OPERATIONS = "operations";
+    private static final String BATCH_SIZE = "batchSize";
 
     @Override
     protected ImmutableMap.Builder<String, ScriptCommand> baseCommands() {
@@ -116,9 +127,38 @@ class DocumentsResource extends BaseRestResource {
             public JsonNode execute(JsonNode command, JsonCallback callback) throws CommandException {
                 return grant(command,false);
             }
+        }).put("bulk", new ScriptCommand() {
+            @Override
+            public JsonNode execute(JsonNode command, JsonCallback callback) throws CommandException {
+                return bulk(command);
+            }
         });
     }
 
+    private JsonNode bulk(JsonNode command) throws CommandException {
+        validateHasParams(command);
+        String collection = getCollectionName(command);
+        JsonNode params = command.get(ScriptCommand.PARAMS);
+        JsonNode operations = params.get(OPERATIONS);
+        if (operations == null || !operations.isArray()){
+            throw new CommandParsingException(command,"operations must be an array");
+        }
+        int batchSize = BBConfiguration.getDocumentsBulkBatchSize();
+        JsonNode batchSizeNode = params.get(BATCH_SIZE);
+        if (batchSizeNode != null){
+            if (!batchSizeNode.isNumber() || batchSizeNode.asInt()<1) throw new CommandParsingException(command,"batchSize must be a positive integer");
+            batchSize = batchSizeNode.asInt();
+        }
+        try {
+            return Document.withBulkStatus(DocumentService.bulk(collection, operations.iterator(), batchSize));
+        } catch (InvalidCollectionException e) {
+            throw new CommandExecutionException(command,"invalid collection: "+collection);
+        } catch (Throwable e) {
+            //inside a transaction the first failure aborts the whole bulk, and the transaction with it
+            throw new CommandExecutionException(command,"bulk operation failed: "+ExceptionUtils.getMessage(e),e);
+        }
+    }
+
     private JsonNode grant(JsonNode command, boolean grant) throws CommandException {
         validateHasParams(command);
         String coll = getCollectionName(command);
@@ -202,11 +242,7 @@ class DocumentsResource extends BaseRestResource {
             	doc = DocumentService.update(coll, rid, (ObjectNode)data);
             else // save
             	doc = DocumentService.create(coll, (ObjectNode)data);
-            String json = JSONFormats.prepareDocToJson(doc, JSONFormats.Formats.DOCUMENT_PUBLIC);
-            ObjectNode node = (ObjectNode)Json.mapper().readTree(json);
-            node.remove(TO_REMOVE);
-            //node.remove("@rid");
-            return node;
+            return DocumentJsonConverter.toJson(doc, true);
         } catch (RidNotFoundException e) {
             throw new CommandExecutionException(command,"document: "+id+" does not exists");
         } catch (UpdateOldVersionException e) {
@@ -217,10 +253,6 @@ class DocumentsResource extends BaseRestResource {
             throw new CommandExecutionException(command,"invalid collection: "+coll);
         } catch (InvalidModelException e) {
             throw new CommandExecutionException(command,"error updating document (is the provided ID belonging to the provided collection?): "+id+" message: "+ExceptionUtils.getMessage(e));
-        } catch (JsonProcessingException e) {
-            throw new CommandExecutionException(command,"data do not represents a valid document, message: "+ExceptionUtils.getMessage(e));
-        } catch (IOException e) {
-            throw new CommandExecutionException(command,"error updating document: "+id+" message:"+ExceptionUtils.getMessage(e));
 		} catch (AclNotValidException e) {
 			 throw new CommandExecutionException(command,"error updating document (check the ACL fields): "+id+" message:"+ExceptionUtils.getMessage(e));
 		} catch (Throwable e){
@@ -243,12 +275,7 @@ class DocumentsResource extends BaseRestResource {
             if (doc == null){
                 return null;
             }
-            String fmt = JSONFormats.prepareDocToJson(doc, JSONFormats.Formats.DOCUMENT_PUBLIC);
-            JsonNode node = Json.mapper().readTree(fmt);
-            ObjectNode n =(ObjectNode)node;
-            n.remove(TO_REMOVE);
-//            n.remove("@rid");
-            return n;
+            return DocumentJsonConverter.toJson(doc, true);
         } catch (InvalidCollectionException throwable) {
             throw new CommandExecutionException(command,"invalid collection: "+collection);
         } catch (InvalidModelException e) {
@@ -285,11 +312,8 @@ class DocumentsResource extends BaseRestResource {
         try {
             List<ODocument> docs = DocumentService.getDocuments(collection, params);
 
-            String s = JSONFormats.prepareDocToJson(docs, JSONFormats.Formats.DOCUMENT_PUBLIC);
-            ArrayNode lst = (ArrayNode)Json.mapper().readTree(s);
-            lst.forEach((j)->((ObjectNode)j).remove(TO_REMOVE));//.remove("@rid"));
-            return lst;
-        } catch (SqlInjectionException | IOException e) {
+            return DocumentJsonConverter.toJson(docs, true);
+        } catch (SqlInjectionException e) {
             throw new CommandExecutionException(command,"error executing command: "+ExceptionUtils.getMessage(e),e);
         } catch (InvalidCollectionException e) {
             throw new CommandExecutionException(command,"invalid collection: "+collection,e);
@@ -307,11 +331,8 @@ class DocumentsResource extends BaseRestResource {
             if (document == null){
                 return null;
             } else {
-                String s = JSONFormats.prepareDocToJson(document, JSONFormats.Formats.DOCUMENT_PUBLIC);
-                ObjectNode node = (ObjectNode)Json.mapper().readTree(s);
-                //necessary to create relations between documents
-                node.remove(TO_REMOVE);//.remove("@rid");
-                return node;
+                //@rid is kept, necessary to create relations between documents
+                return DocumentJsonConverter.toJson(document, true);
             }
         } catch (RidNotFoundException e) {
             return null;
@@ -321,10 +342,6 @@ class DocumentsResource extends BaseRestResource {
             throw new CommandExecutionException(command,"invalid collection: "+collection);
         } catch (InvalidModelException e) {
             throw new CommandExecutionException(command,"error executing command: "+ExceptionUtils.getMessage(e));
-        } catch (JsonProcessingException e) {
-            throw new CommandExecutionException(command,"error executing command: "+ExceptionUtils.getMessage(e));
-        } catch (IOException e) {
-            throw new CommandExecutionException(command,"error executing command: "+ExceptionUtils.getMessage(e));
         }
     }
 
@@ -68,9 +68,7 @@ public class SessionsResource extends BaseRestResource {
 			String username=getUsernameFromParam(command);
 			ISessionTokenProvider tp = SessionTokenProvider
 					.getSessionTokenProvider();
-			List<ImmutableMap<SessionKeys, ? extends Object>> sessions = tp.getSessions(username);
-			sessions.forEach(x->tp.removeSession((String)x.get(SessionKeys.TOKEN)));
-			return IntNode.valueOf(sessions.size());
+			return IntNode.valueOf(tp.removeSessions(username));
 		} catch (CommandParsingException e){
 			if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug(ExceptionUtils.getMessage(e),e);
 			throw e;
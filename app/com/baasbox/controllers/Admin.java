@@ -66,6 +66,7 @@ import com.baasbox.dao.exception.InvalidPermissionTagException;
 import com.baasbox.dao.exception.SqlInjectionException;
 import com.baasbox.dao.exception.UserAlreadyExistsException;
 import com.baasbox.db.DbHelper;
+import com.baasbox.db.QueryStats;
 import com.baasbox.enumerations.DefaultRoles;
 import com.baasbox.exception.ConfigurationException;
 import com.baasbox.exception.InvalidJsonException;
@@ -225,6 +226,19 @@ public class Admin extends Controller {
 		return ok(toJson(response));
 	}
 
+	/**
+	 * Execution statistics of the queries, aggregated by statement, the ones taking the most time first
+	 */
+	public static Result getQueryStatistics(){
+		response().setContentType("application/json");
+		return ok(toJson(QueryStats.getStats()));
+	}
+
+	public static Result resetQueryStatistics(){
+		QueryStats.reset();
+		return ok();
+	}
+
 	public static Result createRole(String name){
 		String inheritedRole=DefaultRoles.REGISTERED_USER.toString();
 		String description="";
@@ -18,6 +18,7 @@ package com.baasbox.controllers;
 
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -26,7 +27,6 @@ import java.net.URLEncoder;
 import java.util.List;
 import java.util.Map;
 
-import org.apache.commons.io.output.ByteArrayOutputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 
@@ -44,6 +44,7 @@ import com.baasbox.controllers.actions.filters.CheckAdminRoleFilter;
 import com.baasbox.controllers.actions.filters.ConnectToDBFilter;
 import com.baasbox.controllers.actions.filters.ExtractQueryParameters;
 import com.baasbox.controllers.actions.filters.UserCredentialWrapFilter;
+import com.baasbox.dao.FileAssetDao;
 import com.baasbox.dao.exception.InvalidModelException;
 import com.baasbox.dao.exception.SqlInjectionException;
 import com.baasbox.exception.AssetNotFoundException;
@@ -54,13 +55,13 @@ import com.baasbox.exception.InvalidSizePatternException;
 import com.baasbox.exception.OperationDisabledException;
 import com.baasbox.service.logging.BaasBoxLogger;
 import com.baasbox.service.storage.AssetService;
+import com.baasbox.util.HttpValidators;
 import com.baasbox.util.IQueryParametersKeys;
 import com.baasbox.util.JSONFormats;
 import com.baasbox.util.QueryParams;
 import com.google.common.io.Files;
 import com.orientechnologies.orient.core.index.OIndexException;
 import com.orientechnologies.orient.core.record.impl.ODocument;
-import com.orientechnologies.orient.core.record.impl.ORecordBytes;
 import com.orientechnologies.orient.core.storage.ORecordDuplicatedException;
 
 public class Asset extends Controller{
@@ -227,15 +228,18 @@ public class Asset extends Controller{
 	public static Result download(String name,boolean forceDownload) throws InvalidModelException, IOException {
 		try {
 			ODocument doc=AssetService.getByName(name);
-			if (doc==null || doc.field("file")==null) return notFound();
-			ORecordBytes record = doc.field("file");
-			ByteArrayOutputStream out = new ByteArrayOutputStream();
-			record.toOutputStream(out);
+			//the content is not loaded until the client copy is known to be stale
+			if (doc==null || !doc.containsField("file")) return notFound();
+			String contentHash = doc.field(FileAssetDao.CONTENT_HASH_FIELD_NAME);
+			//assets stored without the hash of their content change tag whenever they are updated
+			String etag = contentHash==null ? HttpValidators.documentETag(doc) : "\"" + contentHash + "\"";
+			long lastModified = HttpValidators.lastModified(doc);
+			if (HttpValidators.checkNotModified(ctx(), etag, lastModified)) return status(NOT_MODIFIED);
+			byte[] content = AssetService.getContent(doc);
+			if (content==null) return notFound();
 			response().setContentType(AssetService.getContentType(doc));
 			if(forceDownload) response().setHeader("Content-Disposition", "attachment; filename=\""+URLEncoder.encode((String)doc.field("fileName"),"UTF-8")+"\"");
-			response().setHeader("Content-Length", ((Long)doc.field("contentLength")).toString());
-			//return ok(new ByteArrayInputStream(out.toByteArray()));
-			return ok(out.toByteArray());
+			return StreamedContent.serve(ctx(), new ByteArrayInputStream(content), content.length, etag, lastModified);
 		} catch (IllegalArgumentException e) {
 			BaasBoxLogger.error("error retrieving asset " + name, e);
 			throw e;
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2014.
+ *
+ * BaasBox - info-at-baasbox.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baasbox.controllers;
+
+import scala.concurrent.{Future, Promise}
+import play.api.http.Writeable
+import play.api.libs.iteratee.{Enumerator, Input}
+import play.api.libs.concurrent.Execution.Implicits._
+import play.api.mvc.{Codec, Results}
+
+/**
+ * A chunked response written by a producer thread and pulled by the client.
+ * The response asks for a chunk only when the previous one has been sent, and the producer blocks while
+ * `capacity` chunks are waiting, so a slow client slows the producer down instead of filling the heap.
+ * Play's Chunks.Out has no such bound: every chunk written is queued until the client reads it.
+ *
+ * @param capacity max number of chunks waiting to be sent
+ * @param timeoutInMilliseconds how long the producer waits for the client to read, before giving up
+ */
+class BoundedChunks(capacity: Int, timeoutInMilliseconds: Long) {
+	//None marks the end of the response
+	private val queue = new java.util.ArrayDeque[Option[String]](capacity)
+	//the client waiting for the next chunk, guarded by this
+	private var waiting: Promise[Option[String]] = null
+	@volatile private var disconnected = false
+
+	/**
+	 * Sends a chunk, blocking while the response is full
+	 * @return false if the client has gone away or has not read anything for the timeout: the producer has to stop
+	 */
+	def write(chunk: String): Boolean = offer(Some(chunk))
+
+	/**
+	 * Ends the response once the chunks already written have been sent.
+	 * If the producer gave up the client still gets the end of the response, after the chunks it has not read yet
+	 */
+	def close(): Unit = synchronized {
+		if (!offer(None)) finish()
+	}
+
+	def isDisconnected: Boolean = disconnected
+
+	/**
+	 * @return the chunked result, whose body is read from this object
+	 */
+	def result(): play.mvc.SimpleResult = {
+		val body = Enumerator.fromCallback1[String](
+			_ => next(),
+			() => disconnect(),
+			(_: String, _: Input[String]) => disconnect())
+		new StreamedResult(Results.Ok.chunked(body)(Writeable.wString(Codec.utf_8)))
+	}
+
+	private def offer(item: Option[String]): Boolean = synchronized {
+		val deadline = System.currentTimeMillis() + timeoutInMilliseconds
+		var left = timeoutInMilliseconds
+		while (!disconnected && waiting == null && queue.size() >= capacity && left > 0) {
+			wait(left)
+			left = deadline - System.currentTimeMillis()
+		}
+		//the client did not read anything for the whole timeout
+		if (waiting == null && queue.size() >= capacity) disconnected = true
+		if (disconnected) false
+		else {
+			if (waiting != null) {
+				waiting.success(item)
+				waiting = null
+			} else queue.add(item)
+			true
+		}
+	}
+
+	private def next(): Future[Option[String]] = synchronized {
+		if (!queue.isEmpty) {
+			val item = queue.poll()
+			notifyAll()
+			Future.successful(item)
+		} else if (disconnected) {
+			//nothing more will be written
+			Future.successful(None)
+		} else {
+			waiting = Promise[Option[String]]()
+			waiting.future
+		}
+	}
+
+	//ends the response of a client still reading after the producer gave up
+	private def finish(): Unit = {
+		if (waiting != null) {
+			waiting.trySuccess(None)
+			waiting = null
+		}
+	}
+
+	private def disconnect(): Unit = synchronized {
+		disconnected = true
+		notifyAll()
+	}
+}
@@ -19,7 +19,10 @@ package com.baasbox.controllers;
 import java.io.IOException;
 import java.security.InvalidParameterException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.commons.lang.BooleanUtils;
 import org.apache.commons.lang.exception.ExceptionUtils;
@@ -33,6 +36,7 @@ import play.mvc.Result;
 import play.mvc.Results;
 import play.mvc.With;
 
+import com.baasbox.BBConfiguration;
 import com.baasbox.controllers.actions.exceptions.RidNotFoundException;
 import com.baasbox.controllers.actions.filters.ConnectToDBFilter;
 import com.baasbox.controllers.actions.filters.ExtractQueryParameters;
@@ -44,8 +48,10 @@ import com.baasbox.dao.exception.DocumentNotFoundException;
 import com.baasbox.dao.exception.InvalidCollectionException;
 import com.baasbox.dao.exception.InvalidCriteriaException;
 import com.baasbox.dao.exception.InvalidModelException;
+import com.baasbox.dao.exception.SqlInjectionException;
 import com.baasbox.dao.exception.UpdateOldVersionException;
 import com.baasbox.db.DbHelper;
+import com.baasbox.db.async.StreamDocumentsJob;
 import com.baasbox.enumerations.Permissions;
 import com.baasbox.exception.AclNotValidException;
 import com.baasbox.exception.InvalidJsonException;
@@ -58,12 +64,20 @@ import com.baasbox.service.query.PartsLexer.Part;
 import com.baasbox.service.query.PartsLexer.PartValidationException;
 import com.baasbox.service.query.PartsParser;
 import com.baasbox.service.storage.BaasBoxPrivateFields;
+import com.baasbox.service.storage.CollectionService;
 import com.baasbox.service.storage.DocumentService;
+import com.baasbox.util.HttpValidators;
 import com.baasbox.util.IQueryParametersKeys;
 import com.baasbox.util.JSONFormats;
 import com.baasbox.util.JSONFormats.Formats;
+import com.baasbox.util.QueryCursor;
 import com.baasbox.util.QueryParams;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.orientechnologies.orient.core.exception.ODatabaseException;
 import com.orientechnologies.orient.core.exception.OSecurityAccessException;
@@ -75,6 +89,9 @@ import com.orientechnologies.orient.core.storage.ORecordDuplicatedException;
 public class Document extends Controller {
 
 	private static final String JSON_BODY_NULL = "The body payload cannot be empty. Hint: put in the request header Content-Type: application/json";
+	private static final int BULK_MAX_LENGTH = 100 * 1024 * 1024;
+	//Play 2.2 does not expose the mapper of play.libs.Json, and the bulk operations are read as a stream
+	private static final ObjectMapper BULK_MAPPER = new ObjectMapper();
 
 
 	private static String prepareResponseToJson(ODocument doc){
@@ -158,11 +175,16 @@ public class Document extends Controller {
 		try {
 			Context ctx=Http.Context.current.get();
 			QueryParams criteria = (QueryParams) ctx.args.get(IQueryParametersKeys.QUERY_PARAMETERS);
+			if (BooleanUtils.toBoolean(ctx.request().getQueryString("stream"))) return streamDocuments(ctx,collectionName,criteria);
 			result = DocumentService.getDocuments(collectionName,criteria);
 			if (BaasBoxLogger.isTraceEnabled()) BaasBoxLogger.trace("count: " + result.size());
+			String nextCursor = criteria.nextCursor(result);
+			if (nextCursor!=null) response().setHeader(QueryCursor.NEXT_CURSOR_HEADER, nextCursor);
 		} catch (InvalidCollectionException e) {
 			if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug (collectionName + " is not a valid collection name");
 			return notFound(collectionName + " is not a valid collection name");
+		} catch (QueryCursor.InvalidCursorException e) {
+			return badRequest(ExceptionUtils.getMessage(e));
 		} catch (Exception e){
 			BaasBoxLogger.error(ExceptionUtils.getFullStackTrace(e));
 			return internalServerError(ExceptionUtils.getMessage(e));
@@ -178,6 +200,30 @@ public class Document extends Controller {
 		return ok(ret);
 	}
 
+	/***
+	 * Sends the documents as a chunked JSON array while they are read from the DB, so the whole result is never held in memory.
+	 * Useful to export big collections. Enabled by the stream=true query string parameter
+	 */
+	private static Result streamDocuments(Context ctx, final String collectionName, final QueryParams criteria) throws SqlInjectionException, InvalidCollectionException{
+		if (!CollectionService.exists(collectionName)) throw new InvalidCollectionException("The collection " + collectionName + " does not exists");
+		final boolean withAcl = BooleanUtils.toBoolean(ctx.request().getQueryString("withAcl"));
+		final String appcode = (String) ctx.args.get("appcode");
+		final String username = (String) ctx.args.get("username");
+		final String password = (String) ctx.args.get("password");
+		final String callId = ctx.request().getQueryString("call_id");
+		BoundedChunks out = new BoundedChunks(StreamDocumentsJob.CHUNKS_IN_FLIGHT, BBConfiguration.getDocumentsStreamTimeout() * 1000L);
+		StreamDocumentsJob job = new StreamDocumentsJob(appcode, username, password, collectionName, criteria,
+				withAcl ? JSONFormats.Formats.DOCUMENT_WITH_ACL : JSONFormats.Formats.DOCUMENT, withAcl,
+				BBConfiguration.getWrapResponse(), callId, out);
+		try{
+			StreamDocumentsJob.execute(job);
+		}catch (RejectedExecutionException e){
+			return status(SERVICE_UNAVAILABLE, "Too many collections are being streamed, retry later");
+		}
+		response().setContentType("application/json");
+		return out.result();
+	}
+
     @With ({UserOrAnonymousCredentialsFilter.class,ConnectToDBFilter.class,ExtractQueryParameters.class})
 	public static Result queryDocument(String collectionName,String id,boolean isUUID,String parts){
 		if(parts==null || StringUtils.isEmpty(parts)){
@@ -256,6 +302,7 @@ public class Document extends Controller {
 			} 
 			if (BaasBoxLogger.isTraceEnabled()) BaasBoxLogger.trace("Method End");
 
+			if (HttpValidators.checkNotModified(ctx(), HttpValidators.documentETag(doc), HttpValidators.lastModified(doc))) return status(NOT_MODIFIED);
 			return ok(prepareResponseToJson(doc));
 		}
 
@@ -275,6 +322,7 @@ public class Document extends Controller {
 			} 
 			if (BaasBoxLogger.isTraceEnabled()) BaasBoxLogger.trace("Method End");
 
+			if (HttpValidators.checkNotModified(ctx(), HttpValidators.documentETag(doc), HttpValidators.lastModified(doc))) return status(NOT_MODIFIED);
 			return ok(prepareResponseToJson(doc));
 		}
 
@@ -312,6 +360,86 @@ public class Document extends Controller {
 			return ok(prepareResponseToJson(document));
 		}
 
+	/***
+	 * Applies the create, update and delete operations sent as a JSON array or as newline delimited JSON objects.
+	 * See {@link DocumentService#bulk(String, java.util.Iterator, int)} for their format.
+	 * The batchSize query parameter overrides the number of operations committed in the same transaction.
+	 * @param collection
+	 * @return the outcome of each operation
+	 */
+	@With ({UserCredentialWrapFilter.class,ConnectToDBFilter.class,ExtractQueryParameters.class})
+		@BodyParser.Of(value=BodyParser.Raw.class, maxLength=BULK_MAX_LENGTH)
+		public static Result bulk(String collection){
+			if (BaasBoxLogger.isTraceEnabled()) BaasBoxLogger.trace("Method Start");
+			Http.RequestBody body = request().body();
+			if (body.isMaxSizeExceeded()) return status(REQUEST_ENTITY_TOO_LARGE, "Too much data! The maximum is " + BULK_MAX_LENGTH + " bytes");
+			if (body.asRaw()==null || body.asRaw().size()==0) return badRequest(JSON_BODY_NULL);
+			int batchSize = BBConfiguration.getDocumentsBulkBatchSize();
+			String batchSizeParam = request().getQueryString("batchSize");
+			if (batchSizeParam!=null){
+				try{
+					batchSize = Integer.parseInt(batchSizeParam);
+				}catch (NumberFormatException e){
+					batchSize = 0;
+				}
+				if (batchSize<1) return badRequest("batchSize must be a positive integer");
+			}
+			java.io.File operations = body.asRaw().asFile();
+			JsonNode results = null;
+			try{
+				//check the whole payload before applying anything: once a batch is committed it cannot be rolled back
+				JsonParser parser = BULK_MAPPER.getFactory().createParser(operations);
+				try{
+					while (parser.nextToken()!=null);
+				}finally{
+					parser.close();
+				}
+				parser = BULK_MAPPER.getFactory().createParser(operations);
+				try{
+					JsonToken first = parser.nextToken();
+					if (first==JsonToken.START_ARRAY) first = parser.nextToken();
+					Iterator<JsonNode> it = first==null || first==JsonToken.END_ARRAY ? 
+							Collections.<JsonNode>emptyIterator() : BULK_MAPPER.readValues(parser, JsonNode.class);
+					results = withBulkStatus(DocumentService.bulk(collection, it, batchSize));
+				}finally{
+					parser.close();
+				}
+			}catch (InvalidCollectionException e){
+				return notFound(ExceptionUtils.getMessage(e));
+			}catch (JsonProcessingException e){
+				return badRequest("JSON not valid. HINT: send a JSON array of operations or one JSON object per line. " + ExceptionUtils.getMessage(e));
+			}catch (Throwable e){
+				BaasBoxLogger.error(ExceptionUtils.getFullStackTrace(e));
+				return internalServerError(ExceptionUtils.getFullStackTrace(e));
+			}
+			if (BaasBoxLogger.isTraceEnabled()) BaasBoxLogger.trace("Method End");
+			response().setContentType("application/json");
+			return ok(results.toString());
+		}
+
+	/**
+	 * Replaces the error of each failed bulk operation with its HTTP status, and gives the others the OK status
+	 * @param results the outcome of the operations, as returned by {@link DocumentService#bulk(String, Iterator, int)}
+	 * @return the same array
+	 */
+	public static ArrayNode withBulkStatus(ArrayNode results){
+		for (JsonNode result : results){
+			JsonNode error = ((ObjectNode)result).remove(DocumentService.BULK_ERROR);
+			((ObjectNode)result).put("status", error==null ? Http.Status.OK : getBulkStatus(DocumentService.BulkError.valueOf(error.asText())));
+		}
+		return results;
+	}
+
+	private static int getBulkStatus(DocumentService.BulkError error){
+		switch (error){
+			case NOT_FOUND: return Http.Status.NOT_FOUND;
+			case FORBIDDEN: return Http.Status.FORBIDDEN;
+			case OLD_VERSION: return CustomHttpCode.DOCUMENT_VERSION.getBbCode();
+			case INVALID: return Http.Status.BAD_REQUEST;
+			default: return Http.Status.INTERNAL_SERVER_ERROR;
+		}
+	}
+
 	@With ({UserCredentialWrapFilter.class,ConnectToDBFilter.class,ExtractQueryParameters.class})
 		@BodyParser.Of(BodyParser.Json.class)
 		public static Result updateDocument(String collectionName, String id, boolean isUUID){
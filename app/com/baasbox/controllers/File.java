@@ -16,29 +16,21 @@
  */
 package com.baasbox.controllers;
 
-import java.io.FileInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URLEncoder;
-import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
-import org.apache.commons.io.output.ByteArrayOutputStream;
 import org.apache.commons.lang.exception.ExceptionUtils;
 import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.tika.metadata.Metadata;
-import org.apache.tika.parser.AutoDetectParser;
-import org.apache.tika.parser.ParseContext;
-import org.apache.tika.parser.Parser;
-import org.apache.tika.sax.BodyContentHandler;
-import org.json.simple.JSONObject;
+import org.apache.tika.io.TikaInputStream;
 
-import com.baasbox.BBConfiguration;
 import com.baasbox.service.logging.BaasBoxLogger;
 
 import play.mvc.Controller;
@@ -56,6 +48,7 @@ import com.baasbox.controllers.actions.filters.ConnectToDBFilter;
 import com.baasbox.controllers.actions.filters.ExtractQueryParameters;
 import com.baasbox.controllers.actions.filters.UserCredentialWrapFilter;
 import com.baasbox.controllers.actions.filters.UserOrAnonymousCredentialsFilter;
+import com.baasbox.dao.NodeDao;
 import com.baasbox.dao.PermissionsHelper;
 import com.baasbox.dao.exception.DocumentNotFoundException;
 import com.baasbox.dao.exception.FileNotFoundException;
@@ -69,11 +62,14 @@ import com.baasbox.exception.DocumentIsNotAnImageException;
 import com.baasbox.exception.FileTooBigException;
 import com.baasbox.exception.InvalidSizePatternException;
 import com.baasbox.exception.RoleNotFoundException;
+import com.baasbox.service.storage.ContentExtractor;
 import com.baasbox.service.storage.FileService;
+import com.baasbox.service.storage.ImageResizer;
 import com.baasbox.service.storage.StorageUtils;
 import com.baasbox.service.storage.StorageUtils.ImageDimensions;
 import com.baasbox.service.user.RoleService;
 import com.baasbox.service.user.UserService;
+import com.baasbox.util.HttpValidators;
 import com.baasbox.util.IQueryParametersKeys;
 import com.baasbox.util.JSONFormats;
 import com.baasbox.util.QueryParams;
@@ -84,7 +80,6 @@ import com.google.common.primitives.Ints;
 import com.orientechnologies.orient.core.exception.OSecurityAccessException;
 import com.orientechnologies.orient.core.exception.OSecurityException;
 import com.orientechnologies.orient.core.record.impl.ODocument;
-import com.orientechnologies.orient.core.record.impl.ORecordBytes;
 import com.orientechnologies.orient.core.serialization.serializer.OJSONWriter;
 
 
@@ -190,58 +185,19 @@ public class File extends Controller {
 			    	contentType = URLConnection.guessContentTypeFromStream(is);
 			    	if (contentType==null || contentType.isEmpty()) contentType="application/octet-stream";
 			    }*/
-				InputStream is = new FileInputStream(fileContent);
-		    	/* extract file metadata and content */
+				InputStream is = TikaInputStream.get(fileContent);
 		    	try{
-		    	    BodyContentHandler contenthandler = new BodyContentHandler(-1);
-		    		//DefaultHandler contenthandler = new DefaultHandler();
-			        Metadata metadata = new Metadata();
-			        metadata.set(Metadata.RESOURCE_NAME_KEY, fileName);
-			        Parser parser = new AutoDetectParser();
-			        try{
-			        	parser.parse(is, contenthandler, metadata,new ParseContext());
-			        }catch (Exception e){
-			        	BaasBoxLogger.warn("Could not parse the file " + fileName,e);
-			        	metadata.add("_bb_parser_error", ExceptionUtils.getMessage(e));
-			        	metadata.add("_bb_parser_exception", ExceptionUtils.getFullStackTrace(e));
-			        	metadata.add("_bb_parser_version", BBConfiguration.getApiVersion());
-			        }
-			        String contentType =  metadata.get(Metadata.CONTENT_TYPE);
-			       	if (StringUtils.isEmpty(contentType)) contentType="application/octet-stream";
-			       	
-			        HashMap<String,Object> extractedMetaData = new HashMap<String,Object>();
-			        for (String key:metadata.names()){
-			        	try{
-				        	if (metadata.isMultiValued(key)){
-				        		if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug(key + ": ");
-				        		for (String value: metadata.getValues(key)){
-				        			if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("   " + value);
-				        		}
-				        		extractedMetaData.put(key.replace(":", "_").replace(" ", "_").trim(), Arrays.asList(metadata.getValues(key)));
-				        	}else{
-				        		if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug(key + ": " + metadata.get(key));
-				        		extractedMetaData.put(key.replace(":", "_").replace(" ", "_").trim(), metadata.get(key));
-				        	}
-			        	}catch(Throwable e){
-			        		BaasBoxLogger.warn("Unable to extract metadata for file " + fileName + ", key " + key);
-			        	}
-			        }
-			      
-
-			        if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug(".................................");
-			        if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug(new JSONObject(extractedMetaData).toString());
-			    	
-			        is.close();
-			    	is=new FileInputStream(fileContent);
+		    		//only the type is detected here, the metadata and the text are extracted in background
+			        String contentType = ContentExtractor.detectContentType(is, fileName);
 			    	ODocument doc=FileService.createFile(
 			    			fileName,
 			    			dataJson,
 			    			aclJsonString,
 			    			contentType, 
 			    			fileContent.length(), 
-			    			is,
-			    			extractedMetaData,
-			    			contenthandler.toString());
+			    			is);
+			    	//the allowed sizes are prepared in background, before they are requested
+			    	if (StorageUtils.docIsAnImage(doc)) ImageResizer.resizeToAllowedSizes((String)doc.field("id"));
 			    	ret=prepareResponseToJson(doc); 
 		    	}catch ( JsonProcessingException e) {
 		    		throw new Exception ("Error parsing acl field. HINTS: is it a valid JSON string?", e);
@@ -343,29 +299,44 @@ public class File extends Controller {
 				boolean resizeIsEmpty=StringUtils.isEmpty(resize);
 				Integer sizeId = Ints.tryParse(ctx.request().getQueryString(QUERY_STRING_FIELD_RESIZE_ID)+"");
 				
-				byte[] output;
+				//the content of a file never changes: the tag is the hash of the content, or the id for files stored without it
+				String contentHash = doc.field(FileService.CONTENT_HASH_FIELD_NAME);
+				String etag="\"" + (contentHash==null ? doc.field("id") : contentHash);
+				ImageDimensions imgDim = null;
 				if (sizeId!=null){
-					output = FileService.getResizedPicture(id, sizeId);
+					etag += "-" + sizeId;
 					String[] fileName=((String)doc.field("fileName")).split("\\.");
 					filename=fileName[0] + "_" + sizeId + "." + (fileName.length>1?fileName[1]:"");
 				}else if (!resizeIsEmpty){
 					if (!ImagesConfiguration.IMAGE_ALLOWED_AUTOMATIC_RESIZE_FORMATS.getValueAsString().contains(resize) && !UserService.userCanByPassRestrictedAccess(DbHelper.currentUsername()))
 						throw new InvalidSizePatternException("The requested resize format is not allowed");
-					ImageDimensions imgDim = StorageUtils.convertPatternToDimensions(resize);
-					output = FileService.getResizedPicture(id, imgDim);
+					imgDim = StorageUtils.convertPatternToDimensions(resize);
+					etag += "-" + imgDim;
 					String[] fileName=((String)doc.field("fileName")).split("\\.");
 					filename=fileName[0] + "_" + resize + "." + (fileName.length>1?fileName[1]:"");
+				}
+				etag += "\"";
+				Date creationDate = doc.field(NodeDao.FIELD_CREATION_DATE);
+				long lastModified = creationDate==null ? 0 : creationDate.getTime();
+				if (HttpValidators.checkNotModified(ctx, etag, lastModified)) return status(NOT_MODIFIED);
+
+				InputStream output;
+				long length;
+				if (sizeId!=null){
+					byte[] resized = FileService.getResizedPicture(id, sizeId);
+					output = new ByteArrayInputStream(resized);
+					length = resized.length;
+				}else if (imgDim!=null){
+					byte[] resized = FileService.getResizedPicture(id, imgDim);
+					output = new ByteArrayInputStream(resized);
+					length = resized.length;
 				}else{
-					ORecordBytes record = doc.field(FileService.BINARY_FIELD_NAME);
-					ByteArrayOutputStream out = new ByteArrayOutputStream();
-					record.toOutputStream(out);
-					output=out.toByteArray();
+					output = FileService.getContent(doc);
+					length = (Long)doc.field(FileService.CONTENT_LENGTH_FIELD_NAME);
 				}
 				response().setContentType((String)doc.field(FileService.CONTENT_TYPE_FIELD_NAME));
-				response().setHeader("Content-Length", String.valueOf(output.length));
 				if (download) response().setHeader("Content-Disposition", "attachment; filename=\""+URLEncoder.encode(filename,"UTF-8")+"\"");
-				//return ok(new ByteArrayInputStream(output));
-				return ok(output);
+				return StreamedContent.serve(ctx, output, length, etag, lastModified);
 			} catch (SqlInjectionException e) {
 				return badRequest("the supplied id appears invalid (Sql Injection Attack detected)");
 			} catch (IOException e) {
@@ -38,6 +38,7 @@ import com.baasbox.dao.exception.SqlInjectionException;
 import com.baasbox.service.storage.LinkService;
 import com.baasbox.util.IQueryParametersKeys;
 import com.baasbox.util.JSONFormats;
+import com.baasbox.util.QueryCursor;
 import com.baasbox.util.QueryParams;
 import com.baasbox.util.JSONFormats.Formats;
 import com.orientechnologies.orient.core.record.impl.ODocument;
@@ -74,7 +75,9 @@ public class Link extends Controller{
 		List<ODocument> listOfLinks;
 		try {
 			listOfLinks = LinkService.getLink(criteria);
-		} catch (InvalidCriteriaException e) {
+			String nextCursor = criteria.nextCursor(listOfLinks);
+			if (nextCursor!=null) response().setHeader(QueryCursor.NEXT_CURSOR_HEADER, nextCursor);
+		} catch (InvalidCriteriaException | QueryCursor.InvalidCursorException e) {
 			return badRequest(ExceptionUtils.getMessage(e));
 		} catch (SqlInjectionException e) {
 			return badRequest("The parameters you passed are incorrect. HINT: check if the querystring is correctly encoded");
@@ -27,6 +27,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 
+import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 
 import play.mvc.BodyParser;
@@ -46,7 +47,11 @@ import com.baasbox.service.logging.PushLogger;
 import com.baasbox.service.push.PushNotInitializedException;
 import com.baasbox.service.push.PushProfileDisabledException;
 import com.baasbox.service.push.PushProfileInvalidException;
+import com.baasbox.service.push.PushJob;
+import com.baasbox.service.push.PushQueueFullException;
 import com.baasbox.service.push.PushService;
+import com.baasbox.service.push.providers.APNServer;
+import com.baasbox.service.push.providers.GCMServer;
 import com.baasbox.service.push.providers.PushActionLocalizedKeyFormatException;
 import com.baasbox.service.push.providers.PushBadgeFormatException;
 import com.baasbox.service.push.providers.PushCategoryFormatException;
@@ -181,6 +186,7 @@ public class Push extends Controller {
 				pushLogger.disable();
 			}
 			if (request().getQueryString("verbose")!=null && request().getQueryString("verbose").equalsIgnoreCase("true")) verbose=true;
+			boolean async=BooleanUtils.toBoolean(request().getQueryString("async"));
 				
 			Http.RequestBody body = request().body();
 			JsonNode bodyJson= body.asJson(); //{"message":"Text"}
@@ -244,6 +250,13 @@ public class Push extends Controller {
 			try{
 				boolean isValid=(ps.validate(pushProfiles));
 				pushLogger.addMessage("Profiles validation: %s", isValid);
+				if (isValid && async){
+					//the payload is checked now, the job reports only delivery errors
+					APNServer.validatePushPayload(bodyJson);
+					GCMServer.validatePushPayload(bodyJson);
+					PushJob job = ps.enqueue(DbHelper.getCurrentAppCode(), DbHelper.currentUsername(), message, usernames, pushProfiles, bodyJson);
+					return status(ACCEPTED, job.toJson());
+				}
 				if (isValid) withError=ps.send(message, usernames, pushProfiles, bodyJson, withError);
 				pushLogger.addMessage("Service result: %s", Booleans.join(", ", withError));
 			}
@@ -261,6 +274,10 @@ public class Push extends Controller {
 				BaasBoxLogger.error(ExceptionUtils.getMessage(e));
 				return status(CustomHttpCode.PUSH_PROFILE_DISABLED.getBbCode(),CustomHttpCode.PUSH_PROFILE_DISABLED.getDescription());
 			}
+			catch (PushQueueFullException e) {
+				BaasBoxLogger.warn(ExceptionUtils.getMessage(e));
+				return status(SERVICE_UNAVAILABLE, ExceptionUtils.getMessage(e));
+			}
 			catch (PushProfileInvalidException e) {
 				BaasBoxLogger.error(ExceptionUtils.getMessage(e));
 				return status(CustomHttpCode.PUSH_PROFILE_FORMAT_INVALID.getBbCode(),CustomHttpCode.PUSH_PROFILE_FORMAT_INVALID.getDescription());
@@ -340,6 +357,19 @@ public class Push extends Controller {
 
 
 
+	/**
+	 * Returns the status of a push notification sent with async=true.
+	 * Only the user that sent it, or an administrator, can read it
+	 */
+	@BodyParser.Of(BodyParser.Empty.class)
+	public static Result getJob(String id){
+		PushJob job = PushService.getJob(id);
+		if (job==null || !(job.getSender().equals(DbHelper.currentUsername()) || UserService.isAnAdmin(DbHelper.currentUsername())))
+			return notFound("Push job " + id + " not found");
+		return ok(job.toJson());
+	}
+
+
 	public static Result enablePush(String os, String pushToken) throws SqlInjectionException{
 		if (BaasBoxLogger.isTraceEnabled()) BaasBoxLogger.trace("Method Start");
 		if(os==null) return badRequest("OS value cannot be null");
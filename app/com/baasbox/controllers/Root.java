@@ -47,6 +47,7 @@ import com.baasbox.dao.exception.SqlInjectionException;
 import com.baasbox.exception.OpenTransactionException;
 import com.baasbox.exception.UserNotFoundException;
 import com.baasbox.metrics.BaasBoxMetric;
+import com.baasbox.metrics.PrometheusExporter;
 import com.baasbox.service.dbmanager.DbManagerService;
 import com.baasbox.service.user.UserService;
 import com.codahale.metrics.json.MetricsModule;
@@ -92,6 +93,16 @@ public class Root extends Controller {
 			return ok(mapper.writeValueAsString(BaasBoxMetric.registry.getTimers()));
 	    }
 
+		/**
+		 * The metrics in the Prometheus text format, including the latency percentiles of every route
+		 */
+		@With(RootCredentialWrapFilter.class)
+		public static Result prometheus() {
+			if (!BaasBoxMetric.isActivate()) return status(SERVICE_UNAVAILABLE,"The metrics service are disabled");
+			response().setContentType(PrometheusExporter.CONTENT_TYPE);
+			return ok(PrometheusExporter.export(BaasBoxMetric.registry, BaasBoxMetric.getRouteLatencies(), BaasBoxMetric.getTagLatencies()));
+		}
+
 		@With(RootCredentialWrapFilter.class)
 	    public static Result counters() throws JsonProcessingException {
 			if (!BaasBoxMetric.isActivate()) return status(SERVICE_UNAVAILABLE,"The metrics service are disabled");
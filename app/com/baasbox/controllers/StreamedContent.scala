@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2014.
+ *
+ * BaasBox - info-at-baasbox.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baasbox.controllers;
+
+import java.io.InputStream
+import org.apache.commons.io.input.BoundedInputStream
+import play.api.libs.iteratee.Enumerator
+import play.api.libs.concurrent.Execution.Implicits._
+import play.api.mvc.{ResponseHeader, SimpleResult}
+import play.mvc.Http
+import com.baasbox.util.ByteRange
+
+/**
+ * Sends binary content (files and assets) to the client a chunk at a time, honoring the Range and If-Range headers.
+ * The Java API of Play can only stream using the chunked transfer encoding, which does not allow to declare
+ * the Content-Length, so the result is built here.
+ */
+object StreamedContent {
+	val CHUNK_SIZE = 64 * 1024
+
+	/**
+	 * @param ctx the current context, the Content-Type and the other headers are taken from its response
+	 * @param content the content to send, it is closed when the response is completed
+	 * @param length the length of the content
+	 * @param etag the entity tag of the content, may be null
+	 * @param lastModified the last modification time of the content, 0 if unknown
+	 */
+	def serve(ctx: Http.Context, content: InputStream, length: Long, etag: String, lastModified: Long): play.mvc.SimpleResult = {
+		val request = ctx.request()
+		val response = ctx.response()
+		response.setHeader("Accept-Ranges", "bytes")
+		if (etag != null) response.setHeader("ETag", etag)
+		val range =
+			if (ByteRange.ifRangeMatches(request.getHeader("If-Range"), etag, lastModified)) ByteRange.parse(request.getHeader("Range"), length)
+			else null
+		if (range == null) {
+			sized(200, content, length)
+		} else if (!range.isSatisfiable()) {
+			content.close()
+			response.setHeader("Content-Range", range.toContentRange())
+			sized(416, null, 0)
+		} else {
+			skip(content, range.getStart())
+			response.setHeader("Content-Range", range.toContentRange())
+			sized(206, new BoundedInputStream(content, range.getLength()), range.getLength())
+		}
+	}
+
+	//InputStream.skip() lets a chunked content skip the chunks not requested, IOUtils.skip() would read them
+	private def skip(content: InputStream, n: Long) {
+		var remaining = n
+		while (remaining > 0) {
+			val skipped = content.skip(remaining)
+			if (skipped <= 0) {
+				if (content.read() < 0) throw new java.io.EOFException("Cannot skip " + n + " bytes")
+				remaining -= 1
+			} else remaining -= skipped
+		}
+	}
+
+	private def sized(status: Int, content: InputStream, length: Long): play.mvc.SimpleResult = {
+		val body = if (content == null) Enumerator.empty[Array[Byte]] else Enumerator.fromStream(content, CHUNK_SIZE)
+		val result = SimpleResult(ResponseHeader(status, Map("Content-Length" -> length.toString)), body)
+		new StreamedResult(result)
+	}
+}
+
+/**
+ * A result whose body is read from a stream while it is sent, the body can be consumed only once
+ */
+class StreamedResult(result: SimpleResult) extends play.mvc.SimpleResult {
+	override def getWrappedSimpleResult = result
+}
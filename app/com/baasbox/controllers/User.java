@@ -74,6 +74,7 @@ import com.baasbox.service.user.RoleService;
 import com.baasbox.service.user.UserService;
 import com.baasbox.util.IQueryParametersKeys;
 import com.baasbox.util.JSONFormats;
+import com.baasbox.util.QueryCursor;
 import com.baasbox.util.QueryParams;
 import com.baasbox.util.Util;
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -154,8 +155,12 @@ public class User extends Controller {
 		List<ODocument> profiles=null;;
 		try {
 			profiles = UserService.getUsers(criteria,true);
+			String nextCursor = criteria.nextCursor(profiles);
+			if (nextCursor!=null) response().setHeader(QueryCursor.NEXT_CURSOR_HEADER, nextCursor);
 		} catch (SqlInjectionException e) {
 			return badRequest(ExceptionUtils.getMessage(e) + " -- " + ExceptionUtils.getRootCauseMessage(e));
+		} catch (QueryCursor.InvalidCursorException e) {
+			return badRequest(ExceptionUtils.getMessage(e));
 		}
 		String result=prepareResponseToJson(profiles);
 		if (BaasBoxLogger.isTraceEnabled()) BaasBoxLogger.trace("Method End");
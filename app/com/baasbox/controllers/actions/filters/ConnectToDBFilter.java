@@ -64,6 +64,7 @@ public class ConnectToDBFilter extends Action.Simple {
 			//(this may happen in case of Promise usage)
 			DbHelper.close(DbHelper.getConnection());
 	        try{
+	        	//pooled connections are already authenticated: they are handed out only for the same credentials
 	        	database=DbHelper.open(appcode,username,password);
 
                 if(!Tags.verifyAccess(ctx)){
@@ -94,6 +95,9 @@ public class ConnectToDBFilter extends Action.Simple {
 		}finally{
 			Http.Context.current.set(ctx); 
 			if (DbHelper.getConnection()!=null && DbHelper.isInTransaction()) DbHelper.rollbackTransaction();
+			//the controller may have switched user context (i.e. reconnectAsAdmin), give back both connections to the pool
+			ODatabaseRecordTx current = DbHelper.getConnection();
+			if (current!=null && current!=database) DbHelper.close(current);
 			DbHelper.close(database);
 		}
 		if (BaasBoxLogger.isTraceEnabled()) BaasBoxLogger.trace("Method End");
@@ -17,6 +17,7 @@
 package com.baasbox.controllers.actions.filters;
 
 import com.baasbox.util.IQueryParametersKeys;
+import com.baasbox.util.QueryCursor;
 import com.baasbox.util.QueryParams;
 
 import com.baasbox.service.logging.BaasBoxLogger;
@@ -25,6 +26,7 @@ import play.mvc.Action;
 import play.mvc.Http;
 import play.mvc.Http.Context;
 import play.mvc.Result;
+import play.mvc.Results;
 import play.mvc.SimpleResult;
 import play.libs.F;
 
@@ -36,7 +38,12 @@ public class ExtractQueryParameters extends Action.Simple{
 		Http.Context.current.set(ctx);		
 		if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("ExtractQueryParameters for resource " + Http.Context.current().request());
 		
-		QueryParams qryp =QueryParams.getParamsFromQueryString(Http.Context.current().request());
+		QueryParams qryp;
+		try{
+			qryp =QueryParams.getParamsFromQueryString(Http.Context.current().request());
+		}catch (QueryCursor.InvalidCursorException e){
+			return F.Promise.<SimpleResult>pure(Results.badRequest(e.getMessage()));
+		}
 		if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("ExtractQueryParameters " + qryp);
 		
 		ctx.args.put(IQueryParametersKeys.QUERY_PARAMETERS, qryp);
@@ -23,9 +23,9 @@ import play.mvc.Http;
 import play.mvc.Http.Context;
 import play.mvc.Result;
 
+import com.baasbox.security.Session;
 import com.baasbox.security.SessionKeys;
 import com.baasbox.security.SessionTokenProvider;
-import com.google.common.collect.ImmutableMap;
 import play.mvc.SimpleResult;
 import play.libs.F;
 
@@ -41,11 +41,11 @@ public class InjectSession extends Action.Simple {
 		//injects the user data & credential into the context
 		String token=ctx.request().getHeader(SessionKeys.TOKEN.toString());
 		if (token!=null) {
-			  ImmutableMap<SessionKeys, ? extends Object> sessionData = SessionTokenProvider.getSessionTokenProvider().getSession(token);
+			  Session sessionData = SessionTokenProvider.getSessionTokenProvider().touchSession(token);
 			  if (sessionData!=null){
-					ctx.args.put("username", sessionData.get(SessionKeys.USERNAME));
-					ctx.args.put("password", sessionData.get(SessionKeys.PASSWORD));
-					ctx.args.put("appcode", sessionData.get(SessionKeys.APP_CODE));
+					ctx.args.put("username", sessionData.getUsername());
+					ctx.args.put("password", sessionData.getPassword());
+					ctx.args.put("appcode", sessionData.getAppcode());
 					ctx.args.put("token", token);
 			  }
 		}
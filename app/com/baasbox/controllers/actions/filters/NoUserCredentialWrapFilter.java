@@ -41,10 +41,10 @@ public class NoUserCredentialWrapFilter extends Action.Simple {
 		F.Promise<SimpleResult> tempResult = delegate.call(ctx);
 
 		WrapResponse wr = new WrapResponse();
-		SimpleResult result=wr.wrap(ctx, tempResult);
-				
+		F.Promise<SimpleResult> result=wr.wrap(ctx, tempResult);
+		
 		if (BaasBoxLogger.isTraceEnabled()) BaasBoxLogger.trace("Method End");
-	    return F.Promise.<SimpleResult>pure(result);
+	    return result;
 	}
 
 }
@@ -100,10 +100,10 @@ public class RootCredentialWrapFilter extends Action.Simple {
 
 
 		WrapResponse wr = new WrapResponse();
-		SimpleResult result=wr.wrap(ctx, tempResult);
+		F.Promise<SimpleResult> result=wr.wrap(ctx, tempResult);
 		
 		if (BaasBoxLogger.isTraceEnabled()) BaasBoxLogger.trace("Method End");
-	    return F.Promise.<SimpleResult>pure(result);	
+	    return result;
 	}
 
 }
@@ -76,11 +76,10 @@ public class UserCredentialWrapFilter extends Action.Simple {
 		
 		
 		WrapResponse wr = new WrapResponse();
-		SimpleResult result=wr.wrap(ctx, tempResult);
-				
-		if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug(result.toString());
+		F.Promise<SimpleResult> result=wr.wrap(ctx, tempResult);
+		
 		if (BaasBoxLogger.isTraceEnabled()) BaasBoxLogger.trace("Method End");
-	    return F.Promise.<SimpleResult>pure(result);
+	    return result;
 	}
 
 }
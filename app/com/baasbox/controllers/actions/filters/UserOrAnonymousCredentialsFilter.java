@@ -108,10 +108,9 @@ public class UserOrAnonymousCredentialsFilter extends Action.Simple {
 		}
 
 		WrapResponse wr = new WrapResponse();
-		SimpleResult result = wr.wrap(ctx, tempResult);
-		if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug(result.toString());
+		F.Promise<SimpleResult> result = wr.wrap(ctx, tempResult);
 		if (BaasBoxLogger.isTraceEnabled()) BaasBoxLogger.trace("Method End");
-		return F.Promise.<SimpleResult>pure(result);
+		return result;
 	}
 
 }
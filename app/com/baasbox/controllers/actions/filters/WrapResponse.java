@@ -16,7 +16,9 @@
  */
 package com.baasbox.controllers.actions.filters;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
@@ -40,8 +42,12 @@ import play.mvc.SimpleResult;
 
 import com.baasbox.BBConfiguration;
 import com.baasbox.controllers.CustomHttpCode;
+import com.baasbox.controllers.StreamedResult;
 import com.baasbox.service.logging.BaasBoxLogger;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
@@ -60,6 +66,12 @@ public class WrapResponse {
 	// This pattern matches " package.class.exception : optional message'" 
 	private static Pattern headLinePattern = Pattern.compile("([\\w\\.]+)(:.*)?");
 	
+	//JsonFactory is thread safe, it is used to validate the bodies to wrap without building a tree
+	private static final JsonFactory jsonFactory = new JsonFactory();
+	
+	private static final byte[] OK_PREFIX = "\"result\":\"ok\",\"data\":".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] HTTP_CODE_PREFIX = ",\"http_code\":".getBytes(StandardCharsets.UTF_8);
+	
 	/* inspired by https://stackoverflow.com/questions/10013713/reading-and-parsing-java-exceptions */ 
 	private List<String> tryToExtractTheStackTrace(String error){
         Matcher traceMatcher = tracePattern.matcher(error);
@@ -198,43 +210,98 @@ public class WrapResponse {
 		response.setHeader("Date",httpDate);
 	}
 
-	private SimpleResult onOk(int statusCode,RequestHeader request, String stringBody) throws IOException  {
-		ObjectNode result = prepareOK(statusCode, request, stringBody);
-		result.put("http_code", statusCode);
-		return Results.status(statusCode,result); 
+	/**
+	 * Writes the {"result":"ok","data":...,"http_code":...} envelope around the body returned by the controller.
+	 * If the body is a JSON value its bytes are copied as they are, otherwise the body is written as a JSON string.
+	 * The output is the same produced by {@link #prepareOK(int, RequestHeader, String)}, but no JSON tree is built.
+	 */
+	private byte[] writeOkEnvelope(int statusCode,RequestHeader request, byte[] body) throws IOException  {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(body.length + 64);
+		out.write('{');
+		String callId = request.getQueryString("call_id");
+		if (!StringUtils.isEmpty(callId)) {
+			out.write("\"call_id\":\"".getBytes(StandardCharsets.UTF_8));
+			out.write(JsonStringEncoder.getInstance().quoteAsUTF8(callId));
+			out.write("\",".getBytes(StandardCharsets.UTF_8));
+		}
+		out.write(OK_PREFIX);
+		int end = jsonValueEnd(body);
+		if (end>=0) {
+			out.write(body, 0, end);
+		} else {
+			out.write('"');
+			out.write(JsonStringEncoder.getInstance().quoteAsUTF8(new String(body, StandardCharsets.UTF_8)));
+			out.write('"');
+		}
+		out.write(HTTP_CODE_PREFIX);
+		out.write(Integer.toString(statusCode).getBytes(StandardCharsets.UTF_8));
+		out.write('}');
+		return out.toByteArray();
+	}
+	
+	/**
+	 * Scans the first JSON value contained into the body
+	 * @return the offset of the end of the value, or -1 if the body does not start with a valid JSON value
+	 */
+	private static int jsonValueEnd(byte[] body) {
+		try (JsonParser parser = jsonFactory.createParser(body)) {
+			if (parser.nextToken()==null) return -1;
+			parser.skipChildren();
+			return (int) parser.getCurrentLocation().getByteOffset();
+		} catch (IOException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * @return true if the result must be sent as it is: files, chunked responses and streamed contents.
+	 * Their bodies cannot be read here, since a stream can be consumed only once
+	 */
+	private static boolean isPassThrough(Context ctx, SimpleResult result){
+		String contentType = ctx.response().getHeaders().get("Content-Type");
+		if (contentType!=null && !contentType.contains("json")) return true;
+		return result instanceof StreamedResult || result.getWrappedResult() instanceof ChunkedResult<?>;
 	}
 
-	public SimpleResult wrap(Context ctx, F.Promise<SimpleResult> simpleResult) throws Throwable {
+	/**
+	 * Wraps the result of the action once it is available.
+	 * No thread is blocked waiting for the action: the wrapping is composed on the returned promise
+	 */
+	public F.Promise<SimpleResult> wrap(final Context ctx, F.Promise<SimpleResult> simpleResult) {
+		return simpleResult.map(result -> wrapResult(ctx, result));
+	}
+
+	private SimpleResult wrapResult(Context ctx, SimpleResult result) throws Throwable {
 		if (BaasBoxLogger.isTraceEnabled()) BaasBoxLogger.trace("Method Start");
 		
-		SimpleResult result=simpleResult.get(10000);
 		ctx.response().setHeader("Access-Control-Allow-Origin", "*");
 		ctx.response().setHeader("Access-Control-Allow-Headers", "X-Requested-With");
 		//this is an hack because scala can't access to the http context, and we need this information for the access log
 		String username=(String) ctx.args.get("username");
 		if (username!=null) ctx.response().setHeader("BB-USERNAME", username);
 		
+		if (result.getWrappedSimpleResult().header().status()==304){
+			//a 304 has no body, and it must not declare the Content-Length of an envelope (RFC 7232)
+			if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("Not Modified, no wrap will be applied");
+			setServerTime(ctx.response());
+			return result;
+		}
+		
 	    byte[] resultContent=null;
 		if (BBConfiguration.getWrapResponse()){
 			if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("Wrapping the response");
 			final int statusCode = result.getWrappedSimpleResult().header().status();
 			if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("Executed API: "  + ctx.request() + " , return code " + statusCode);
 			if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("Result type:"+result.getWrappedResult().getClass().getName() + " Response Content-Type:" +ctx.response().getHeaders().get("Content-Type"));
-			if (ctx.response().getHeaders().get("Content-Type")!=null 
-		    		&& 
-		    	!ctx.response().getHeaders().get("Content-Type").contains("json")){
-		    	if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("The response is a file, no wrap will be applied");
-		    	return result;
-		    }
-		    
-		    if(result.getWrappedResult() instanceof ChunkedResult<?>){
+			if (isPassThrough(ctx, result)){
+		    	if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("The response is a file or a stream, no wrap will be applied");
 		    	return result;
 		    }
 		    	
 			final byte[] body = JavaResultExtractor.getBody(result);
-			String stringBody = new String(body, "UTF-8");
-		    if (BaasBoxLogger.isTraceEnabled()) if (BaasBoxLogger.isTraceEnabled()) BaasBoxLogger.trace ("stringBody: " +stringBody);
+		    if (BaasBoxLogger.isTraceEnabled()) BaasBoxLogger.trace ("stringBody: " + new String(body, "UTF-8"));
 			if (statusCode>399){	//an error has occured
+				String stringBody = new String(body, "UTF-8");
 			      switch (statusCode) {
 			      	case 400: 	result =onBadRequest(ctx.request(),stringBody);
 			      				break;
@@ -252,22 +319,23 @@ public class WrapResponse {
 						}
 			      	break;
 			      }
+		    }else if (statusCode==204){
+		    	result = Results.noContent();
+		    	resultContent = new byte[0];
 		    }else{ //status is not an error
-		    	result=onOk(statusCode,ctx.request(),stringBody);
+		    	resultContent=writeOkEnvelope(statusCode,ctx.request(),body);
+		    	result=Results.status(statusCode,resultContent);
+		    	ctx.response().setContentType("application/json; charset=utf-8");
 		    } //if (statusCode>399)
-			if (statusCode==204) result = Results.noContent();
-			try {
-				if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("WrapperResponse:\n  + result: \n" + result.toString() + "\n  --> Body:\n" + new String(JavaResultExtractor.getBody(result),"UTF-8"));
-			}catch (Throwable e){}
 		}else{ //if (BBConfiguration.getWrapResponse())
 			if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("The response will not be wrapped due configuration parameter");
-			try {
-				if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("WrapperResponse:\n  + result: \n" + result.toString() + "\n  --> Body:\n" + new String(JavaResultExtractor.getBody(result),"UTF-8"));
-			}catch (Throwable e){}
-			if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("WrapperResponse:\n  + result: \n" + result.toString() + "\n  --> Body:\n" + new String(JavaResultExtractor.getBody(result),"UTF-8"));
+			//reading the body of a stream to compute its Content-Length would leave nothing to send
+			if (isPassThrough(ctx, result)) return result;
 		}
+		if (resultContent==null) resultContent=JavaResultExtractor.getBody(result);
+		if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("WrapperResponse:\n  + result: \n" + result.toString() + "\n  --> Body:\n" + new String(resultContent,"UTF-8"));
 		setServerTime(ctx.response());
-		ctx.response().setHeader("Content-Length", Long.toString(JavaResultExtractor.getBody(result).length));
+		ctx.response().setHeader("Content-Length", Long.toString(resultContent.length));
 		if (BaasBoxLogger.isTraceEnabled()) BaasBoxLogger.trace("Method End");
 		return result;
 	}//wrap
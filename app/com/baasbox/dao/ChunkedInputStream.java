@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2014.
+ *
+ * BaasBox - info-at-baasbox.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baasbox.dao;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.IntFunction;
+
+/**
+ * Reads a content stored in fixed size chunks, loading one chunk at a time.
+ * Skipping bytes does not load the chunks skipped, so reading a range touches only the chunks it needs.
+ */
+public class ChunkedInputStream extends InputStream {
+	private final long length;
+	private final int chunkSize;
+	private final IntFunction<byte[]> loader;
+	private long position = 0;
+	private int chunkIndex = -1;
+	private byte[] chunk = null;
+
+	/**
+	 * @param length the length of the whole content
+	 * @param chunkSize the size of each chunk but the last one
+	 * @param loader returns the content of the chunk with the given index
+	 */
+	public ChunkedInputStream(long length, int chunkSize, IntFunction<byte[]> loader) {
+		if (chunkSize <= 0) throw new IllegalArgumentException("chunkSize must be positive");
+		this.length = length;
+		this.chunkSize = chunkSize;
+		this.loader = loader;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (position >= length) return -1;
+		int offset = loadChunk();
+		position++;
+		return chunk[offset] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) return 0;
+		if (position >= length) return -1;
+		int offset = loadChunk();
+		int n = (int) Math.min(Math.min(len, chunk.length - offset), length - position);
+		System.arraycopy(chunk, offset, b, off, n);
+		position += n;
+		return n;
+	}
+
+	@Override
+	public long skip(long n) {
+		long skipped = Math.max(0, Math.min(n, length - position));
+		position += skipped;
+		return skipped;
+	}
+
+	@Override
+	public int available() {
+		if (chunk == null || position >= length || position / chunkSize != chunkIndex) return 0;
+		return (int) Math.min(chunk.length - position % chunkSize, length - position);
+	}
+
+	@Override
+	public void close() {
+		chunk = null;
+		chunkIndex = -1;
+	}
+
+	//loads the chunk containing the current position, returns the offset of the position in the chunk
+	private int loadChunk() throws IOException {
+		int index = (int) (position / chunkSize);
+		int offset = (int) (position % chunkSize);
+		if (index != chunkIndex) {
+			chunk = null;
+			try {
+				chunk = loader.apply(index);
+			} catch (RuntimeException e) {
+				throw new IOException("Unable to read the chunk " + index, e);
+			}
+			if (chunk == null || chunk.length <= offset) throw new IOException("The chunk " + index + " is missing or truncated");
+			chunkIndex = index;
+		}
+		return offset;
+	}
+}
@@ -23,6 +23,7 @@ import com.baasbox.dao.exception.InvalidCollectionException;
 import com.baasbox.dao.exception.InvalidModelException;
 import com.baasbox.dao.exception.SqlInjectionException;
 import com.baasbox.db.DbHelper;
+import com.baasbox.db.RecordCounters;
 import com.baasbox.enumerations.DefaultRoles;
 import com.baasbox.exception.OpenTransactionException;
 import com.orientechnologies.orient.core.db.record.OIdentifiable;
@@ -170,6 +171,7 @@ public class CollectionDao extends NodeDao {
 			//drop the collection class outside collection
 			String dropCollection= "drop class " + name;
 			gdao.executeCommand(dropCollection, new Object[] {});
+			RecordCounters.invalidate(name);
 			
 		} catch (Exception e) {
 			//rollback in case of error
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2014.
+ *
+ * BaasBox - info-at-baasbox.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baasbox.dao;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.baasbox.db.DbHelper;
+import com.baasbox.service.logging.BaasBoxLogger;
+import com.orientechnologies.orient.core.db.record.ODatabaseRecordTx;
+import com.orientechnologies.orient.core.db.record.OIdentifiable;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.index.OCompositeKey;
+import com.orientechnologies.orient.core.index.OIndex;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.sql.query.OSQLSynchQuery;
+
+/**
+ * The registry of the devices that can receive push notifications.
+ * Each (os, pushToken) pair is unique and belongs to one user, so registrations, de-duplications and the
+ * push fan-out are index lookups instead of scans of the login_info lists of the users.
+ * The login_info list of the user is still kept in sync by the UserService, for backward compatibility.
+ */
+public class DeviceDao {
+	public static final String MODEL_NAME = "_BB_Device";
+	public static final String OS = "os";
+	public static final String PUSH_TOKEN = "pushToken";
+	//link to the _BB_User record that owns the device
+	public static final String USER = "user";
+
+	private static final String TOKEN_INDEX = MODEL_NAME + ".os_pushToken";
+
+	private final ODatabaseRecordTx db;
+
+	public static DeviceDao getInstance(){
+		return new DeviceDao();
+	}
+
+	protected DeviceDao() {
+		db = DbHelper.getConnection();
+	}
+
+	/**
+	 * @return the device registered with the given os and token, or null
+	 */
+	public ODocument getByToken(String os, String pushToken){
+		OIndex idx = db.getMetadata().getIndexManager().getIndex(TOKEN_INDEX);
+		OIdentifiable record = (OIdentifiable) idx.get(new OCompositeKey(os, pushToken));
+		if (record == null) return null;
+		return db.load(record.getIdentity());
+	}
+
+	/**
+	 * @return the devices of the given users
+	 */
+	public List<ODocument> getByUsers(Collection<ORID> users){
+		if (users.isEmpty()) return new ArrayList<ODocument>();
+		OSQLSynchQuery<ODocument> query = new OSQLSynchQuery<ODocument>("select from " + MODEL_NAME + " where " + USER + " in ?");
+		return DbHelper.commandExecute(db.command(query), new Object[]{new ArrayList<ORID>(users)});
+	}
+
+	public List<ODocument> getByUser(ORID user){
+		OSQLSynchQuery<ODocument> query = new OSQLSynchQuery<ODocument>("select from " + MODEL_NAME + " where " + USER + " = ?");
+		return DbHelper.commandExecute(db.command(query), new Object[]{user});
+	}
+
+	/**
+	 * Creates the device, or assigns it to the given user if it is already registered
+	 * @return the user that owned the device before, or null if the device was new or already owned by the user
+	 */
+	public ORID register(ORID user, String os, String pushToken){
+		ODocument device = getByToken(os, pushToken);
+		if (device == null){
+			device = new ODocument(MODEL_NAME);
+			device.field(OS, os);
+			device.field(PUSH_TOKEN, pushToken);
+			device.field(USER, user);
+			device.save();
+			if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("Registered device " + os + " " + pushToken);
+			return null;
+		}
+		OIdentifiable owner = device.field(USER);
+		if (owner != null && owner.getIdentity().equals(user)) return null;
+		device.field(USER, user);
+		device.save();
+		return owner == null ? null : owner.getIdentity();
+	}
+
+	public void delete(ODocument device){
+		device.delete();
+	}
+}
@@ -20,6 +20,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.codec.digest.DigestUtils;
+
 import com.baasbox.dao.exception.InvalidModelException;
 import com.baasbox.dao.exception.SqlInjectionException;
 import com.baasbox.enumerations.DefaultRoles;
@@ -33,6 +35,8 @@ public class FileAssetDao extends NodeDao {
 	public final static String MODEL_NAME="_BB_FileAsset";
 	public final static String BINARY_FIELD_NAME = "file";
 	public final static String CONTENT_TYPE_FIELD_NAME="contentType";
+	//SHA-256 of the content, in hex
+	public final static String CONTENT_HASH_FIELD_NAME = "contentHash";
 	
 	protected FileAssetDao(String modelName) {
 		super(modelName);
@@ -56,6 +60,7 @@ public class FileAssetDao extends NodeDao {
 		asset.field("fileName",fileName);
 		asset.field("contentType",contentType);
 		asset.field("contentLength",content.length);
+		asset.field(CONTENT_HASH_FIELD_NAME,DigestUtils.sha256Hex(content));
 		super.grantPermission(asset, Permissions.ALLOW_READ,DefaultRoles.getORoles());
 		super.grantPermission(asset, Permissions.ALLOW_UPDATE,DefaultRoles.getORoles()); //this is necessary due the resize API
 		return asset;
@@ -84,6 +89,7 @@ public class FileAssetDao extends NodeDao {
 		ORecordBytes record = new ORecordBytes(content);
 		doc.field(BINARY_FIELD_NAME,record);
 		doc.field("contentLength",content.length);
+		doc.field(CONTENT_HASH_FIELD_NAME,DigestUtils.sha256Hex(content));
 		return doc;
 	}
 
@@ -18,18 +18,33 @@
 
 package com.baasbox.dao;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.exception.ExceptionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.json.simple.JSONObject;
 
+import com.baasbox.BBConfiguration;
 import com.baasbox.dao.exception.InvalidModelException;
 import com.baasbox.dao.exception.SqlInjectionException;
+import com.baasbox.db.DbHelper;
+import com.baasbox.exception.InvalidAppCodeException;
+import com.baasbox.service.logging.BaasBoxLogger;
 import com.baasbox.util.QueryParams;
+import com.orientechnologies.orient.core.db.record.OIdentifiable;
+import com.orientechnologies.orient.core.db.record.ODatabaseRecordTx;
+import com.orientechnologies.orient.core.db.record.ORecordLazyMultiValue;
 import com.orientechnologies.orient.core.exception.OConcurrentModificationException;
 import com.orientechnologies.orient.core.exception.OSecurityException;
 import com.orientechnologies.orient.core.id.ORID;
@@ -38,7 +53,12 @@ import com.orientechnologies.orient.core.record.impl.ORecordBytes;
 
 public class FileDao extends NodeDao  {
 	public final static String MODEL_NAME="_BB_File";
+	//files stored before the content was split in chunks have the whole content in this field
 	public final static String BINARY_FIELD_NAME = "file";
+	public final static String CHUNKS_FIELD_NAME = "chunks";
+	public final static String CHUNK_SIZE_FIELD_NAME = "chunkSize";
+	//SHA-256 of the content, in hex
+	public final static String CONTENT_HASH_FIELD_NAME = "contentHash";
 	public final static String CONTENT_TYPE_FIELD_NAME="contentType";
 	public final static String CONTENT_LENGTH_FIELD_NAME="contentLength";
 	public static final String FILENAME_FIELD_NAME="fileName";
@@ -46,6 +66,8 @@ public class FileDao extends NodeDao  {
 	public static final String METADATA_FIELD_NAME = "metadata";
 	private static final String FILE_CONTENT_CLASS = "_BB_FILE_CONTENT";
 	public static final String FILE_CONTENT_FIELD_NAME = "text_content";
+	public static final String EXTRACTION_STATUS_FIELD_NAME = "extractionStatus";
+	private static final int MAX_CONCURRENT_SAVE_ATTEMPTS = 5;
 	
 	protected FileDao(String modelName) {
 		super(modelName);
@@ -62,13 +84,7 @@ public class FileDao extends NodeDao  {
 	}
 	
 	public ODocument create(String fileName, String contentType, byte[] content) throws Throwable{
-		ODocument file=super.create();
-		ORecordBytes record = new ORecordBytes(content);
-		file.field(BINARY_FIELD_NAME,record);
-		file.field(FILENAME_FIELD_NAME,fileName);
-		file.field(CONTENT_TYPE_FIELD_NAME,contentType);
-		file.field(CONTENT_LENGTH_FIELD_NAME,new Long(content.length));
-		return file;
+		return this.create(fileName, contentType, content.length, new ByteArrayInputStream(content));
 	}
 
 	public ODocument create(String fileName, String contentType, long contentLength, InputStream content) throws Throwable{
@@ -79,12 +95,16 @@ public class FileDao extends NodeDao  {
 			long contentLength, InputStream is, HashMap<String, ?> metadata,
 			String contentString) throws Throwable {
 		ODocument file=super.create();
-		ORecordBytes record = new ORecordBytes();
-		record.fromInputStream(is, (int) contentLength);
-		file.field(BINARY_FIELD_NAME,record);
+		int chunkSize = BBConfiguration.getFilesChunkSize();
+		List<ORID> chunks = new ArrayList<ORID>();
+		MessageDigest digest = MessageDigest.getInstance("SHA-256");
+		long length = storeChunks(is, chunkSize, chunks, digest);
+		file.field(CHUNKS_FIELD_NAME,chunks);
+		file.field(CONTENT_HASH_FIELD_NAME,Hex.encodeHexString(digest.digest()));
+		file.field(CHUNK_SIZE_FIELD_NAME,chunkSize);
 		file.field(FILENAME_FIELD_NAME,fileName);
 		file.field(CONTENT_TYPE_FIELD_NAME,contentType);
-		file.field(CONTENT_LENGTH_FIELD_NAME,new Long(contentLength));
+		file.field(CONTENT_LENGTH_FIELD_NAME,new Long(length));
 		if (metadata!=null){
             ODocument doc = new ODocument();
             doc = doc.fromJSON(new JSONObject(metadata).toString());
@@ -127,18 +147,55 @@ public class FileDao extends NodeDao  {
 	
 	public  void storeResizedPicture(ODocument file,String sizePattern, byte[] resizedImage) throws InvalidModelException {
 		super.checkModelDocument(file);
-		Map<String,ORID> resizedMap=(Map<String,ORID>) file.field(RESIZED_IMAGE_FIELD_NAME);
-		if (resizedMap==null) resizedMap=new HashMap<String,ORID>();
-		resizedMap.put(sizePattern, new ORecordBytes().fromStream(resizedImage).save().getIdentity());
-		file.field(RESIZED_IMAGE_FIELD_NAME,resizedMap);
-		try{
-			this.save(file);
-		}catch (OConcurrentModificationException e){
-			//just ignore it...
-		}catch (OSecurityException e){ 
-			//just ignore it because it happens when someone who has read access to the file, but not the right to update it, are asking for it 
+		ORID resized = new ORecordBytes().fromStream(resizedImage).save().getIdentity();
+		//the sizes of the same file are resized concurrently: on conflict the file is reloaded and the update is applied again
+		for (int attempt=1;;attempt++){
+			Map<String,ORID> resizedMap=(Map<String,ORID>) file.field(RESIZED_IMAGE_FIELD_NAME);
+			if (resizedMap==null) resizedMap=new HashMap<String,ORID>();
+			resizedMap.put(sizePattern, resized);
+			file.field(RESIZED_IMAGE_FIELD_NAME,resizedMap);
+			try{
+				this.save(file);
+				return;
+			}catch (OConcurrentModificationException e){
+				if (attempt>=MAX_CONCURRENT_SAVE_ATTEMPTS){
+					BaasBoxLogger.warn("Unable to store the image " + file.field("id") + " resized to " + sizePattern + ": " + ExceptionUtils.getMessage(e));
+					DbHelper.getConnection().delete(resized);
+					return;
+				}
+				file.reload();
+			}catch (OSecurityException e){ 
+				//just ignore it because it happens when someone who has read access to the file, but not the right to update it, are asking for it 
+				DbHelper.getConnection().delete(resized);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Stores the metadata and the text extracted from the content of the file, with the status of the extraction
+	 * @param metadata may be null
+	 * @param content may be null
+	 */
+	public void storeExtractedContent(ODocument file, HashMap<String, ?> metadata, String content, String status) throws InvalidModelException {
+		super.checkModelDocument(file);
+		//the owner may update the attached data while the content is extracted: on conflict the file is reloaded and the update is applied again
+		for (int attempt=1;;attempt++){
+			if (metadata!=null){
+				file.field(METADATA_FIELD_NAME,(new ODocument()).fromJSON(new JSONObject(metadata).toString()));
+			}
+			if (!StringUtils.isEmpty(content)){
+				file.field(FILE_CONTENT_FIELD_NAME,(new ODocument(FILE_CONTENT_CLASS)).field("content",content));
+			}
+			file.field(EXTRACTION_STATUS_FIELD_NAME,status);
+			try{
+				this.save(file);
+				return;
+			}catch (OConcurrentModificationException e){
+				if (attempt>=MAX_CONCURRENT_SAVE_ATTEMPTS) throw e;
+				file.reload();
+			}
 		}
-		
 	}
 
 	public String getExtractedContent(ODocument file) { 
@@ -148,6 +205,91 @@ public class FileDao extends NodeDao  {
 		return  content;
 	}
 
+	/**
+	 * Returns the content of a file. Files split in chunks are read one chunk at a time: the chunks are loaded
+	 * through the connection bound to the current thread, or through a dedicated one if the stream is read
+	 * after the request connection has been closed (i.e. while the response is being sent)
+	 */
+	public InputStream getContent(ODocument file) throws InvalidModelException {
+		super.checkModelDocument(file);
+		if (!file.containsField(CHUNKS_FIELD_NAME)) {
+			ORecordBytes record = file.field(BINARY_FIELD_NAME);
+			//toStream() returns the loaded content without copying it
+			return new ByteArrayInputStream(record == null ? new byte[]{} : record.toStream());
+		}
+		final List<ORID> chunks = getChunks(file);
+		final String appcode = DbHelper.getCurrentAppCode();
+		long length = (Long) file.field(CONTENT_LENGTH_FIELD_NAME);
+		int chunkSize = (Integer) file.field(CHUNK_SIZE_FIELD_NAME);
+		return new ChunkedInputStream(length, chunkSize, index -> loadChunk(appcode, chunks.get(index)));
+	}
+
+	/**
+	 * Deletes the records holding the content of a file
+	 */
+	public void deleteContent(ODocument file) {
+		ODatabaseRecordTx db = DbHelper.getConnection();
+		for (ORID chunk : getChunks(file)) {
+			try {
+				db.delete(chunk);
+			} catch (RuntimeException e) {
+				BaasBoxLogger.warn("Unable to delete the chunk " + chunk + " of the file " + file.field("id") + ": " + ExceptionUtils.getMessage(e));
+			}
+		}
+	}
+
+	//writes the content in records of chunkSize bytes, returns the length of the content
+	private static long storeChunks(InputStream is, int chunkSize, List<ORID> chunks, MessageDigest digest) throws IOException {
+		ODatabaseRecordTx db = DbHelper.getConnection();
+		long length = 0;
+		try {
+			int read;
+			do {
+				byte[] buffer = new byte[chunkSize];
+				read = IOUtils.read(is, buffer);
+				if (read == 0) break;
+				digest.update(buffer, 0, read);
+				ORecordBytes chunk = new ORecordBytes(read == chunkSize ? buffer : Arrays.copyOf(buffer, read));
+				chunk.save();
+				chunks.add(chunk.getIdentity());
+				length += read;
+				//the chunk is on disk, it must not stay in memory
+				if (!DbHelper.isInTransaction()) db.getLevel1Cache().deleteRecord(chunk.getIdentity());
+			} while (read == chunkSize);
+		} catch (IOException | RuntimeException e) {
+			for (ORID chunk : chunks) db.delete(chunk);
+			throw e;
+		}
+		return length;
+	}
+
+	private static List<ORID> getChunks(ODocument file) {
+		List<ORID> rids = new ArrayList<ORID>();
+		List<OIdentifiable> chunks = file.field(CHUNKS_FIELD_NAME);
+		if (chunks == null) return rids;
+		//the chunks are not loaded just to know their ids
+		Iterator<OIdentifiable> it = chunks instanceof ORecordLazyMultiValue ? ((ORecordLazyMultiValue) chunks).rawIterator() : chunks.iterator();
+		while (it.hasNext()) rids.add(it.next().getIdentity());
+		return rids;
+	}
+
+	private static byte[] loadChunk(String appcode, ORID rid) {
+		ODatabaseRecordTx db = DbHelper.getConnection();
+		boolean dedicated = db == null || db.isClosed();
+		try {
+			if (dedicated) db = DbHelper.open(appcode, BBConfiguration.getBaasBoxAdminUsername(), BBConfiguration.getBaasBoxAdminPassword());
+			ORecordBytes chunk = db.load(rid);
+			if (chunk == null) return null;
+			byte[] content = chunk.toStream();
+			db.getLevel1Cache().deleteRecord(rid);
+			return content;
+		} catch (InvalidAppCodeException e) {
+			throw new RuntimeException(e);
+		} finally {
+			if (dedicated) DbHelper.close(db);
+		}
+	}
+
 
 
 }
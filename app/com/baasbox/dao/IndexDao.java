@@ -18,11 +18,16 @@
 
 package com.baasbox.dao;
 
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.baasbox.dao.exception.SqlInjectionException;
 import com.baasbox.db.DbHelper;
 import com.baasbox.exception.IndexNotFoundException;
+import com.baasbox.service.logging.BaasBoxLogger;
 import com.baasbox.util.QueryParams;
 import com.orientechnologies.orient.core.db.record.ODatabaseRecordTx;
 import com.orientechnologies.orient.core.record.impl.ODocument;
@@ -32,6 +37,17 @@ public abstract class IndexDao{
 	public static final String MODEL_NAME = "_BB_Index";
 	protected ODatabaseRecordTx db;
 	
+	//process-wide copy of the _BB_Index content, keyed by the stored key (INDEX_NAME:key). Settings are read on almost every request and written rarely
+	private static final ConcurrentHashMap<String,Object> cache = new ConcurrentHashMap<String,Object>();
+	//placeholder for keys that have no value on db, since ConcurrentHashMap does not allow nulls
+	private static final Object NULL_VALUE = new Object();
+	//keys written by the transaction open on the current thread, evicted again once it ends
+	private static final ThreadLocal<Set<String>> pendingKeys = new ThreadLocal<Set<String>>() {
+		protected Set<String> initialValue() {return new HashSet<String>();};
+	};
+	//incremented when a transaction writing some keys ends, so a get that read the db before can tell its value may be stale
+	private static final AtomicLong generation = new AtomicLong();
+	
 	protected IndexDao(String indexName) throws IndexNotFoundException {
 		this.INDEX_NAME=indexName.toUpperCase();
 		this.db=DbHelper.getConnection();
@@ -51,6 +67,11 @@ public abstract class IndexDao{
 		newValue.field("value",value);
 		newValue.save();
 		//index.put(key, newValue);
+		//within a transaction the value is not visible to the others until the commit: it will be reloaded at the next get
+		if (DbHelper.isInTransaction()){
+			cache.remove(indexKey);
+			pendingKeys.get().add(indexKey);
+		}else cache.put(indexKey, value==null ? NULL_VALUE : value);
 		return this;
 	}
 	
@@ -71,8 +92,59 @@ public abstract class IndexDao{
 	}
 	
 	public Object get (String key){
-		ODocument valueOnDb=getODocument(key);
-		if (valueOnDb==null) return null;
-		return valueOnDb.field("value");
+		String indexKey = this.INDEX_NAME+":"+key;
+		Object value = cache.get(indexKey);
+		if (value==null){
+			long readGeneration = generation.get();
+			ODocument valueOnDb=getODocument(key);
+			value = valueOnDb==null ? null : valueOnDb.field("value");
+			//a concurrent put may have stored a newer value in the meanwhile
+			if (!DbHelper.isInTransaction()){
+				Object cached = value==null ? NULL_VALUE : value;
+				//a transaction ended while reading: the value read may be the one it replaced
+				if (cache.putIfAbsent(indexKey, cached)==null && generation.get()!=readGeneration) cache.remove(indexKey, cached);
+			}
+		}
+		return value==NULL_VALUE ? null : value;
+	}
+	
+	/**
+	 * Evicts the keys written by the transaction of the current thread. To be called once it is committed or rolled back:
+	 * a concurrent get may have cached the value it replaced before the commit
+	 */
+	public static void transactionEnded(){
+		Set<String> keys = pendingKeys.get();
+		if (keys.isEmpty()) return;
+		generation.incrementAndGet();
+		for (String key: keys){
+			cache.remove(key);
+		}
+		keys.clear();
+	}
+
+	/**
+	 * Loads all the stored settings into the cache. Called at startup and after a db import
+	 */
+	public static void loadCache(){
+		cache.clear();
+		try{
+			List<ODocument> docs = GenericDao.getInstance().executeQuery(MODEL_NAME, QueryParams.getInstance());
+			for (ODocument doc: docs){
+				String indexKey = doc.field("key");
+				if (indexKey==null) continue;
+				Object value = doc.field("value");
+				cache.put(indexKey, value==null ? NULL_VALUE : value);
+			}
+			BaasBoxLogger.info("Settings cache loaded: " + cache.size() + " keys");
+		}catch(SqlInjectionException sie){
+			throw new RuntimeException(sie);
+		}
+	}
+	
+	/**
+	 * Empties the cache. To be called when the _BB_Index content is replaced (i.e. db drop or import)
+	 */
+	public static void invalidateCache(){
+		cache.clear();
 	}
 }
@@ -21,6 +21,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.UUID;
 
+import org.apache.commons.lang.StringUtils;
+
 import com.baasbox.exception.UserNotFoundException;
 import com.baasbox.service.logging.BaasBoxLogger;
 import com.baasbox.dao.exception.DocumentNotFoundException;
@@ -29,11 +31,13 @@ import com.baasbox.dao.exception.InvalidModelException;
 import com.baasbox.dao.exception.SqlInjectionException;
 import com.baasbox.dao.exception.UpdateOldVersionException;
 import com.baasbox.db.DbHelper;
+import com.baasbox.db.RecordCounters;
 import com.baasbox.enumerations.Permissions;
 import com.baasbox.service.storage.BaasBoxPrivateFields;
 import com.baasbox.util.QueryParams;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.orientechnologies.orient.core.command.OCommandRequest;
+import com.orientechnologies.orient.core.command.OCommandResultListener;
 import com.orientechnologies.orient.core.db.record.ODatabaseRecordTx;
 import com.orientechnologies.orient.core.exception.OCommandExecutionException;
 import com.orientechnologies.orient.core.exception.ODatabaseException;
@@ -211,6 +215,33 @@ public abstract class NodeDao  {
 	}
 
 
+	/**
+	 * Executes the query pushing each record to the listener as soon as it is read, so the result is never held in memory
+	 * @param criteria
+	 * @param listener
+	 * @throws SqlInjectionException
+	 * @throws InvalidCriteriaException
+	 */
+	public void stream(QueryParams criteria, OCommandResultListener listener) throws SqlInjectionException, InvalidCriteriaException {
+		if (BaasBoxLogger.isTraceEnabled()) BaasBoxLogger.trace("Method Start");
+		OCommandRequest command = DbHelper.selectAsyncCommandBuilder(MODEL_NAME, criteria, listener);
+		try{
+			DbHelper.filterOUserPasswords(true);
+			command.execute((Object[])criteria.getParams());
+		}catch (OCommandExecutionException e ){
+			throw new InvalidCriteriaException("Invalid criteria. Please check if your querystring is encoded in a corrected way. Double check the single-quote and the quote characters",e);
+		}catch (OQueryParsingException e ){
+			throw new InvalidCriteriaException("Invalid criteria. Please check if your querystring is encoded in a corrected way. Double check the single-quote and the quote characters",e);
+		}catch (OCommandSQLParsingException e){
+			throw new InvalidCriteriaException(e);
+		}catch (IndexOutOfBoundsException e){
+			throw new InvalidCriteriaException("Invalid criteria. Please check your query, the syntax and the parameters",e);
+		}finally{
+			DbHelper.filterOUserPasswords(false);
+		}
+		if (BaasBoxLogger.isTraceEnabled()) BaasBoxLogger.trace("Method End");
+	}
+
 	public ODocument get(ORID rid) throws InvalidModelException, DocumentNotFoundException {
 		if (BaasBoxLogger.isTraceEnabled()) BaasBoxLogger.trace("Method Start");
 		Object doc=db.load(rid);
@@ -280,11 +311,16 @@ public abstract class NodeDao  {
 
 	
 	public long getCount(){
-		return DbHelper.getODatabaseDocumentTxConnection().countClass(MODEL_NAME);
+		return RecordCounters.count(MODEL_NAME);
 	}
 	
 	public long getCount(QueryParams criteria) throws SqlInjectionException{
 		if (BaasBoxLogger.isTraceEnabled()) BaasBoxLogger.trace("Method Start");
+		//the other users may not be allowed to read all the records, the query applies their permissions
+		if (StringUtils.isEmpty(criteria.getWhere()) && DbHelper.isConnectedAsAdmin(false)) {
+			if (BaasBoxLogger.isTraceEnabled()) BaasBoxLogger.trace("Method End");
+			return RecordCounters.count(MODEL_NAME);
+		}
 		List<ODocument> result = null;
 		OCommandRequest command = DbHelper.selectCommandBuilder(MODEL_NAME, true, criteria);
 		try{
@@ -0,0 +1,343 @@
+/*
+ * Copyright (c) 2014.
+ *
+ * BaasBox - info-at-baasbox.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baasbox.db;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.exception.ExceptionUtils;
+
+import play.libs.Akka;
+import scala.concurrent.duration.FiniteDuration;
+import akka.actor.Cancellable;
+
+import com.baasbox.BBConfiguration;
+import com.baasbox.db.hook.HooksManager;
+import com.baasbox.service.logging.BaasBoxLogger;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.MapMaker;
+import com.orientechnologies.orient.core.db.ODatabaseRecordThreadLocal;
+import com.orientechnologies.orient.core.db.record.ODatabaseRecord;
+import com.orientechnologies.orient.core.db.record.ODatabaseRecordTx;
+
+/**
+ * Keeps already opened and authenticated OrientDB connections, grouped by the OrientDB user that owns them.
+ * A connection is handed out again only to a caller that presents the same credentials used to open it,
+ * so the password is verified by OrientDB once and then just compared against a digest.
+ * <p>
+ * The pool bounds the number of idle connections kept for each user and the number of users kept in the pool:
+ * when the limit is reached the connections of the least recently seen user are closed to make room.
+ * Idle connections, and the whole pool of a user not seen, are closed after the configured idle timeout.
+ * Connections are never shared: a borrowed connection is bound to the calling thread until it is released.
+ * <p>
+ * Pooled connections are discarded when the OUser or ORole records change (see {@link com.baasbox.db.hook.SecurityChanges})
+ * or when the whole database is replaced ({@link #invalidateAll()}).
+ */
+public class ConnectionPool {
+
+	private static class PooledConnection {
+		final ODatabaseRecordTx db;
+		final UserPool pool;
+		final byte[] digest;
+		final long userGeneration;
+		final long globalGeneration;
+		//the thread the connection is bound to, null while the connection is idle
+		volatile Thread owner;
+		//when the connection went back to the pool
+		volatile long idleSince;
+
+		PooledConnection(ODatabaseRecordTx db, UserPool pool, byte[] digest, long userGeneration, long globalGeneration) {
+			this.db = db;
+			this.pool = pool;
+			this.digest = digest;
+			this.userGeneration = userGeneration;
+			this.globalGeneration = globalGeneration;
+		}
+	}
+
+	private static class UserPool {
+		//the most recently released connections come first
+		final Deque<PooledConnection> idle = new ConcurrentLinkedDeque<PooledConnection>();
+		final AtomicInteger size = new AtomicInteger();
+		final AtomicLong generation = new AtomicLong();
+	}
+
+	//the pools of the users, the least recently seen are evicted when there are too many, or when they are idle for too long
+	private static volatile Cache<String, UserPool> pools;
+
+	//closes the idle connections when there is no traffic to do it
+	private static volatile Cancellable evictor;
+
+	//connections handled by the pool, both idle and in use. Weak keys: a caller may close a pooled connection directly and forget it
+	private static final ConcurrentMap<ODatabaseRecordTx, PooledConnection> managed = new MapMaker().weakKeys().makeMap();
+
+	private static final AtomicLong globalGeneration = new AtomicLong();
+
+	/**
+	 * Returns an idle connection opened by the given user with the given password, and binds it to the current thread.
+	 * @return the connection, or null if the pool has not a suitable connection and a new one has to be opened
+	 */
+	public static ODatabaseRecordTx borrow(String username, String password) {
+		if (!BBConfiguration.getConnectionPoolEnabled() || username == null) return null;
+		UserPool pool = getPools().getIfPresent(username);
+		if (pool == null) return null;
+		byte[] digest = digest(password);
+		long now = System.currentTimeMillis();
+		PooledConnection pc;
+		while ((pc = pool.idle.pollFirst()) != null) {
+			pool.size.decrementAndGet();
+			if (!isValid(pc, pool) || isExpired(pc, now)) {
+				discard(pc.db);
+				continue;
+			}
+			if (!MessageDigest.isEqual(pc.digest, digest)) {
+				//different credentials: they have to be checked by OrientDB. Keep the connection for its legit owner
+				pool.size.incrementAndGet();
+				pool.idle.offerFirst(pc);
+				return null;
+			}
+			pc.owner = Thread.currentThread();
+			ODatabaseRecordThreadLocal.INSTANCE.set(pc.db);
+			if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("Reusing pooled connection for " + username);
+			return pc.db;
+		}
+		return null;
+	}
+
+	/**
+	 * Marks a connection just opened by {@link DbHelper#open(String, String, String)} as eligible to return to the pool
+	 */
+	public static void register(ODatabaseRecordTx db, String username, String password) {
+		if (!BBConfiguration.getConnectionPoolEnabled() || db == null || username == null) return;
+		UserPool pool = getOrCreateUserPool(username);
+		PooledConnection pc = new PooledConnection(db, pool, digest(password), pool.generation.get(), globalGeneration.get());
+		pc.owner = Thread.currentThread();
+		managed.put(db, pc);
+	}
+
+	/**
+	 * Gives back a connection previously obtained through {@link #borrow(String, String)} or {@link #register(ODatabaseRecordTx, String, String)}.
+	 * Any pending transaction is rolled back and the connection is unbound from the current thread.
+	 * Releasing a connection already released, or bound to another thread, has no effect.
+	 * @return false if the connection is not managed by the pool: in this case the caller has to close it
+	 */
+	public static boolean release(ODatabaseRecordTx db) {
+		if (db == null) return false;
+		PooledConnection pc = managed.get(db);
+		if (pc == null) return false;
+		if (pc.owner != Thread.currentThread()) return true;
+		pc.owner = null;
+		if (db.isClosed()) {
+			managed.remove(db);
+			return true;
+		}
+		UserPool pool = pc.pool;
+		try {
+			if (db.getTransaction().isActive()) {
+				db.getTransaction().rollback();
+				db.getTransaction().close();
+			}
+			HooksManager.enableHidePasswordHook(db, false);
+			db.getLevel1Cache().clear();
+		} catch (Throwable e) {
+			BaasBoxLogger.warn("Unable to reset the connection, it will be closed: " + ExceptionUtils.getMessage(e));
+			pool = null;
+		}
+		boolean keep = pool != null && isValid(pc, pool);
+		if (keep && pool.size.incrementAndGet() > BBConfiguration.getConnectionPoolMaxIdlePerUser()) {
+			pool.size.decrementAndGet();
+			keep = false;
+		}
+		if (!keep) {
+			managed.remove(db);
+			db.close();
+			return true;
+		}
+		unbind(db);
+		long now = System.currentTimeMillis();
+		pc.idleSince = now;
+		pool.idle.offerFirst(pc);
+		//the pool may have been evicted or invalidated meanwhile: nobody else would close the connection
+		if (!isValid(pc, pool)) drain(pool);
+		else closeExpired(pool, now);
+		return true;
+	}
+
+	/**
+	 * Discards the pooled connections of the given user. Connections currently in use are closed when released.
+	 */
+	public static void invalidate(String username) {
+		if (username == null) return;
+		UserPool pool = getPools().getIfPresent(username);
+		if (pool == null) return;
+		if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("Invalidating pooled connections for " + username);
+		pool.generation.incrementAndGet();
+		drain(pool);
+	}
+
+	/**
+	 * Discards all the pooled connections. To be called when roles change or the database is dropped/restored
+	 */
+	public static void invalidateAll() {
+		if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("Invalidating all pooled connections");
+		globalGeneration.incrementAndGet();
+		Cache<String, UserPool> c = pools;
+		if (c != null) for (UserPool pool : c.asMap().values()) drain(pool);
+	}
+
+	/**
+	 * Closes all the pooled connections and stops the evictor. To be called when the application stops
+	 */
+	public static synchronized void shutdown() {
+		if (evictor != null) evictor.cancel();
+		evictor = null;
+		invalidateAll();
+		if (pools != null) pools.invalidateAll();
+		pools = null;
+	}
+
+	private static Cache<String, UserPool> getPools() {
+		Cache<String, UserPool> c = pools;
+		if (c == null) {
+			synchronized (ConnectionPool.class) {
+				if (pools == null) {
+					int idleTimeout = BBConfiguration.getConnectionPoolIdleTimeout();
+					CacheBuilder<String, UserPool> builder = CacheBuilder.newBuilder()
+							.maximumSize(BBConfiguration.getConnectionPoolMaxUsers())
+							.removalListener(new RemovalListener<String, UserPool>() {
+								@Override
+								public void onRemoval(RemovalNotification<String, UserPool> notification) {
+									if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("Evicting pooled connections for " + notification.getKey() + " (" + notification.getCause() + ")");
+									UserPool pool = notification.getValue();
+									pool.generation.incrementAndGet();
+									drain(pool);
+								}
+							});
+					if (idleTimeout > 0) {
+						builder.expireAfterAccess(idleTimeout, TimeUnit.SECONDS);
+						startEvictor(idleTimeout);
+					}
+					pools = builder.build();
+				}
+				c = pools;
+			}
+		}
+		return c;
+	}
+
+	//without traffic the cache does not evict anything: every idleTimeout seconds the expired connections and pools are closed
+	private static void startEvictor(int idleTimeout) {
+		final long timeoutInMilliseconds = TimeUnit.SECONDS.toMillis(idleTimeout);
+		evictor = Akka.system().scheduler().schedule(
+				new FiniteDuration(timeoutInMilliseconds, TimeUnit.MILLISECONDS),
+				new FiniteDuration(timeoutInMilliseconds, TimeUnit.MILLISECONDS),
+				new Runnable() {
+					@Override
+					public void run() {
+						Cache<String, UserPool> c = pools;
+						if (c == null) return;
+						long now = System.currentTimeMillis();
+						for (UserPool pool : c.asMap().values()) closeExpired(pool, now);
+						c.cleanUp();
+					}
+				},
+				Akka.system().dispatcher());
+	}
+
+	private static UserPool getOrCreateUserPool(String username) {
+		Cache<String, UserPool> c = getPools();
+		UserPool pool = c.getIfPresent(username);
+		if (pool != null) return pool;
+		pool = new UserPool();
+		UserPool existing = c.asMap().putIfAbsent(username, pool);
+		return existing == null ? pool : existing;
+	}
+
+	private static boolean isValid(PooledConnection pc, UserPool pool) {
+		return !pc.db.isClosed()
+				&& pc.userGeneration == pool.generation.get()
+				&& pc.globalGeneration == globalGeneration.get();
+	}
+
+	private static boolean isExpired(PooledConnection pc, long now) {
+		long timeout = BBConfiguration.getConnectionPoolIdleTimeout();
+		return timeout > 0 && now - pc.idleSince > TimeUnit.SECONDS.toMillis(timeout);
+	}
+
+	//the idle connections are ordered by release time, so the expired ones are at the end of the deque
+	private static void closeExpired(UserPool pool, long now) {
+		PooledConnection pc;
+		while ((pc = pool.idle.peekLast()) != null && isExpired(pc, now)) {
+			//a borrower may have taken it meanwhile
+			if (pool.idle.removeLastOccurrence(pc)) {
+				pool.size.decrementAndGet();
+				discard(pc.db);
+			}
+		}
+	}
+
+	private static void drain(UserPool pool) {
+		PooledConnection pc;
+		while ((pc = pool.idle.pollFirst()) != null) {
+			pool.size.decrementAndGet();
+			discard(pc.db);
+		}
+	}
+
+	private static void unbind(ODatabaseRecordTx db) {
+		ODatabaseRecord current = ODatabaseRecordThreadLocal.INSTANCE.getIfDefined();
+		if (current == db) ODatabaseRecordThreadLocal.INSTANCE.remove();
+	}
+
+	//closes an idle connection without touching the connection bound to the current thread
+	private static void discard(ODatabaseRecordTx db) {
+		managed.remove(db);
+		ODatabaseRecord current = ODatabaseRecordThreadLocal.INSTANCE.getIfDefined();
+		try {
+			if (!db.isClosed()) {
+				ODatabaseRecordThreadLocal.INSTANCE.set(db);
+				db.close();
+			}
+		} catch (Throwable e) {
+			BaasBoxLogger.warn("Error closing a pooled connection: " + ExceptionUtils.getMessage(e));
+		} finally {
+			if (current != null && current != db) ODatabaseRecordThreadLocal.INSTANCE.set(current);
+			else ODatabaseRecordThreadLocal.INSTANCE.remove();
+		}
+	}
+
+	private static byte[] digest(String password) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			return md.digest((password == null ? "" : password).getBytes(StandardCharsets.UTF_8));
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -46,6 +46,7 @@ import com.baasbox.IBBConfigurationKeys;
 import com.baasbox.configuration.Internal;
 import com.baasbox.configuration.IosCertificateHandler;
 import com.baasbox.configuration.PropertiesConfigurationHelper;
+import com.baasbox.dao.IndexDao;
 import com.baasbox.dao.RoleDao;
 import com.baasbox.dao.UserDao;
 import com.baasbox.dao.exception.SqlInjectionException;
@@ -62,12 +63,15 @@ import com.baasbox.exception.UnableToExportDbException;
 import com.baasbox.exception.UnableToImportDbException;
 import com.baasbox.service.logging.BaasBoxLogger;
 import com.baasbox.service.permissions.PermissionTagService;
+import com.baasbox.service.scripting.ScriptingService;
 import com.baasbox.service.user.RoleService;
 import com.baasbox.service.user.UserService;
 import com.baasbox.util.QueryParams;
 import com.eaio.uuid.UUID;
 import com.orientechnologies.orient.core.command.OCommandOutputListener;
 import com.orientechnologies.orient.core.command.OCommandRequest;
+import com.orientechnologies.orient.core.command.OCommandRequestText;
+import com.orientechnologies.orient.core.command.OCommandResultListener;
 import com.orientechnologies.orient.core.db.ODatabaseRecordThreadLocal;
 import com.orientechnologies.orient.core.db.document.ODatabaseDocumentTx;
 import com.orientechnologies.orient.core.db.record.ODatabaseRecordTx;
@@ -79,6 +83,7 @@ import com.orientechnologies.orient.core.metadata.security.ORole;
 import com.orientechnologies.orient.core.metadata.security.OUser;
 import com.orientechnologies.orient.core.record.impl.ODocument;
 import com.orientechnologies.orient.core.sql.OCommandSQL;
+import com.orientechnologies.orient.core.sql.query.OSQLAsynchQuery;
 import com.orientechnologies.orient.core.sql.query.OSQLSynchQuery;
 import com.tinkerpop.blueprints.impls.orient.OrientGraph;
 import com.tinkerpop.blueprints.impls.orient.OrientGraphNoTx;
@@ -155,6 +160,7 @@ public class DbHelper {
 			if (tranCount.get()==0) {
 				db.commit();
 				db.getTransaction().close();
+				IndexDao.transactionEnded();
 			}	
 		}else throw new NoTransactionException("There is no open transaction to commit");
 		if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("Commit Transaction: transaction count -after-: " + tranCount.get());
@@ -169,6 +175,7 @@ public class DbHelper {
 			db.getTransaction().rollback();
 			db.getTransaction().close();
 			tranCount.set(0);
+			IndexDao.transactionEnded();
 		}
 		if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("Rollback Transaction: transaction count -after-: " + tranCount.get());
 	}
@@ -225,16 +232,33 @@ public class DbHelper {
 	 */
 	public static OCommandRequest selectCommandBuilder(String from, boolean count, QueryParams criteria) throws SqlInjectionException{
 		ODatabaseRecordTx db =  DbHelper.getConnection();
-		OCommandRequest command = db.command(new OSQLSynchQuery<ODocument>(
-				selectQueryBuilder(from, count, criteria)
-				));
-		if (!command.isIdempotent()) throw new SqlInjectionException();
+		String sql = selectQueryBuilder(from, count, criteria);
+		//the same statements are validated just once
+		if (!StatementCache.get(sql).isSelect()) throw new SqlInjectionException();
+		OCommandRequest command = db.command(new OSQLSynchQuery<ODocument>(sql));
 		if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("commandBuilder: ");
 		if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("  " + criteria.toString());
 		if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("  " + command.toString());
 		return command;
 	}
 
+	/***
+	 * Prepares a select statement whose records are pushed one by one to the listener, instead of being collected into a list
+	 * @param from the class to query
+	 * @param criteria the criteria to apply in the 'where' clause of the select
+	 * @param listener receives each record. It can stop the query returning false
+	 * @return an OCommandRequest object ready to be executed. The execution returns when all the records have been pushed to the listener
+	 * @throws SqlInjectionException If the query is not a select statement
+	 */
+	public static OCommandRequest selectAsyncCommandBuilder(String from, QueryParams criteria, OCommandResultListener listener) throws SqlInjectionException{
+		ODatabaseRecordTx db =  DbHelper.getConnection();
+		String sql = selectQueryBuilder(from, false, criteria);
+		if (!StatementCache.get(sql).isSelect()) throw new SqlInjectionException();
+		OCommandRequest command = db.command(new OSQLAsynchQuery<ODocument>(sql, listener));
+		if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("asyncCommandBuilder: " + command.toString());
+		return command;
+	}
+
 	/***
 	 * Executes a select eventually passing the parameters 
 	 * @param command
@@ -243,21 +267,32 @@ public class DbHelper {
 	 */
 	public static List<ODocument> selectCommandExecute(OCommandRequest command, Object[] params){
 		DbHelper.filterOUserPasswords(true);
-		List<ODocument> queryResult = command.execute((Object[])params);
+		List<ODocument> queryResult = timedExecute(command,params);
 		DbHelper.filterOUserPasswords(false);
 		return queryResult;
 	}
 	public static Integer sqlCommandExecute(OCommandRequest command, Object[] params){
-		Integer updateQueryResult = command.execute((Object[])params);
+		Integer updateQueryResult = timedExecute(command,params);
 		return updateQueryResult;
 	}
 	public static List<ODocument> commandExecute(OCommandRequest command, Object[] params){
 		DbHelper.filterOUserPasswords(true);
-        List<ODocument> queryResult = command.execute((Object[])params);
+        List<ODocument> queryResult = timedExecute(command,params);
         DbHelper.filterOUserPasswords(false);
         return queryResult;
 	}
 	
+	/**
+	 * Executes the command, recording its execution time in the {@link QueryStats}
+	 */
+	private static <RET> RET timedExecute(OCommandRequest command, Object[] params){
+		long start = System.nanoTime();
+		RET result = command.execute((Object[])params);
+		String text = command instanceof OCommandRequestText ? ((OCommandRequestText)command).getText() : command.toString();
+		QueryStats.record(text, params, System.nanoTime() - start, result);
+		return result;
+	}
+	
 	/**
 	 * Prepares the command API to execute an arbitrary SQL statement
 	 * @param theQuery
@@ -276,7 +311,7 @@ public class DbHelper {
 	 * @return
 	 */
 	public static Object genericSQLCommandExecute(OCommandRequest command, Object[] params){
-		Object queryResult = command.execute((Object[])params);
+		Object queryResult = timedExecute(command,params);
 		return queryResult;
 	}
 	
@@ -304,6 +339,11 @@ public class DbHelper {
 				if(!dbFreeze){
 					dbFreeze = true;
 				}
+				ConnectionPool.invalidateAll();
+				IndexDao.invalidateCache();
+				RecordCounters.invalidateAll();
+				PermissionTagService.invalidateSnapshot();
+				ScriptingService.invalidateCache();
 				db.drop();
 				db.close();
 				db.create();
@@ -354,9 +394,12 @@ public class DbHelper {
 		String databaseName=BBConfiguration.getDBDir();
 		if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("opening connection on db: " + databaseName + " for " + username);
 		
-		new ODatabaseDocumentTx("plocal:" + BBConfiguration.getDBDir())
-				.open(username,password);
-		HooksManager.registerAll(getConnection());
+		if (ConnectionPool.borrow(username, password)==null){
+			new ODatabaseDocumentTx("plocal:" + BBConfiguration.getDBDir())
+					.open(username,password);
+			HooksManager.registerAll(getConnection());
+			ConnectionPool.register(getConnection(), username, password);
+		}
 		DbHelper.appcode.set(appcode);
 		DbHelper.username.set(username);
 		DbHelper.password.set(password);
@@ -399,8 +442,10 @@ public class DbHelper {
 			try{
 				if (tranCount.get()!=0) throw new TransactionIsStillOpenException("Closing a connection with an active transaction: " + tranCount.get());
 			}finally{
-				db.close();
+				//pooled connections are rolled back and given back to the pool
+				if (!ConnectionPool.release(db)) db.close();
 				tranCount.set(0);
+				IndexDao.transactionEnded();
 			}
 		}else if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("connection already close or null");
 	}
@@ -611,6 +656,11 @@ public class DbHelper {
 			 BaasBoxLogger.info("...registering hooks...");
 			 evolveDB(db);
 			 HooksManager.registerAll(db);
+			 ConnectionPool.invalidateAll();
+			 IndexDao.invalidateCache();
+			 RecordCounters.invalidateAll();
+			 PermissionTagService.invalidateSnapshot();
+			 ScriptingService.invalidateCache();
 			 BaasBoxLogger.info("...extract iOS certificates...");
 			 IosCertificateHandler.init();
 		}catch(Exception ioe){
@@ -0,0 +1,75 @@
+package com.baasbox.db;
+
+import java.util.List;
+
+import com.baasbox.dao.DeviceDao;
+import com.baasbox.dao.UserDao;
+import com.baasbox.service.logging.BaasBoxLogger;
+import com.orientechnologies.orient.core.db.record.ODatabaseRecordTx;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+
+/**
+ * Moves the push devices from the login_info list of each user into the _BB_Device registry
+ */
+public class Evolution_0_9_5 implements IEvolution {
+    private String version = "a.000.009.005.001";
+
+    @Override
+    public String getFinalVersion() {
+        return version;
+    }
+
+    @Override
+    public void evolve(ODatabaseRecordTx db) {
+        BaasBoxLogger.info("Applying evolutions to evolve to the " + version + " level");
+        try{
+            createDeviceClass(db);
+            populateDevices(db);
+        }catch (Throwable e){
+            BaasBoxLogger.error("Error applying evolution to " + version + " level!!" ,e);
+            throw new RuntimeException(e);
+        }
+        BaasBoxLogger.info ("DB now is on " + version + " level");
+    }
+
+    private void createDeviceClass(ODatabaseRecordTx db){
+        BaasBoxLogger.info("Creating the devices registry...");
+        DbHelper.execMultiLineCommands(db,true,
+                "create class _BB_Device;",
+                "create property _BB_Device.os String;",
+                "alter property _BB_Device.os mandatory=true;",
+                "alter property _BB_Device.os notnull=true;",
+                "create property _BB_Device.pushToken String;",
+                "alter property _BB_Device.pushToken mandatory=true;",
+                "alter property _BB_Device.pushToken notnull=true;",
+                "create property _BB_Device.user link _BB_User;",
+                "alter property _BB_Device.user mandatory=true;",
+                "alter property _BB_Device.user notnull=true;",
+                "create index _BB_Device.os_pushToken on _BB_Device (os, pushToken) unique;",
+                "create index _BB_Device.user notunique;"
+        );
+        BaasBoxLogger.info("...done");
+    }
+
+    private void populateDevices(ODatabaseRecordTx db){
+        BaasBoxLogger.info("Copying the users' devices into the registry...");
+        DeviceDao dao = DeviceDao.getInstance();
+        int count=0;
+        for (ODocument user : db.browseClass(UserDao.MODEL_NAME)){
+            ODocument systemProps = user.field(UserDao.ATTRIBUTES_SYSTEM);
+            if (systemProps==null) continue;
+            List<ODocument> loginInfos = systemProps.field(UserDao.USER_LOGIN_INFO);
+            if (loginInfos==null) continue;
+            for (ODocument loginInfo : loginInfos){
+                String os = loginInfo.field(UserDao.USER_DEVICE_OS);
+                String pushToken = loginInfo.field(UserDao.USER_PUSH_TOKEN);
+                if (os==null || pushToken==null) continue;
+                //the same device may be listed by more users: the last one wins, as it happens at login time
+                dao.register(user.getIdentity(), os, pushToken);
+                count++;
+            }
+        }
+        BaasBoxLogger.info("..." + count + " devices found");
+        BaasBoxLogger.info("...done");
+    }
+}
@@ -84,6 +84,8 @@ public class Evolutions {
 		me.put(ev.getFinalVersion(),ev);
 		ev = (IEvolution)new Evolution_1_0_0_M1();
 		me.put(ev.getFinalVersion(),ev);
+		ev = (IEvolution)new Evolution_0_9_5();
+		me.put(ev.getFinalVersion(),ev);
 	}
 	
 	public Collection<IEvolution> getEvolutions(){
@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2014.
+ *
+ * BaasBox - info-at-baasbox.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baasbox.db;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import play.api.Routes;
+import play.mvc.Http;
+import scala.Option;
+
+import com.baasbox.BBConfiguration;
+import com.baasbox.metrics.BaasBoxMetric;
+
+/**
+ * Times the SQL statements executed through {@link DbHelper}, and aggregates them by fingerprint:
+ * the text of the statement without its literals, so the same query with different values is counted once.
+ * <p>
+ * The statements slower than {@link BBConfiguration#getQuerySlowThreshold()} are written to the com.baasbox.slowquerylog logger.
+ */
+public class QueryStats {
+
+	public static final String OTHER_FINGERPRINT = "(other)";
+
+	private static final Logger slowQueryLog = LoggerFactory.getLogger("com.baasbox.slowquerylog");
+	private static final Pattern PARAMETER_LIST = Pattern.compile("\\?(\\s*,\\s*\\?)+");
+	private static final ConcurrentHashMap<String, Stat> stats = new ConcurrentHashMap<String, Stat>();
+
+	public static class Stat {
+		private final String fingerprint;
+		private final LongAdder count = new LongAdder();
+		private final LongAdder totalMicros = new LongAdder();
+		private final AtomicLong maxMicros = new AtomicLong();
+		private final LongAdder rows = new LongAdder();
+
+		private Stat(String fingerprint) {
+			this.fingerprint = fingerprint;
+		}
+
+		private void record(long micros, long rowCount) {
+			count.increment();
+			totalMicros.add(micros);
+			rows.add(rowCount);
+			long current;
+			while (micros > (current = maxMicros.get()) && !maxMicros.compareAndSet(current, micros));
+		}
+
+		public String getFingerprint() {
+			return fingerprint;
+		}
+
+		public long getCount() {
+			return count.sum();
+		}
+
+		public long getTotalMicros() {
+			return totalMicros.sum();
+		}
+
+		public long getMaxMicros() {
+			return maxMicros.get();
+		}
+
+		public long getRows() {
+			return rows.sum();
+		}
+	}
+
+	/**
+	 * Records the execution of a statement
+	 * @param sql the text of the statement
+	 * @param params the positional parameters bound to the statement, may be null
+	 * @param nanos the execution time
+	 * @param result what the execution returned, used to count the rows
+	 */
+	public static void record(String sql, Object[] params, long nanos, Object result) {
+		if (!BBConfiguration.getQueryStatsEnabled()) return;
+		long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+		long rows = rowCount(result);
+		//the selects have been cached before they were executed, the other statements often carry their
+		//values as literals and would only push the selects out of the cache
+		StatementCache.ParsedStatement parsed = StatementCache.getIfPresent(sql);
+		String fingerprint = parsed != null ? parsed.getFingerprint() : fingerprint(sql);
+		Stat stat = stats.get(fingerprint);
+		if (stat == null) {
+			//the fingerprints are bounded, the statements built by the clients may be different every time
+			if (stats.size() >= BBConfiguration.getQueryStatsMaxFingerprints()) fingerprint = OTHER_FINGERPRINT;
+			stat = stats.computeIfAbsent(fingerprint, Stat::new);
+		}
+		stat.record(micros, rows);
+		int threshold = BBConfiguration.getQuerySlowThreshold();
+		if (threshold >= 0 && micros >= threshold * 1000L) {
+			slowQueryLog.warn(String.format("%d ms \t%d rows \t%d params \t%s \t%s",
+					TimeUnit.MICROSECONDS.toMillis(micros), rows, params == null ? 0 : params.length, callerRoute(), sql));
+		}
+	}
+
+	/**
+	 * @return the statistics of the statements, the ones taking the most time first
+	 */
+	public static List<Stat> getStats() {
+		List<Stat> list = new ArrayList<Stat>(stats.values());
+		Collections.sort(list, new Comparator<Stat>() {
+			@Override
+			public int compare(Stat a, Stat b) {
+				return Long.compare(b.getTotalMicros(), a.getTotalMicros());
+			}
+		});
+		return list;
+	}
+
+	public static void reset() {
+		stats.clear();
+	}
+
+	/**
+	 * @return the statement with its string, number and record id literals replaced by ?, lists of values
+	 * collapsed to a single ?, lower case and with single spaces
+	 */
+	public static String fingerprint(String sql) {
+		if (sql == null) return "";
+		StringBuilder out = new StringBuilder(sql.length());
+		int length = sql.length();
+		int i = 0;
+		while (i < length) {
+			char c = sql.charAt(i);
+			if (c == '\'' || c == '"') {
+				//string literal, quotes are escaped by a backslash or doubled
+				do {
+					i++;
+					while (i < length && sql.charAt(i) != c) {
+						if (sql.charAt(i) == '\\') i++;
+						i++;
+					}
+					i++;
+				} while (i < length && sql.charAt(i) == c);
+				out.append('?');
+			} else if (c == '#' && i + 1 < length && (Character.isDigit(sql.charAt(i + 1)) || sql.charAt(i + 1) == '-')) {
+				//record id, e.g. #12:3
+				i++;
+				while (i < length && (Character.isDigit(sql.charAt(i)) || sql.charAt(i) == ':' || sql.charAt(i) == '-')) i++;
+				out.append('?');
+			} else if (Character.isDigit(c) && (i == 0 || !Character.isJavaIdentifierPart(sql.charAt(i - 1)))) {
+				while (i < length && (Character.isDigit(sql.charAt(i)) || sql.charAt(i) == '.')) i++;
+				out.append('?');
+			} else if (Character.isWhitespace(c)) {
+				while (i < length && Character.isWhitespace(sql.charAt(i))) i++;
+				if (out.length() > 0) out.append(' ');
+			} else {
+				out.append(Character.toLowerCase(c));
+				i++;
+			}
+		}
+		String fingerprint = out.toString().trim();
+		if (fingerprint.indexOf(',') >= 0) fingerprint = PARAMETER_LIST.matcher(fingerprint).replaceAll("?");
+		return fingerprint;
+	}
+
+	private static long rowCount(Object result) {
+		if (result instanceof List) return ((List<?>) result).size();
+		if (result instanceof Number) return ((Number) result).longValue();
+		return result == null ? 0 : 1;
+	}
+
+	private static String callerRoute() {
+		Http.Context ctx = Http.Context.current.get();
+		if (ctx == null) return "-";
+		Option<String> pattern = ctx._requestHeader().tags().get(Routes.ROUTE_PATTERN());
+		return ctx.request().method() + " " + BaasBoxMetric.Track.routeTemplate(pattern.isDefined() ? pattern.get() : null);
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2014.
+ *
+ * BaasBox - info-at-baasbox.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baasbox.db;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.baasbox.BBConfiguration;
+import com.baasbox.db.hook.CountRecords;
+import com.orientechnologies.orient.core.metadata.schema.OClass;
+
+/**
+ * The number of records of the node classes (collections, users, files, assets), kept in memory so the
+ * unfiltered counts do not hit the database.
+ * <p>
+ * A counter is read from the database the first time it is requested, then it is updated by the {@link CountRecords} hook
+ * when the records are created and deleted. The counts include the records of the subclasses.
+ * Since a hook may run for a transaction that then fails, the counters are read again from the database
+ * every {@link BBConfiguration#getRecordCountersResyncInterval()} seconds.
+ */
+public class RecordCounters {
+
+	private static class Counter {
+		private final AtomicLong count;
+		private final long loadedAt = System.nanoTime();
+
+		private Counter(long count) {
+			this.count = new AtomicLong(count);
+		}
+
+		private boolean isExpired() {
+			return System.nanoTime() - loadedAt > TimeUnit.SECONDS.toNanos(BBConfiguration.getRecordCountersResyncInterval());
+		}
+	}
+
+	private static final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+
+	/**
+	 * @return the number of records of the class and of its subclasses, regardless of the permissions of the current user
+	 */
+	public static long count(String className) {
+		Counter counter = counters.get(className);
+		if (counter == null || counter.isExpired()) {
+			counter = new Counter(DbHelper.getODatabaseDocumentTxConnection().countClass(className));
+			counters.put(className, counter);
+		}
+		return counter.count.get();
+	}
+
+	/**
+	 * Updates the counters of the class of a record and of its superclasses
+	 * @param delta 1 when a record is created, -1 when it is deleted
+	 */
+	public static void update(OClass recordClass, long delta) {
+		for (OClass c = recordClass; c != null; c = c.getSuperClass()) {
+			Counter counter = counters.get(c.getName());
+			//the counters not loaded yet will read the right value
+			if (counter != null) counter.count.addAndGet(delta);
+		}
+	}
+
+	public static void invalidate(String className) {
+		counters.remove(className);
+	}
+
+	public static void invalidateAll() {
+		counters.clear();
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2014.
+ *
+ * BaasBox - info-at-baasbox.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baasbox.db;
+
+import java.util.concurrent.ExecutionException;
+
+import com.baasbox.BBConfiguration;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * The statements recently generated by {@link DbHelper}, already analyzed and validated, by their text.
+ * <p>
+ * The clients send the same few queries with different parameters, so the analysis is done once per statement.
+ * OrientDB still parses the statement when it is executed: its executors keep the state of the execution and cannot be shared.
+ */
+public class StatementCache {
+
+	/**
+	 * A statement analyzed by {@link QueryStats#fingerprint(String)}
+	 */
+	public static class ParsedStatement {
+		private final String fingerprint;
+		private final boolean select;
+
+		private ParsedStatement(String sql) {
+			this.fingerprint = QueryStats.fingerprint(sql);
+			//the literals are stripped: a ; outside them would start another statement
+			this.select = fingerprint.startsWith("select ") && fingerprint.indexOf(';') < 0;
+		}
+
+		public String getFingerprint() {
+			return fingerprint;
+		}
+
+		/**
+		 * @return true if the text is a single select statement
+		 */
+		public boolean isSelect() {
+			return select;
+		}
+	}
+
+	private static volatile Cache<String, ParsedStatement> cache;
+
+	public static ParsedStatement get(final String sql) {
+		try {
+			return getCache().get(sql, () -> new ParsedStatement(sql));
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	/**
+	 * @return the statement if it is already in the cache, otherwise null. Neither the cache content
+	 * nor its hit and miss counts are changed
+	 */
+	public static ParsedStatement getIfPresent(String sql) {
+		return getCache().asMap().get(sql);
+	}
+
+	public static CacheStats getStats() {
+		return getCache().stats();
+	}
+
+	public static long getSize() {
+		return getCache().size();
+	}
+
+	public static void invalidateAll() {
+		if (cache != null) cache.invalidateAll();
+	}
+
+	private static Cache<String, ParsedStatement> getCache() {
+		Cache<String, ParsedStatement> c = cache;
+		if (c == null) {
+			synchronized (StatementCache.class) {
+				if (cache == null) {
+					cache = CacheBuilder.newBuilder().maximumSize(BBConfiguration.getStatementCacheSize()).recordStats().build();
+				}
+				c = cache;
+			}
+		}
+		return c;
+	}
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2014.
+ *
+ * BaasBox - info-at-baasbox.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baasbox.db.async;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.exception.ExceptionUtils;
+
+import com.baasbox.BBConfiguration;
+import com.baasbox.controllers.BoundedChunks;
+import com.baasbox.db.DbHelper;
+import com.baasbox.service.logging.BaasBoxLogger;
+import com.baasbox.service.storage.DocumentService;
+import com.baasbox.util.JSONFormats;
+import com.baasbox.util.QueryParams;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.orientechnologies.orient.core.command.OCommandResultListener;
+import com.orientechnologies.orient.core.db.record.ODatabaseRecordTx;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+
+/**
+ * Writes the documents of a collection as a JSON array, one record at a time, while they are read from the DB.
+ * The job runs outside the request thread, on a bounded pool of workers, so it opens its own connection with the credentials of the caller.
+ * The records are read only as fast as the client receives them: at most {@link #CHUNKS_IN_FLIGHT} chunks are kept in memory.
+ */
+public class StreamDocumentsJob implements Runnable{
+
+	//records are sent in chunks of about this size
+	private static final int CHUNK_SIZE = 64 * 1024;
+	//chunks written and not yet sent to the client
+	public static final int CHUNKS_IN_FLIGHT = 4;
+
+	private static volatile ThreadPoolExecutor executor;
+
+	private final String appcode;
+	private final String username;
+	private final String password;
+	private final String collectionName;
+	private final QueryParams criteria;
+	private final JSONFormats.Formats format;
+	private final boolean preserveAcl;
+	private final boolean wrap;
+	private final String callId;
+	private final BoundedChunks out;
+
+	public StreamDocumentsJob(String appcode, String username, String password,
+			String collectionName, QueryParams criteria, JSONFormats.Formats format, boolean preserveAcl,
+			boolean wrap, String callId, BoundedChunks out){
+		this.appcode = appcode;
+		this.username = username;
+		this.password = password;
+		this.collectionName = collectionName;
+		this.criteria = criteria;
+		this.format = format;
+		this.preserveAcl = preserveAcl;
+		this.wrap = wrap;
+		this.callId = callId;
+		this.out = out;
+	}
+
+	/**
+	 * Queues the job on the stream workers
+	 * @throws RejectedExecutionException if too many collections are being streamed
+	 */
+	public static void execute(StreamDocumentsJob job) throws RejectedExecutionException{
+		getExecutor().execute(job);
+	}
+
+	/**
+	 * Stops the workers. The streams in progress are truncated
+	 */
+	public static void shutdown() {
+		synchronized (StreamDocumentsJob.class) {
+			if (executor != null) executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	@Override
+	public void run() {
+		ODatabaseRecordTx db = null;
+		final StringBuilder buffer = new StringBuilder(CHUNK_SIZE);
+		try{
+			db = DbHelper.open(appcode, username, password);
+			if (wrap){
+				buffer.append('{');
+				if (!StringUtils.isEmpty(callId)) buffer.append("\"call_id\":\"").append(JsonStringEncoder.getInstance().quoteAsString(callId)).append("\",");
+				buffer.append("\"result\":\"ok\",\"data\":");
+			}
+			buffer.append('[');
+			DocumentService.streamDocuments(collectionName, criteria, new OCommandResultListener() {
+				private boolean first = true;
+
+				@Override
+				public boolean result(Object iRecord) {
+					if (!first) buffer.append(',');
+					first = false;
+					buffer.append(JSONFormats.prepareResponseToJson((ODocument) iRecord, format, preserveAcl));
+					if (buffer.length() >= CHUNK_SIZE){
+						//blocks until the client has received the previous chunks
+						if (!out.write(buffer.toString())) return false;
+						buffer.setLength(0);
+					}
+					return true;
+				}
+
+				@Override
+				public void end() {
+				}
+			});
+			buffer.append(']');
+			if (wrap) buffer.append(",\"http_code\":200}");
+			if (out.isDisconnected()) BaasBoxLogger.warn("The client streaming the collection " + collectionName + " has gone away or is too slow, the stream has been truncated");
+			else out.write(buffer.toString());
+		}catch (Throwable e){
+			//the status code has been already sent, the client will receive a truncated JSON
+			BaasBoxLogger.error("Error streaming the collection " + collectionName + ": " + ExceptionUtils.getFullStackTrace(e));
+		}finally{
+			out.close();
+			if (db != null) DbHelper.close(db);
+		}
+	}
+
+	private static ThreadPoolExecutor getExecutor() {
+		ThreadPoolExecutor ex = executor;
+		if (ex == null) {
+			synchronized (StreamDocumentsJob.class) {
+				if (executor == null) {
+					int workers = BBConfiguration.getDocumentsStreamWorkers();
+					ThreadFactory threads = new ThreadFactoryBuilder().setNameFormat("baasbox-documents-stream-%d").setDaemon(true).build();
+					executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+							new LinkedBlockingQueue<Runnable>(BBConfiguration.getDocumentsStreamQueueCapacity()), threads);
+				}
+				ex = executor;
+			}
+		}
+		return ex;
+	}
+}
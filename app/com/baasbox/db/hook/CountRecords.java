@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2014.
+ *
+ * BaasBox - info-at-baasbox.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baasbox.db.hook;
+
+import com.baasbox.dao.NodeDao;
+import com.baasbox.db.RecordCounters;
+import com.orientechnologies.orient.core.metadata.schema.OClass;
+import com.orientechnologies.orient.core.record.ORecord;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+
+/**
+ * Keeps the {@link RecordCounters} up to date when the nodes are created and deleted
+ */
+public class CountRecords extends BaasBoxHook {
+
+	public static CountRecords getIstance(){
+		return new CountRecords();
+	}
+
+	protected CountRecords() {
+		super();
+	}
+
+	@Override
+	public void onRecordAfterCreate(ORecord<?> iRecord) {
+		update(iRecord, 1);
+	}
+
+	@Override
+	public void onRecordAfterDelete(ORecord<?> iRecord) {
+		update(iRecord, -1);
+	}
+
+	private static void update(ORecord<?> iRecord, long delta){
+		if (!(iRecord instanceof ODocument)) return;
+		ODocument doc = (ODocument)iRecord;
+		if (doc.isEmbedded() || doc.getClassName()==null) return;
+		OClass schemaClass = doc.getSchemaClass();
+		if (schemaClass!=null && schemaClass.isSubClassOf(NodeDao.CLASS_NODE_NAME)) RecordCounters.update(schemaClass, delta);
+	}
+
+	@Override
+	public String getHookName() {
+		return "CountRecords";
+	}
+}
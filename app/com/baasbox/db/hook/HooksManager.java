@@ -52,6 +52,8 @@ public class HooksManager {
 			if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("Registering BaasBox hooks... start");
 			db.registerHook(Audit.getIstance(),HOOK_POSITION.REGULAR);
 			db.registerHook(HidePassword.getIstance(),HOOK_POSITION.LAST);
+			db.registerHook(SecurityChanges.getIstance(),HOOK_POSITION.REGULAR);
+			db.registerHook(CountRecords.getIstance(),HOOK_POSITION.REGULAR);
 			if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("Registering BaasBox hooks... done");
 		}
 		if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("Hooks: "+ db.getHooks());
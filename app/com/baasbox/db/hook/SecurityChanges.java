@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2014.
+ *
+ * BaasBox - info-at-baasbox.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baasbox.db.hook;
+
+import com.baasbox.db.ConnectionPool;
+import com.orientechnologies.orient.core.record.ORecord;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+
+/**
+ * Invalidates the pooled connections when the credentials, the status or the roles of the users change,
+ * since a pooled connection keeps the OUser it was authenticated with
+ */
+public class SecurityChanges extends BaasBoxHook {
+
+	public static SecurityChanges getIstance(){
+		return new SecurityChanges();
+	}
+	
+	protected SecurityChanges() {
+		super();
+	}
+	
+	@Override
+	public RESULT onRecordBeforeUpdate(ORecord<?> iRecord){
+		invalidate(iRecord);
+		return RESULT.RECORD_NOT_CHANGED;
+	}
+	
+	@Override
+	public void onRecordAfterDelete(ORecord<?> iRecord){
+		invalidate(iRecord);
+	}
+	
+	private void invalidate(ORecord<?> iRecord){
+		if (!(iRecord instanceof ODocument)) return;
+		ODocument doc = (ODocument)iRecord;
+		if ("OUser".equalsIgnoreCase(doc.getClassName())){
+			ConnectionPool.invalidate((String)doc.field("name"));
+			//the username may be changed
+			Object originalName = doc.getOriginalValue("name");
+			if (originalName instanceof String) ConnectionPool.invalidate((String)originalName);
+		}else if ("ORole".equalsIgnoreCase(doc.getClassName())){
+			ConnectionPool.invalidateAll();
+		}
+	}
+
+	@Override
+	public String getHookName() {
+		return "SecurityChanges";
+	}
+}
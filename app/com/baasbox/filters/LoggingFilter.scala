@@ -27,7 +27,7 @@ package com.baasbox.filters {
 	import java.util.Date
 	import java.text.SimpleDateFormat
 	import com.baasbox.metrics.BaasBoxMetric
-	import com.codahale.metrics.Timer
+	import play.api.Routes
 
 		
 	class LoggingFilter extends Filter {
@@ -36,7 +36,9 @@ package com.baasbox.filters {
 
 
 	    val start = System.currentTimeMillis
-	    var timers = BaasBoxMetric.Track.startRequest(requestHeader.method,requestHeader.uri)
+	    //the request is already routed: the timers are picked by its route, not by its uri
+	    var timers = BaasBoxMetric.Track.startRequest(requestHeader.method,requestHeader.uri,
+	    		requestHeader.tags.get(Routes.ROUTE_PATTERN).orNull,requestHeader.tags.get(Routes.ROUTE_COMMENTS).orNull)
 	    var contentLength = ""
 	    
 	    nextFilter(requestHeader).map { result =>
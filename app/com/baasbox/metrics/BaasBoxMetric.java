@@ -22,14 +22,25 @@ import static com.codahale.metrics.MetricRegistry.name;
 
 import java.io.File;
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 
 import com.baasbox.BBConfiguration;
 import com.baasbox.db.DbHelper;
+import com.baasbox.db.StatementCache;
 import com.baasbox.exception.InvalidAppCodeException;
+import com.baasbox.service.permissions.RouteTagger;
+import com.baasbox.service.storage.BinaryCache;
+import com.baasbox.util.ByteLruCache;
 import com.codahale.metrics.CachedGauge;
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricRegistry;
@@ -50,10 +61,18 @@ public class BaasBoxMetric {
 	public static final String GAUGE_DB_DATA_SIZE = "orientdb.data.size";
 	public static final String GAUGE_DB_DATA_DIRECTORY_SIZE = "orientdb.data.directory.size";
 	public static final String GAUGE_DB_MAX_SIZE_THRESHOLD = "baasbox.db.threshold";
+	public static final String COUNTER_PUSH_APNS="push.apns";
+	public static final String GAUGE_BINARY_CACHE="cache.binary";
+	public static final String GAUGE_STATEMENT_CACHE="cache.statements";
 	
 	private static final int CACHE_TIMEOUT = 5;// (minutes)
 	
 	public static MetricRegistry registry=null;
+	private static final ConcurrentHashMap<String,LatencyHistogram> routeLatencies = new ConcurrentHashMap<String,LatencyHistogram>();
+	private static final ConcurrentHashMap<String,LatencyHistogram> tagLatencies = new ConcurrentHashMap<String,LatencyHistogram>();
+	private static final String ROUTE_TAG = "tag";
+	public static final String UNMATCHED_ROUTE = "unmatched";
+	private static final Pattern ROUTE_PARAMETER = Pattern.compile("\\$([a-zA-Z_][a-zA-Z0-9_]*)<[^>]*>");
 
 	private static boolean activate=false;
 	private static String excludeURIStartsWith = "";
@@ -69,6 +88,8 @@ public class BaasBoxMetric {
 	public static void start() {
 		if (!activate) {
 			registry=new MetricRegistry();
+			routeLatencies.clear();
+			tagLatencies.clear();
 			setGauges();
 			BaasBoxMetric.activate = true;
 		}
@@ -153,6 +174,71 @@ public class BaasBoxMetric {
 							return FileUtils.sizeOfDirectory(new File (BBConfiguration.getDBDir()));
         			}				
 				});
+		//cache of the assets and of the resized images
+		final ByteLruCache binaryCache = BinaryCache.getCache();
+		registry.register(name(GAUGE_BINARY_CACHE, "hits"), new Gauge<Long>() {
+			@Override
+			public Long getValue() {
+				return binaryCache.getHits();
+			}
+		});
+		registry.register(name(GAUGE_BINARY_CACHE, "misses"), new Gauge<Long>() {
+			@Override
+			public Long getValue() {
+				return binaryCache.getMisses();
+			}
+		});
+		registry.register(name(GAUGE_BINARY_CACHE, "evictions"), new Gauge<Long>() {
+			@Override
+			public Long getValue() {
+				return binaryCache.getEvictions();
+			}
+		});
+		registry.register(name(GAUGE_BINARY_CACHE, "bytes"), new Gauge<Long>() {
+			@Override
+			public Long getValue() {
+				return binaryCache.getBytes();
+			}
+		});
+		registry.register(name(GAUGE_BINARY_CACHE, "entries"), new Gauge<Integer>() {
+			@Override
+			public Integer getValue() {
+				return binaryCache.getSize();
+			}
+		});
+		
+		//cache of the query statements
+		registry.register(name(GAUGE_STATEMENT_CACHE, "hits"), new Gauge<Long>() {
+			@Override
+			public Long getValue() {
+				return StatementCache.getStats().hitCount();
+			}
+		});
+		registry.register(name(GAUGE_STATEMENT_CACHE, "misses"), new Gauge<Long>() {
+			@Override
+			public Long getValue() {
+				return StatementCache.getStats().missCount();
+			}
+		});
+		registry.register(name(GAUGE_STATEMENT_CACHE, "evictions"), new Gauge<Long>() {
+			@Override
+			public Long getValue() {
+				return StatementCache.getStats().evictionCount();
+			}
+		});
+		registry.register(name(GAUGE_STATEMENT_CACHE, "hit_rate"), new Gauge<Double>() {
+			@Override
+			public Double getValue() {
+				return StatementCache.getStats().hitRate();
+			}
+		});
+		registry.register(name(GAUGE_STATEMENT_CACHE, "entries"), new Gauge<Long>() {
+			@Override
+			public Long getValue() {
+				return StatementCache.getSize();
+			}
+		});
+		
 		registry.register(name(GAUGE_DB_MAX_SIZE_THRESHOLD),
 				new CachedGauge<BigInteger>(CACHE_TIMEOUT, TimeUnit.MINUTES) {
 					@Override
@@ -163,6 +249,46 @@ public class BaasBoxMetric {
 
 	}
 
+	/**
+	 * The timers of a request: the total one and the latencies of its route and tags
+	 */
+	public static class RequestTimers {
+		private final Timer.Context total;
+		private final List<LatencyHistogram> latencies;
+		private final long start = System.nanoTime();
+		
+		private RequestTimers(Timer.Context total, List<LatencyHistogram> latencies){
+			this.total=total;
+			this.latencies=latencies;
+		}
+		
+		private void stop(){
+			total.stop();
+			long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+			for (LatencyHistogram latency: latencies) latency.record(micros);
+		}
+	}
+	
+	/**
+	 * @return the latencies of the requests by method and route template, e.g. "GET /document/:collection"
+	 */
+	public static Map<String,LatencyHistogram> getRouteLatencies(){
+		return Collections.unmodifiableMap(routeLatencies);
+	}
+	
+	/**
+	 * @return the latencies of the requests by route tag, e.g. "baasbox.assets"
+	 */
+	public static Map<String,LatencyHistogram> getTagLatencies(){
+		return Collections.unmodifiableMap(tagLatencies);
+	}
+	
+	private static LatencyHistogram getOrCreate(ConcurrentHashMap<String,LatencyHistogram> latencies, String key){
+		LatencyHistogram latency = latencies.get(key);
+		if (latency==null) latency = latencies.computeIfAbsent(key, k -> new LatencyHistogram());
+		return latency;
+	}
+
 	public static class Track {
 		
 		private static  Long startTime =null;
@@ -178,23 +304,61 @@ public class BaasBoxMetric {
 			return startTime;
 		} 
 		
-		public static Timer.Context[] startRequest(String method,String uri){
+		/**
+		 * Starts timing a request. The latencies are tracked by route, not by uri, so their number is bounded.
+		 * The requests not matching any route are tracked together, whatever their method
+		 * @param routePattern the pattern of the route matching the request, null if there is none
+		 * @param routeComments the comments of the route, carrying its tags
+		 * @return the timers to pass to {@link #endRequest}, null if the request is not tracked
+		 */
+		public static RequestTimers startRequest(String method,String uri,String routePattern,String routeComments){
 			if (activate && !uri.startsWith(excludeURIStartsWith)){
 //				registry.meter(name(METER_REQUESTS)).mark();
-				Timer.Context timer1=  registry.timer(name(TIMER_REQUESTS)).time();
-				Timer.Context timer2=  registry.timer(name(TIMER_REQUESTS,method,uri)).time();
-				return new Timer.Context[] {timer1,timer2};
-			}else return new Timer.Context[]{};
+				List<LatencyHistogram> latencies = new ArrayList<LatencyHistogram>();
+				latencies.add(getOrCreate(routeLatencies, routeKey(method, routePattern)));
+				Set<String> tags = RouteTagger.parse(routeComments).get(ROUTE_TAG);
+				if (tags!=null) for (String tag: tags) latencies.add(getOrCreate(tagLatencies, tag));
+				return new RequestTimers(registry.timer(name(TIMER_REQUESTS)).time(), latencies);
+			}else return null;
 		}
 		
 		
-		public static void endRequest(Timer.Context[] timers, int status,String responseSize){
+		public static void endRequest(RequestTimers timers, int status,String responseSize){
 			if (!activate) return;
 			if (!StringUtils.isEmpty(responseSize) && ! responseSize.equals("-"))
 				registry.histogram(name(HISTOGRAM_RESPONSE_SIZE)).update(Long.parseLong(responseSize));
-			for (Timer.Context timer: timers) timer.stop();
+			if (timers!=null) timers.stop();
 			registry.counter(name(COUNTER_REQUESTS_STATUS + status)).inc();
 		}		
 		
+		/**
+		 * @return the key of the route latencies: the method and the route template, e.g. GET /document/:collection,
+		 * or {@link BaasBoxMetric#UNMATCHED_ROUTE} for the requests not matching any route
+		 */
+		public static String routeKey(String method,String routePattern){
+			//the method of an unmatched request can be anything the client sends: all of them share one histogram
+			return StringUtils.isEmpty(routePattern) ? UNMATCHED_ROUTE : method + " " + routeTemplate(routePattern);
+		}
+
+		/**
+		 * @param routePattern a route pattern as generated by the Play router, e.g. /document/$collection<[^/]+>
+		 * @return the route as written in the routes file, e.g. /document/:collection
+		 */
+		public static String routeTemplate(String routePattern){
+			if (StringUtils.isEmpty(routePattern)) return UNMATCHED_ROUTE;
+			return ROUTE_PARAMETER.matcher(routePattern).replaceAll(":$1");
+		}
+		
+		/**
+		 * Counts an event of the APNs connections (sent, failed, connection_closed...), both in total and for the given profile
+		 * @param profile push profile and environment, e.g. 1.production
+		 * @param delta 1, or -1 to decrement a counter of the active resources
+		 */
+		public static void apnsEvent(String profile, String event, long delta){
+			if (!activate) return;
+			registry.counter(name(COUNTER_PUSH_APNS, event)).inc(delta);
+			registry.counter(name(COUNTER_PUSH_APNS, profile, event)).inc(delta);
+		}
+		
 	}
 }
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2014.
+ *
+ * BaasBox - info-at-baasbox.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baasbox.metrics;
+
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.baasbox.service.logging.BaasBoxLogger;
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+
+/**
+ * Writes the metrics in the Prometheus text exposition format (version 0.0.4).
+ * <p>
+ * Every metric name is prefixed by "baasbox_". Durations are in seconds. The latencies of the routes
+ * and of the route tags are exported as summaries, labelled by method and route, or by tag.
+ */
+public class PrometheusExporter {
+
+	public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	private static final String PREFIX = "baasbox_";
+	private static final double[] QUANTILES = {0.5, 0.95, 0.99, 0.999};
+	private static final double MICROS_PER_SECOND = 1000000d;
+	private static final double NANOS_PER_SECOND = 1000000000d;
+
+	public static String export(MetricRegistry registry, Map<String, LatencyHistogram> routes, Map<String, LatencyHistogram> tags) {
+		StringBuilder out = new StringBuilder();
+		writeLatencies(out, PREFIX + "http_request_duration_seconds", "route", routes);
+		writeLatencies(out, PREFIX + "http_tag_request_duration_seconds", "tag", tags);
+		for (Entry<String, Counter> entry : registry.getCounters().entrySet()) {
+			String name = metricName(entry.getKey());
+			out.append("# TYPE ").append(name).append(" counter\n");
+			out.append(name).append(' ').append(entry.getValue().getCount()).append('\n');
+		}
+		for (Entry<String, Gauge> entry : registry.getGauges().entrySet()) {
+			Object value;
+			try {
+				value = entry.getValue().getValue();
+			} catch (RuntimeException e) {
+				BaasBoxLogger.warn("Unable to read the gauge " + entry.getKey() + ": " + e.getMessage());
+				continue;
+			}
+			if (!(value instanceof Number)) continue;
+			String name = metricName(entry.getKey());
+			out.append("# TYPE ").append(name).append(" gauge\n");
+			out.append(name).append(' ').append(((Number) value).doubleValue()).append('\n');
+		}
+		for (Entry<String, Timer> entry : registry.getTimers().entrySet()) {
+			String name = metricName(entry.getKey()) + "_seconds";
+			Timer timer = entry.getValue();
+			writeSnapshot(out, name, timer.getSnapshot(), timer.getCount(), NANOS_PER_SECOND);
+		}
+		for (Entry<String, Histogram> entry : registry.getHistograms().entrySet()) {
+			Histogram histogram = entry.getValue();
+			writeSnapshot(out, metricName(entry.getKey()), histogram.getSnapshot(), histogram.getCount(), 1);
+		}
+		return out.toString();
+	}
+
+	/**
+	 * @return the name converted to the characters allowed by Prometheus, e.g. requests.counter.200 to baasbox_requests_counter_200
+	 */
+	public static String metricName(String name) {
+		return PREFIX + name.replaceAll("[^a-zA-Z0-9_]", "_");
+	}
+
+	public static String escapeLabel(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+	/**
+	 * @param routeKey a key of the route latencies, see {@link BaasBoxMetric.Track#routeKey(String, String)}
+	 * @return the method and route labels, the unmatched requests have an empty method
+	 */
+	public static String routeLabels(String routeKey) {
+		String method = "";
+		String route = routeKey;
+		if (!BaasBoxMetric.UNMATCHED_ROUTE.equals(routeKey)) {
+			//the keys are "<method> <route>"
+			String[] methodAndRoute = routeKey.split(" ", 2);
+			method = methodAndRoute[0];
+			route = methodAndRoute.length > 1 ? methodAndRoute[1] : "";
+		}
+		return "method=\"" + escapeLabel(method) + "\",route=\"" + escapeLabel(route) + "\"";
+	}
+
+	private static void writeLatencies(StringBuilder out, String name, String label, Map<String, LatencyHistogram> latencies) {
+		if (latencies.isEmpty()) return;
+		out.append("# TYPE ").append(name).append(" summary\n");
+		for (Entry<String, LatencyHistogram> entry : latencies.entrySet()) {
+			String labels = label.equals("route") ? routeLabels(entry.getKey()) : label + "=\"" + escapeLabel(entry.getKey()) + "\"";
+			LatencyHistogram latency = entry.getValue();
+			for (double quantile : QUANTILES) {
+				out.append(name).append('{').append(labels).append(",quantile=\"").append(quantile).append("\"} ")
+						.append(latency.getValueAtQuantile(quantile) / MICROS_PER_SECOND).append('\n');
+			}
+			out.append(name).append("_sum{").append(labels).append("} ").append(latency.getSum() / MICROS_PER_SECOND).append('\n');
+			out.append(name).append("_count{").append(labels).append("} ").append(latency.getCount()).append('\n');
+		}
+	}
+
+	private static void writeSnapshot(StringBuilder out, String name, Snapshot snapshot, long count, double unit) {
+		out.append("# TYPE ").append(name).append(" summary\n");
+		for (double quantile : QUANTILES) {
+			out.append(name).append("{quantile=\"").append(quantile).append("\"} ").append(snapshot.getValue(quantile) / unit).append('\n');
+		}
+		out.append(name).append("_count ").append(count).append('\n');
+	}
+}
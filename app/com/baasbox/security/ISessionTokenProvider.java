@@ -26,8 +26,18 @@ import com.google.common.collect.ImmutableMap;
 public interface ISessionTokenProvider {
 		public ImmutableMap<SessionKeys, ? extends Object> setSession(String AppCode, String username, String Password);
 		public ImmutableMap<SessionKeys, ? extends Object> getSession(String token);
+		/**
+		 * Like {@link #getSession(String)}, without copying the session data
+		 * @return the session, with its expiration moved forward, or null if the token is unknown or expired
+		 */
+		public Session touchSession(String token);
 		public ImmutableMap<SessionKeys, ? extends Object> getCurrent();
 		public void removeSession(String token);
+		/**
+		 * Removes all the sessions of the given user
+		 * @return the number of sessions removed
+		 */
+		public int removeSessions(String username);
 		public void setTimeout(long timeoutInMilliseconds);
 		public Enumeration<String> getTokens();
 		public List<ImmutableMap<SessionKeys, ? extends Object>> getSessions(String username);		
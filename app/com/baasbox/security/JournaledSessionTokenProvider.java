@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2014.
+ *
+ * BaasBox - info-at-baasbox.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baasbox.security;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+
+import play.libs.Akka;
+import play.libs.Crypto;
+import scala.concurrent.duration.FiniteDuration;
+import akka.actor.Cancellable;
+
+import com.baasbox.BBConfiguration;
+import com.baasbox.service.logging.BaasBoxLogger;
+
+/**
+ * A {@link SessionTokenProvider} that writes the sessions in a {@link SessionJournal}, so they survive restarts.
+ * <p>
+ * Creations and removals are appended to the journal. Refreshing a session is not written, so the journal is
+ * periodically compacted with the current sessions and their expiration times: at startup each session gets the
+ * compaction interval added to the expiration time read, to cover the refreshes done after the last compaction.
+ * The journal is compacted when the provider is stopped as well.
+ * If the journal cannot be written, sessions keep working in memory only.
+ */
+public class JournaledSessionTokenProvider extends SessionTokenProvider {
+
+	private final SessionJournal journal;
+	private final long compactionIntervalInMilliseconds;
+	private Cancellable compaction = null;
+	private volatile boolean journalEnabled = false;
+
+	public JournaledSessionTokenProvider(String path) {
+		super();
+		this.compactionIntervalInMilliseconds = BBConfiguration.getSessionsJournalCompactionInterval() * 1000L;
+		this.journal = new SessionJournal(new File(path), Crypto::encryptAES, Crypto::decryptAES);
+		try {
+			long start = System.currentTimeMillis();
+			List<Session> restored = journal.open();
+			for (Session session : restored) {
+				session.setExpireTime(session.getExpireTime() + compactionIntervalInMilliseconds);
+				addSession(session);
+			}
+			journalEnabled = true;
+			BaasBoxLogger.info("Session journal: " + restored.size() + " sessions restored from " + path + " in " + (System.currentTimeMillis() - start) + " ms");
+			compact();
+		} catch (IOException | RuntimeException e) {
+			BaasBoxLogger.error("Session journal: unable to open " + path + ", sessions will not survive a restart: " + ExceptionUtils.getMessage(e));
+		}
+		if (journalEnabled) startCompaction();
+	}
+
+	@Override
+	protected void onSessionCreated(Session session) {
+		if (!journalEnabled) return;
+		try {
+			journal.appendCreated(session);
+		} catch (IOException | RuntimeException e) {
+			BaasBoxLogger.error("Session journal: unable to write a new session: " + ExceptionUtils.getMessage(e));
+		}
+	}
+
+	@Override
+	protected void onSessionRemoved(Session session) {
+		if (!journalEnabled) return;
+		try {
+			journal.appendRemoved(session);
+		} catch (IOException | RuntimeException e) {
+			BaasBoxLogger.error("Session journal: unable to write a removed session: " + ExceptionUtils.getMessage(e));
+		}
+	}
+
+	/**
+	 * Rewrites the journal with the sessions not expired yet
+	 */
+	protected void compact() {
+		if (!journalEnabled) return;
+		long now = System.currentTimeMillis();
+		long timeout = expiresInMilliseconds;
+		try {
+			//the snapshot is taken under the journal lock, so a session created or removed meanwhile is appended to the new journal
+			int written = journal.compact(() -> {
+				List<Session> alive = new ArrayList<Session>();
+				for (Session session : sessions.values()) {
+					if (timeout == 0 || now <= session.getExpireTime()) alive.add(session);
+				}
+				return alive;
+			});
+			if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("Session journal: compacted, " + written + " sessions written in " + (System.currentTimeMillis() - now) + " ms");
+		} catch (IOException | RuntimeException e) {
+			BaasBoxLogger.error("Session journal: compaction failed: " + ExceptionUtils.getMessage(e));
+		}
+	}
+
+	private void startCompaction() {
+		compaction = Akka.system().scheduler().schedule(
+				new FiniteDuration(compactionIntervalInMilliseconds, TimeUnit.MILLISECONDS),
+				new FiniteDuration(compactionIntervalInMilliseconds, TimeUnit.MILLISECONDS),
+				this::compact,
+				Akka.system().dispatcher());
+	}
+
+	@Override
+	protected void stop() {
+		super.stop();
+		if (compaction != null) compaction.cancel();
+		compact();
+		journalEnabled = false;
+		try {
+			journal.close();
+		} catch (IOException e) {
+			BaasBoxLogger.error("Session journal: unable to close the journal: " + ExceptionUtils.getMessage(e));
+		}
+	}
+}
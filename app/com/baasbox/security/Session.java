@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2014.
+ *
+ * BaasBox - info-at-baasbox.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baasbox.security;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * A session token with the credentials it stands for.
+ * Only the expiration time changes during the life of a session, so validating a token does not allocate anything
+ */
+public class Session {
+	private final String token;
+	private final String appcode;
+	private final String username;
+	private final String password;
+	private volatile long expireTime;
+	private volatile boolean removed = false;
+	//true while the session is in the expiry wheel
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+	public Session(String token, String appcode, String username, String password, long expireTime) {
+		this.token = token;
+		this.appcode = appcode;
+		this.username = username;
+		this.password = password;
+		this.expireTime = expireTime;
+	}
+
+	public String getToken() {
+		return token;
+	}
+
+	public String getAppcode() {
+		return appcode;
+	}
+
+	public String getUsername() {
+		return username;
+	}
+
+	public String getPassword() {
+		return password;
+	}
+
+	public long getExpireTime() {
+		return expireTime;
+	}
+
+	void setExpireTime(long expireTime) {
+		this.expireTime = expireTime;
+	}
+
+	boolean isRemoved() {
+		return removed;
+	}
+
+	void markRemoved() {
+		removed = true;
+	}
+
+	/**
+	 * @return true if the caller has to put the session in the expiry wheel
+	 */
+	boolean markScheduled() {
+		return scheduled.compareAndSet(false, true);
+	}
+
+	void markUnscheduled() {
+		scheduled.set(false);
+	}
+
+	/**
+	 * @return a snapshot of the session, in the format returned by the {@link ISessionTokenProvider} methods
+	 */
+	public ImmutableMap<SessionKeys, ? extends Object> toMap() {
+		return ImmutableMap.of
+				(SessionKeys.APP_CODE, appcode,
+						SessionKeys.TOKEN, token,
+						SessionKeys.USERNAME, username,
+						SessionKeys.PASSWORD, password,
+						SessionKeys.EXPIRE_TIME, expireTime);
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2014.
+ *
+ * BaasBox - info-at-baasbox.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baasbox.security;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Predicate;
+
+/**
+ * A hashed timing wheel that finds the sessions to expire without walking all of them.
+ * <p>
+ * A session is put in the bucket of the tick following its expiration time. When the wheel reaches a bucket,
+ * each session is checked: the expired ones leave the wheel, the others (whose expiration has been moved forward
+ * since they were scheduled, or that are due in a later revolution) are put again in the bucket of their current expiration.
+ * So refreshing a session costs just a volatile write, and each tick costs the sessions of a single bucket.
+ */
+public class SessionExpiryWheel {
+	private final long tickMillis;
+	private final int mask;
+	private final AtomicReferenceArray<ConcurrentLinkedQueue<Session>> buckets;
+	//guarded by this
+	private long lastTick;
+
+	/**
+	 * @param size the number of buckets, rounded up to a power of two
+	 * @param tickMillis the time covered by each bucket
+	 * @param now the current time
+	 */
+	public SessionExpiryWheel(int size, long tickMillis, long now) {
+		int buckets = Integer.highestOneBit(Math.max(1, size - 1)) << 1;
+		this.tickMillis = tickMillis;
+		this.mask = buckets - 1;
+		this.buckets = new AtomicReferenceArray<ConcurrentLinkedQueue<Session>>(buckets);
+		for (int i = 0; i < buckets; i++) this.buckets.set(i, new ConcurrentLinkedQueue<Session>());
+		this.lastTick = now / tickMillis;
+	}
+
+	public void schedule(Session session) {
+		long tick = session.getExpireTime() / tickMillis + 1;
+		buckets.get((int) (tick & mask)).add(session);
+	}
+
+	/**
+	 * Processes the buckets of the ticks elapsed since the last call
+	 * @param expire called for each session in those buckets. It returns true if the session has to leave the wheel,
+	 * false if it has to be scheduled again
+	 * @return the number of sessions that left the wheel
+	 */
+	public synchronized int advance(long now, Predicate<Session> expire) {
+		long current = now / tickMillis;
+		if (current <= lastTick) return 0;
+		long from = Math.max(lastTick + 1, current - mask);
+		int removed = 0;
+		for (long tick = from; tick <= current; tick++) {
+			ConcurrentLinkedQueue<Session> bucket = buckets.getAndSet((int) (tick & mask), new ConcurrentLinkedQueue<Session>());
+			Session session;
+			while ((session = bucket.poll()) != null) {
+				if (session.isRemoved() || expire.test(session)) {
+					session.markUnscheduled();
+					removed++;
+				} else {
+					schedule(session);
+				}
+			}
+		}
+		lastTick = current;
+		return removed;
+	}
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2014.
+ *
+ * BaasBox - info-at-baasbox.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baasbox.security;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * An append-only, memory mapped log of the sessions created and removed.
+ * <p>
+ * The file starts with a magic number, followed by records made by the length of the record, its type
+ * (session created or removed) and its data. The length is written after the data, so a record torn by a crash
+ * reads as the end of the journal. The file is pre-allocated (and zero filled) in blocks, so appending a record
+ * is a copy in memory, flushed to disk by the OS.
+ * <p>
+ * {@link #compact(Supplier)} rewrites the journal with just the given sessions, and it is atomically renamed over the old one.
+ * Passwords are written through the encrypt function, and read through the decrypt one.
+ */
+public class SessionJournal implements Closeable {
+	private static final int MAGIC = 0x42425331;
+	private static final byte PUT = 1;
+	private static final byte REMOVE = 2;
+	private static final int BLOCK_SIZE = 1024 * 1024;
+
+	private final File file;
+	private final UnaryOperator<String> encrypt;
+	private final UnaryOperator<String> decrypt;
+	private RandomAccessFile raf;
+	private MappedByteBuffer buffer;
+	private int records;
+
+	public SessionJournal(File file, UnaryOperator<String> encrypt, UnaryOperator<String> decrypt) {
+		this.file = file;
+		this.encrypt = encrypt;
+		this.decrypt = decrypt;
+	}
+
+	/**
+	 * Opens the journal, creating it if it does not exist
+	 * @return the sessions created and not removed, in the order they were created
+	 */
+	public synchronized List<Session> open() throws IOException {
+		Map<String, Session> sessions = new LinkedHashMap<String, Session>();
+		if (file.getParentFile() != null) file.getParentFile().mkdirs();
+		raf = new RandomAccessFile(file, "rw");
+		if (raf.length() < 4) {
+			raf.setLength(0);
+			raf.writeInt(MAGIC);
+		} else if (raf.readInt() != MAGIC) {
+			raf.close();
+			throw new IOException(file + " is not a session journal");
+		}
+		map(Math.max(raf.length(), BLOCK_SIZE));
+		buffer.position(4);
+		records = 0;
+		while (buffer.remaining() >= 4) {
+			int start = buffer.position();
+			int length = buffer.getInt();
+			if (length == 0) {
+				buffer.position(start);
+				break;
+			}
+			if (length < 0 || length > buffer.remaining()) {
+				truncate(start);
+				break;
+			}
+			byte[] record = new byte[length];
+			buffer.get(record);
+			try {
+				DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+				byte type = in.readByte();
+				String token = in.readUTF();
+				if (type == PUT) {
+					String appcode = in.readUTF();
+					String username = in.readUTF();
+					String password = decrypt.apply(in.readUTF());
+					long expireTime = in.readLong();
+					sessions.put(token, new Session(token, appcode, username, password, expireTime));
+				} else {
+					sessions.remove(token);
+				}
+				records++;
+			} catch (IOException | RuntimeException e) {
+				//a corrupted record: what follows cannot be trusted
+				truncate(start);
+				break;
+			}
+		}
+		return new ArrayList<Session>(sessions.values());
+	}
+
+	public synchronized void appendCreated(Session session) throws IOException {
+		append(encode(session));
+	}
+
+	public synchronized void appendRemoved(Session session) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(REMOVE);
+		out.writeUTF(session.getToken());
+		out.flush();
+		append(bytes.toByteArray());
+	}
+
+	/**
+	 * @return the records written since the journal was opened or compacted
+	 */
+	public synchronized int getRecords() {
+		return records;
+	}
+
+	/**
+	 * Replaces the journal with one containing just the given sessions
+	 */
+	public synchronized int compact(Collection<Session> sessions) throws IOException {
+		return compact(() -> sessions);
+	}
+
+	/**
+	 * Replaces the journal with one containing the sessions returned by the supplier.
+	 * The supplier is called holding the lock taken by the appends: the sessions created or removed while it runs
+	 * are appended to the new journal, so none of them is lost by the rewrite.
+	 * @return the number of sessions written
+	 */
+	public synchronized int compact(Supplier<? extends Collection<Session>> snapshot) throws IOException {
+		Collection<Session> sessions = snapshot.get();
+		File tmp = new File(file.getPath() + ".tmp");
+		int written = 0;
+		try (FileOutputStream fos = new FileOutputStream(tmp);
+			 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+			out.writeInt(MAGIC);
+			for (Session session : sessions) {
+				byte[] record = encode(session);
+				out.writeInt(record.length);
+				out.write(record);
+				written++;
+			}
+			out.flush();
+			fos.getFD().sync();
+		}
+		close();
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		raf = new RandomAccessFile(file, "rw");
+		long end = raf.length();
+		map(Math.max(end, BLOCK_SIZE));
+		buffer.position((int) end);
+		records = written;
+		return written;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (buffer != null) buffer.force();
+		buffer = null;
+		if (raf != null) raf.close();
+		raf = null;
+	}
+
+	private byte[] encode(Session session) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(PUT);
+		out.writeUTF(session.getToken());
+		out.writeUTF(session.getAppcode());
+		out.writeUTF(session.getUsername());
+		out.writeUTF(encrypt.apply(session.getPassword()));
+		out.writeLong(session.getExpireTime());
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	private void append(byte[] record) throws IOException {
+		if (buffer == null) throw new IOException("The session journal is closed");
+		if (buffer.remaining() < record.length + 4) {
+			int position = buffer.position();
+			map(position + Math.max(record.length + 4, BLOCK_SIZE));
+			buffer.position(position);
+		}
+		int start = buffer.position();
+		buffer.position(start + 4);
+		buffer.put(record);
+		buffer.putInt(start, record.length);
+		records++;
+	}
+
+	//clears the journal from the given position, so the records appended later are not followed by garbage
+	private void truncate(int position) {
+		buffer.position(position);
+		while (buffer.hasRemaining()) buffer.put((byte) 0);
+		buffer.position(position);
+	}
+
+	private void map(long size) throws IOException {
+		if (size > Integer.MAX_VALUE) throw new IOException("The session journal is too big");
+		buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+	}
+}
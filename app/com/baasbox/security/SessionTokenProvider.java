@@ -18,50 +18,58 @@
 
 package com.baasbox.security;
 
-import java.util.Date;
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import play.libs.Akka;
 import play.mvc.Http;
 import scala.concurrent.duration.FiniteDuration;
 import akka.actor.Cancellable;
 
+import com.baasbox.BBConfiguration;
 import com.baasbox.service.logging.BaasBoxLogger;
 import com.google.common.collect.ImmutableMap;
 
+/**
+ * Keeps the session tokens in memory.
+ * Sessions are indexed by token and by username, and they are expired by a {@link SessionExpiryWheel}
+ * that advances every second, so no task ever walks all the sessions.
+ */
 public class SessionTokenProvider implements ISessionTokenProvider {
 	
 	protected class SessionCleaner implements Runnable{
         @Override
         public void run() {
-        	BaasBoxLogger.info("Session Cleaner: started");
-        	Enumeration<String> tokens=getTokens();
-        	long totalTokens=0;
-        	long removedTokens=0;
-        	while (tokens.hasMoreElements()){
-        		totalTokens++;
-        		if (isExpired(tokens.nextElement())) removedTokens++;
+        	try{
+	        	int removedTokens=wheel.advance(System.currentTimeMillis(), SessionTokenProvider.this::leaveWheel);
+	        	if (removedTokens>0 && BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("Session cleaner: tokens: " + sessions.size() + " - removed: " + removedTokens);
+        	}catch (Throwable e){
+        		BaasBoxLogger.error("Session cleaner: error " + e.getMessage());
         	}
-        	BaasBoxLogger.info("Session cleaner: tokens: " + totalTokens + " - removed: " + removedTokens);
-        	BaasBoxLogger.info("Session cleaner: finished");
         }
     }
 
-	protected final static ConcurrentHashMap<String,ImmutableMap<SessionKeys,? extends Object>> sessions=new ConcurrentHashMap<String, ImmutableMap<SessionKeys,? extends Object>>();
-	protected long expiresInMilliseconds=0; //default expiration of session tokens
-	protected long  sessionClenanerLaunchInMinutes=60; //the session cleaner will be launch each x minutes.
+	protected final static ConcurrentHashMap<String,Session> sessions=new ConcurrentHashMap<String,Session>();
+	//username -> sessions of the user
+	protected final static ConcurrentHashMap<String,Set<Session>> sessionsByUser=new ConcurrentHashMap<String,Set<Session>>();
+	protected final static long WHEEL_TICK_IN_MILLISECONDS=1000;
+	protected final static int WHEEL_SIZE=1024;
+	protected final static SessionExpiryWheel wheel=new SessionExpiryWheel(WHEEL_SIZE, WHEEL_TICK_IN_MILLISECONDS, System.currentTimeMillis());
+	protected volatile long expiresInMilliseconds=0; //default expiration of session tokens
 	
 	private Cancellable sessionCleaner=null;
 	private static SessionTokenProvider me; 
 	
 	private static ISessionTokenProvider initialize(){
-		if (me==null) me=new SessionTokenProvider();
+		if (me==null) {
+			if (BBConfiguration.getSessionsJournalEnabled()) me=new JournaledSessionTokenProvider(BBConfiguration.getSessionsJournalPath());
+			else me=new SessionTokenProvider();
+		}
 		return me;
 	}
 	public static ISessionTokenProvider getSessionTokenProvider(){
@@ -69,72 +77,130 @@ public class SessionTokenProvider implements ISessionTokenProvider {
 	}
 	
 	public static void destroySessionTokenProvider(){
-		if (me!=null && me.sessionCleaner!=null) {
-			me.sessionCleaner.cancel();
+		if (me!=null) me.stop();
+		me=null;
+	}
+
+	protected void stop(){
+		if (sessionCleaner!=null) {
+			sessionCleaner.cancel();
 			BaasBoxLogger.info("Session Cleaner: cancelled");
 		}
-		me=null;
 	}
 	
 	public SessionTokenProvider(){
 		setTimeout(expiresInMilliseconds);
-		startSessionCleaner(sessionClenanerLaunchInMinutes*60000); //converts minutes in milliseconds
+		startSessionCleaner(WHEEL_TICK_IN_MILLISECONDS);
 	};	
 	
 	public void setTimeout(long timeoutInMilliseconds){
 		this.expiresInMilliseconds=timeoutInMilliseconds;
+		//sessions created while the timeout was disabled are not in the wheel yet
+		if (timeoutInMilliseconds!=0){
+			for (Session session : sessions.values()) if (session.markScheduled()) wheel.schedule(session);
+		}
 		if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("New session timeout: " + timeoutInMilliseconds + " ms");
 	}	//setTimeout
 	
 	@Override
 	public ImmutableMap<SessionKeys, ? extends Object> setSession(String AppCode, String username,	String password) {
-		UUID token = UUID.randomUUID();
-		ImmutableMap<SessionKeys, ? extends Object> info = ImmutableMap.of
-				(SessionKeys.APP_CODE, AppCode, 
-						SessionKeys.TOKEN, token.toString(),
-						SessionKeys.USERNAME, username,
-						SessionKeys.PASSWORD,password,
-						SessionKeys.EXPIRE_TIME,(new Date()).getTime()+expiresInMilliseconds);
-		sessions.put(token.toString(), info);
-		return info;
+		String token = UUID.randomUUID().toString();
+		Session session = new Session(token, AppCode, username, password, System.currentTimeMillis()+expiresInMilliseconds);
+		addSession(session);
+		onSessionCreated(session);
+		return session.toMap();
+	}
+
+	/**
+	 * Puts the session in the store, the username index and the expiry wheel
+	 */
+	protected void addSession(Session session){
+		sessions.put(session.getToken(), session);
+		sessionsByUser.compute(session.getUsername(), (k,userSessions)->{
+			if (userSessions==null) userSessions=ConcurrentHashMap.newKeySet();
+			userSessions.add(session);
+			return userSessions;
+		});
+		if (expiresInMilliseconds!=0 && session.markScheduled()) wheel.schedule(session);
+	}
+
+	//called after a session has been created
+	protected void onSessionCreated(Session session){
+	}
+
+	//called after a session has been explicitly removed. Expired sessions are not notified
+	protected void onSessionRemoved(Session session){
 	}
 
 	@Override
 	public ImmutableMap<SessionKeys, ? extends Object> getSession(String token) {
-		if (isExpired(token)){
+		Session session = touchSession(token);
+		return session==null ? null : session.toMap();
+	}
+
+	@Override
+	public Session touchSession(String token) {
+		if (token==null) return null;
+		Session session = sessions.get(token);
+		if (session==null) return null;
+		long now = System.currentTimeMillis();
+		long timeout = expiresInMilliseconds;
+		if (timeout!=0 && now>session.getExpireTime()){
+			removeSession(token);
 			return null;
 		}
-		ImmutableMap<SessionKeys, ? extends Object> info = sessions.get(token);
-		ImmutableMap<SessionKeys, ? extends Object> newInfo	= ImmutableMap.of
-				(SessionKeys.APP_CODE, info.get(SessionKeys.APP_CODE),
-						SessionKeys.TOKEN, token,
-						SessionKeys.USERNAME, info.get(SessionKeys.USERNAME),
-						SessionKeys.PASSWORD,info.get(SessionKeys.PASSWORD),
-						SessionKeys.EXPIRE_TIME,(new Date()).getTime()+expiresInMilliseconds);	
-		sessions.put(token, newInfo);
-		return newInfo;
+		session.setExpireTime(now+timeout);
+		if (timeout!=0 && session.markScheduled()) wheel.schedule(session);
+		return session;
 	}
 
 	@Override
 	public void removeSession(String token) {
 		if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("SessionTokenProvider: " + token + " removed");
-		sessions.remove(token);
+		Session session = sessions.remove(token);
+		if (session!=null) {
+			unindex(session);
+			onSessionRemoved(session);
+		}
+	}
 
+	@Override
+	public int removeSessions(String username) {
+		Set<Session> userSessions = sessionsByUser.remove(username);
+		if (userSessions==null) return 0;
+		int removed=0;
+		for (Session session : userSessions){
+			if (sessions.remove(session.getToken(), session)) {
+				removed++;
+				onSessionRemoved(session);
+			}
+			session.markRemoved();
+		}
+		if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("SessionTokenProvider: " + removed + " sessions of " + username + " removed");
+		return removed;
 	}
 
 	@Override
 	public Enumeration<String> getTokens() {
 		return sessions.keys();
 	}
-	
-	private boolean isExpired(String token){
-		ImmutableMap<SessionKeys, ? extends Object> info = sessions.get(token);
-		if (info==null) return true;
-		if (expiresInMilliseconds!=0 && (new Date()).getTime()>(Long)info.get(SessionKeys.EXPIRE_TIME)){
-			removeSession(token);
-			return true;
-		}
-		return false;
+
+	private void unindex(Session session){
+		session.markRemoved();
+		sessionsByUser.computeIfPresent(session.getUsername(), (k,userSessions)->{
+			userSessions.remove(session);
+			return userSessions.isEmpty() ? null : userSessions;
+		});
+	}
+
+	//called by the wheel for each session in the current bucket. Returns true if the session must leave the wheel
+	private boolean leaveWheel(Session session){
+		long timeout = expiresInMilliseconds;
+		//no expiration: the session is scheduled again if a timeout is set
+		if (timeout==0) return true;
+		if (System.currentTimeMillis()<=session.getExpireTime()) return false;
+		if (sessions.remove(session.getToken(), session)) unindex(session);
+		return true;
 	}
 	
 	private void startSessionCleaner(long timeoutInMilliseconds) {
@@ -147,18 +213,17 @@ public class SessionTokenProvider implements ISessionTokenProvider {
 	
 	@Override
 	public List<ImmutableMap<SessionKeys, ? extends Object>> getSessions(String username) {
-		Stream<ImmutableMap<SessionKeys, ? extends Object>> 
-			values = sessions
-						.values()
-						.stream()
-						.filter(x->x.get(SessionKeys.USERNAME).equals(username));
-		List<ImmutableMap<SessionKeys, ? extends Object>> toRet = values.collect(Collectors.toList());
+		List<ImmutableMap<SessionKeys, ? extends Object>> toRet = new ArrayList<ImmutableMap<SessionKeys, ? extends Object>>();
+		Set<Session> userSessions = sessionsByUser.get(username);
+		if (userSessions==null) return toRet;
+		for (Session session : userSessions) toRet.add(session.toMap());
 		return toRet;
 	}
 	@Override
 	public ImmutableMap<SessionKeys, ? extends Object> getCurrent() {
 		String token = (String) Http.Context.current().args.get("token");
-		if (token != null) return sessions.get(token);
-		else return null;
+		if (token == null) return null;
+		Session session = sessions.get(token);
+		return session==null ? null : session.toMap();
 	}
 }
@@ -26,6 +26,7 @@ import com.orientechnologies.orient.core.record.impl.ODocument;
 import com.baasbox.service.logging.BaasBoxLogger;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -34,11 +35,13 @@ import java.util.Set;
  */
 public class PermissionTagService {
 
+    //enabled status of every tag. Replaced as a whole when a tag changes, so readers never need to lock
+    private static volatile ImmutableMap<String,Boolean> snapshot = null;
+
     public static boolean areAllTagsEnabled(Set<String> tags) throws InvalidPermissionTagException, SqlInjectionException {
         if (tags==null||tags.isEmpty()) return true;
-        PermissionTagDao dao = PermissionTagDao.getInstance();
         for (String tag:tags){
-            if (!dao.isEnabled(tag)){
+            if (!isEnabled(tag)){
                 return false;
             }
         }
@@ -47,22 +50,74 @@ public class PermissionTagService {
 
     public static boolean isAtLeastOneTagEnabled(Set<String> tags) throws InvalidPermissionTagException, SqlInjectionException {
         if (tags==null||tags.isEmpty()) return true;
-        PermissionTagDao dao=PermissionTagDao.getInstance();
         for (String tag:tags){
-            if (dao.isEnabled(tag)) return true;
+            if (isEnabled(tag)) return true;
         }
         return false;
     }
 
     public static boolean isTagEnabled(String tag) throws InvalidPermissionTagException, SqlInjectionException {
         if (tag==null) return true;
-        PermissionTagDao dao = PermissionTagDao.getInstance();
-        return dao.isEnabled(tag);
+        return isEnabled(tag);
     }
 
     public static boolean setTagEnabled(String tag,boolean enabled) throws InvalidPermissionTagException, SqlInjectionException {
         PermissionTagDao dao = PermissionTagDao.getInstance();
-        return dao.setEnabled(tag,enabled);
+        synchronized (PermissionTagService.class) {
+            boolean changed = dao.setEnabled(tag,enabled);
+            putInSnapshot(tag,enabled);
+            return changed;
+        }
+    }
+
+    /**
+     * Loads the enabled status of all the tags in memory
+     * @return the status loaded
+     */
+    public static ImmutableMap<String,Boolean> loadSnapshot(){
+        ImmutableMap.Builder<String,Boolean> map = ImmutableMap.builder();
+        ImmutableMap<String,Boolean> loaded;
+        synchronized (PermissionTagService.class) {
+            for (ODocument doc:getPermissionTags()){
+                map.put(doc.<String>field(PermissionTagDao.TAG),Boolean.TRUE.equals(doc.<Boolean>field(PermissionTagDao.ENABLED)));
+            }
+            loaded = map.build();
+            snapshot = loaded;
+        }
+        if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("Permission tags loaded: "+loaded);
+        return loaded;
+    }
+
+    /**
+     * Discards the in memory status of the tags, it will be reloaded from the db on the next check
+     */
+    public static void invalidateSnapshot(){
+        snapshot = null;
+    }
+
+    private static boolean isEnabled(String tag) throws InvalidPermissionTagException, SqlInjectionException {
+        ImmutableMap<String,Boolean> current = snapshot;
+        if (current==null) current = loadSnapshot();
+        Boolean enabled = current.get(tag);
+        if (enabled!=null) return enabled;
+        //unknown tag, maybe created after the snapshot: the dao throws if it does not exist at all
+        synchronized (PermissionTagService.class) {
+            enabled = PermissionTagDao.getInstance().isEnabled(tag);
+            putInSnapshot(tag,enabled);
+        }
+        return enabled;
+    }
+
+    //to be called holding the lock on the class
+    private static void putInSnapshot(String tag,boolean enabled){
+        ImmutableMap<String,Boolean> current = snapshot;
+        if (current==null) return;
+        ImmutableMap.Builder<String,Boolean> next = ImmutableMap.builder();
+        for (Map.Entry<String,Boolean> entry:current.entrySet()){
+            if (!entry.getKey().equals(tag)) next.put(entry);
+        }
+        next.put(tag,enabled);
+        snapshot = next.build();
     }
 
     public static List<ODocument> getPermissionTags(){
@@ -83,6 +138,7 @@ public class PermissionTagService {
     }
 
     public static void createDefaultPermissions(){
+        invalidateSnapshot();
         PermissionTagDao dao = PermissionTagDao.getInstance();
         for (Tags.Reserved tag:Tags.Reserved.values()){
             try {
@@ -95,6 +151,7 @@ public class PermissionTagService {
     }
 
     public static void createReservedPermission(Tags.Reserved reserved) {
+        invalidateSnapshot();
         PermissionTagDao dao = PermissionTagDao.getInstance();
         try {
             if (dao.existsPermissionTag(reserved.name)) return;
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2014.
+ *
+ * BaasBox - info-at-baasbox.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baasbox.service.push;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+
+import com.baasbox.BBConfiguration;
+import com.baasbox.BBInternalConstants;
+import com.baasbox.db.DbHelper;
+import com.baasbox.service.logging.BaasBoxLogger;
+import com.baasbox.service.logging.PushLogger;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.orientechnologies.orient.core.db.record.ODatabaseRecordTx;
+
+/**
+ * A push notification queued by {@link PushService#enqueue(String, String, String, List, List, JsonNode)}.
+ * The worker resolves the devices of the users and sends the message, the status can be polled by its id.
+ */
+public class PushJob implements Runnable {
+
+	public enum Status {
+		QUEUED, RUNNING, COMPLETED, COMPLETED_WITH_ERRORS, FAILED
+	}
+
+	private final String id = UUID.randomUUID().toString();
+	private final String appcode;
+	private final String sender;
+	private final String message;
+	private final List<String> usernames;
+	private final List<Integer> pushProfiles;
+	private final JsonNode bodyJson;
+	private final Date queuedAt = new Date();
+
+	private volatile Status status = Status.QUEUED;
+	private volatile String error;
+	private volatile int iosDevices;
+	private volatile int androidDevices;
+	private volatile Date completedAt;
+
+	PushJob(String appcode, String sender, String message, List<String> usernames, List<Integer> pushProfiles, JsonNode bodyJson) {
+		this.appcode = appcode;
+		this.sender = sender;
+		this.message = message;
+		this.usernames = new ArrayList<String>(usernames);
+		this.pushProfiles = new ArrayList<Integer>(pushProfiles);
+		this.bodyJson = bodyJson;
+	}
+
+	@Override
+	public void run() {
+		status = Status.RUNNING;
+		ODatabaseRecordTx db = null;
+		//the logger of the worker thread is never read
+		PushLogger.getInstance().init().disable();
+		try {
+			db = DbHelper.open(appcode, BBConfiguration.getBaasBoxAdminUsername(), BBConfiguration.getBaasBoxAdminPassword());
+			PushService ps = new PushService();
+			List<String> iosToken = new ArrayList<String>();
+			List<String> androidToken = new ArrayList<String>();
+			ps.collectDeviceTokens(usernames, iosToken, androidToken);
+			iosDevices = iosToken.size();
+			androidDevices = androidToken.size();
+			boolean[] withError = new boolean[2 * pushProfiles.size()];
+			ps.deliver(message, iosToken, androidToken, pushProfiles, bodyJson, withError);
+			status = Status.COMPLETED;
+			for (boolean e : withError) {
+				if (e) status = Status.COMPLETED_WITH_ERRORS;
+			}
+		} catch (Throwable e) {
+			BaasBoxLogger.error("Push job " + id + " failed: " + ExceptionUtils.getMessage(e));
+			error = ExceptionUtils.getMessage(e);
+			status = Status.FAILED;
+		} finally {
+			completedAt = new Date();
+			if (db != null) DbHelper.close(db);
+		}
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getSender() {
+		return sender;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public ObjectNode toJson() {
+		ObjectNode node = JsonNodeFactory.instance.objectNode();
+		node.put("id", id);
+		node.put("status", status.toString());
+		node.put("users", usernames.size());
+		node.put("ios_devices", iosDevices);
+		node.put("android_devices", androidDevices);
+		SimpleDateFormat format = new SimpleDateFormat(BBInternalConstants.DATE_FORMAT_STRING);
+		node.put("queued_at", format.format(queuedAt));
+		if (completedAt != null) node.put("completed_at", format.format(completedAt));
+		if (error != null) node.put("error", error);
+		return node;
+	}
+}
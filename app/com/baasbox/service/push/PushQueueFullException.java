@@ -0,0 +1,9 @@
+package com.baasbox.service.push;
+
+import com.baasbox.exception.BaasBoxPushException;
+
+public class PushQueueFullException extends BaasBoxPushException {
+	public PushQueueFullException(String message){
+		super(message);
+	}
+}
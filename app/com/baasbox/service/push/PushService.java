@@ -21,13 +21,22 @@ package com.baasbox.service.push;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.StringUtils;
 
 import com.baasbox.BBConfiguration;
 import com.baasbox.configuration.Push;
+import com.baasbox.dao.DeviceDao;
 import com.baasbox.dao.UserDao;
+import com.baasbox.dao.exception.SqlInjectionException;
 import com.baasbox.exception.BaasBoxPushException;
 import com.baasbox.exception.UserNotFoundException;
 import com.baasbox.service.logging.BaasBoxLogger;
@@ -37,12 +46,28 @@ import com.baasbox.service.push.providers.Factory.ConfigurationKeys;
 import com.baasbox.service.push.providers.Factory.VendorOS;
 import com.baasbox.service.push.providers.IPushServer;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.orientechnologies.orient.core.id.ORID;
 import com.orientechnologies.orient.core.record.impl.ODocument;
 
 public class PushService {
 
+	//max number of users loaded by a single query
+	private static final int USERS_PER_QUERY = 1000;
+	//max number of registration ids accepted by a GCM multicast message
+	private static final int GCM_MAX_DEVICES = 1000;
+
+	private static volatile ThreadPoolExecutor executor;
+	//status of the queued jobs, kept for a while after they complete
+	private static final Cache<String,PushJob> jobs = CacheBuilder.newBuilder()
+			.maximumSize(10000)
+			.expireAfterWrite(1, TimeUnit.HOURS)
+			.build();
+
 	private ImmutableMap<ConfigurationKeys, String> getPushParameters(Integer pushProfile){
 		PushLogger.getInstance().addMessage(".... profile: %d " , pushProfile);
 		ImmutableMap<Factory.ConfigurationKeys,String> response=null;
@@ -108,6 +133,7 @@ public class PushService {
 					ConfigurationKeys.IOS_SANDBOX,""+Boolean.FALSE.toString()
 					);			
 		}
+		response = ImmutableMap.<ConfigurationKeys,String>builder().putAll(response).put(ConfigurationKeys.PUSH_PROFILE, ""+pushProfile).build();
 		HashMap toLog = new HashMap(response);
 		toLog.put(ConfigurationKeys.ANDROID_API_KEY,"<hidden>");
 		toLog.put(ConfigurationKeys.IOS_CERTIFICATE,"<hidden>");
@@ -120,35 +146,41 @@ public class PushService {
 		List<String> iosToken = new ArrayList<String>();
 		List<String> androidToken = new ArrayList<String>();
 		com.baasbox.db.DbHelper.reconnectAsAdmin();
-		for(String username : usernames) {
-			pushLogger.addMessage("Processing user %s ...",username );
-			if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("Try to send a message (" + message + ") to " + username);
-			UserDao udao = UserDao.getInstance();
-			ODocument user = udao.getByUserName(username);
-			if (user==null) {
-				pushLogger.addMessage("+++ ERROR: User %s does not exist!",username);
-				if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("User " + username + " does not exist");
-				throw new UserNotFoundException("User " + username + " does not exist");
+		collectDeviceTokens(usernames, iosToken, androidToken);
+		pushLogger.addMessage("... retrieving app(s) push configurations and sending notifications...");
+		deliver(message, iosToken, androidToken, pushProfiles, bodyJson, withError);
+		com.baasbox.db.DbHelper.reconnectAsAuthenticatedUser();
+		return withError;
+
+	}//send
+
+	/**
+	 * Loads the devices of the given users from the device registry, querying the users in bulk, and splits their push tokens by vendor.
+	 * The current connection must be able to read the users (admin)
+	 * @throws UserNotFoundException if one of the users does not exist
+	 */
+	void collectDeviceTokens(List<String> usernames, List<String> iosToken, List<String> androidToken) throws SqlInjectionException, UserNotFoundException{
+		PushLogger pushLogger = PushLogger.getInstance();
+		UserDao udao = UserDao.getInstance();
+		for (List<String> someUsernames : Lists.partition(usernames, USERS_PER_QUERY)){
+			List<ODocument> users = udao.getByUsernames(new ArrayList<String>(someUsernames));
+			Set<String> found = new HashSet<String>();
+			List<ORID> userIds = new ArrayList<ORID>();
+			for (ODocument user : users){
+				ODocument ouser = user.field(UserDao.USER_LINK);
+				String username = ouser.field("name");
+				found.add(username);
+				userIds.add(user.getIdentity());
 			}
-			ODocument userSystemProperties=user.field(UserDao.ATTRIBUTES_SYSTEM);
-			if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("userSystemProperties: " + userSystemProperties);
-			pushLogger.addMessage("... system properties %s ...", userSystemProperties );
-			List<ODocument> loginInfos=userSystemProperties.field(UserDao.USER_LOGIN_INFO);
-			if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("Sending to " + loginInfos.size() + " devices");
-			pushLogger.addMessage("... the message will be sent to %d device(s)...",loginInfos.size());
-			pushLogger.addMessage("... retrieving device(s) info...");
-			
-			for(ODocument loginInfo : loginInfos){
-				pushLogger.addMessage("...... login info: %s ...", loginInfo);
-				String pushToken=loginInfo.field(UserDao.USER_PUSH_TOKEN);
-				String vendor=loginInfo.field(UserDao.USER_DEVICE_OS);
-				pushLogger.addMessage("......... device token: %s ...", pushToken);
-				pushLogger.addMessage("......... os/vendor: %s ...", vendor);
-				if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug ("push token: "  + pushToken);
-				if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug ("vendor: "  + vendor);
+			List<ODocument> devices = DeviceDao.getInstance().getByUsers(userIds);
+			if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("Sending to " + devices.size() + " devices");
+			pushLogger.addMessage("... the message will be sent to %d device(s) of %d user(s)...",devices.size(),users.size());
+			for(ODocument device : devices){
+				String pushToken=device.field(DeviceDao.PUSH_TOKEN);
+				String vendor=device.field(DeviceDao.OS);
+				if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug ("push token: "  + pushToken + " vendor: " + vendor);
 				if(!StringUtils.isEmpty(vendor) && !StringUtils.isEmpty(pushToken)){
 					VendorOS vos = VendorOS.getVendorOs(vendor);
-					if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("vos: " + vos);
 					if (vos!=null){
 						switch(vos) {
 						case IOS:
@@ -158,16 +190,28 @@ public class PushService {
 							androidToken.add(pushToken);
 							break;
 						}
-
-
 					} //vos!=null
 				}//(!StringUtils.isEmpty(vendor) && !StringUtils.isEmpty(deviceId)
-				
-			}//for (ODocument loginInfo : loginInfos)
-		}//for (String username : usernames)
+			}//for (ODocument device : devices)
+			if (found.size()<someUsernames.size()){
+				for (String username : someUsernames){
+					if (!found.contains(username)){
+						pushLogger.addMessage("+++ ERROR: User %s does not exist!",username);
+						if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("User " + username + " does not exist");
+						throw new UserNotFoundException("User " + username + " does not exist");
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sends the message to the given devices through each push profile, in the biggest batches allowed by the providers.
+	 * withError[i] is set if any batch of the i-th (profile, vendor) pair failed
+	 */
+	void deliver(String message, List<String> iosToken, List<String> androidToken, List<Integer> pushProfiles, JsonNode bodyJson, boolean[] withError) throws Exception{
+		PushLogger pushLogger = PushLogger.getInstance();
 		int i=0;
-		pushLogger.addMessage("... retrieving app(s) push configurations and sending notifications...");
-		
 		for(Integer pushProfile : pushProfiles) {
 			pushLogger.addMessage("...... profile %d ...",pushProfile);
 			HashMap<Factory.VendorOS,IPushServer> allVendors= Factory.getAllIstances();
@@ -181,26 +225,79 @@ public class PushService {
 
 			pushLogger.addMessage("......... sending to %d iOS device(s)...",iosToken.size());
 			if(iosToken.size()>0) {
-				for(List<String> thousandUsersApple : Lists.partition(iosToken, 1)){
-					withError[i]=apnServer.send(message, thousandUsersApple, bodyJson);
-					if (withError[i]) pushLogger.addMessage("........... WARNING: something went wrong sending this batch (%d) of messages to iOS devices",i);
+				for(List<String> someUsersApple : Lists.partition(iosToken, BBConfiguration.getPushIosBatchSize())){
+					if (apnServer.send(message, someUsersApple, bodyJson)){
+						withError[i]=true;
+						pushLogger.addMessage("........... WARNING: something went wrong sending this batch (%d) of messages to iOS devices",i);
+					}
 				}
 				i++;
 			}
 
 			pushLogger.addMessage("......... sending to %d Android device(s)...",androidToken.size());
 			if(androidToken.size()>0) {
-				for(List<String> thousandUsersAndroid: Lists.partition(androidToken,1000)){ //needed for the GCM sending limit
-					withError[i]=gcmServer.send(message, thousandUsersAndroid, bodyJson);
-					if (withError[i]) pushLogger.addMessage("........... WARNING: something went wrong sending this batch (%d) of messages to Android devices",i);
+				for(List<String> thousandUsersAndroid: Lists.partition(androidToken,GCM_MAX_DEVICES)){ //needed for the GCM sending limit
+					if (gcmServer.send(message, thousandUsersAndroid, bodyJson)){
+						withError[i]=true;
+						pushLogger.addMessage("........... WARNING: something went wrong sending this batch (%d) of messages to Android devices",i);
+					}
 				}
 				i++;
 			}
 		}
-		com.baasbox.db.DbHelper.reconnectAsAuthenticatedUser();
-		return withError;
+	}
 
-	}//send
+	/**
+	 * Queues the sending of a push notification, the devices are resolved and the message sent by a background worker.
+	 * The payload and the profiles must be already validated
+	 * @return the job, its id can be used to retrieve the status through {@link #getJob(String)}
+	 * @throws PushQueueFullException if too many jobs are waiting
+	 */
+	public PushJob enqueue(String appcode, String sender, String message, List<String> usernames, List<Integer> pushProfiles, JsonNode bodyJson) throws PushQueueFullException{
+		PushJob job = new PushJob(appcode, sender, message, usernames, pushProfiles, bodyJson);
+		jobs.put(job.getId(), job);
+		try{
+			getExecutor().execute(job);
+		}catch (RejectedExecutionException e){
+			jobs.invalidate(job.getId());
+			throw new PushQueueFullException("Too many push notifications waiting to be sent, retry later");
+		}
+		if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("Push job " + job.getId() + " queued for " + usernames.size() + " user(s)");
+		return job;
+	}
+
+	/**
+	 * @return the job with the given id, or null if it does not exist or it completed too long ago
+	 */
+	public static PushJob getJob(String id){
+		return jobs.getIfPresent(id);
+	}
+
+	/**
+	 * Stops the workers. Queued jobs are discarded
+	 */
+	public static void shutdown(){
+		synchronized (PushService.class){
+			if (executor!=null) executor.shutdownNow();
+			executor=null;
+		}
+	}
+
+	private static ThreadPoolExecutor getExecutor(){
+		ThreadPoolExecutor ex = executor;
+		if (ex==null){
+			synchronized (PushService.class){
+				if (executor==null){
+					int workers = BBConfiguration.getPushQueueWorkers();
+					ThreadFactory threads = new ThreadFactoryBuilder().setNameFormat("baasbox-push-%d").setDaemon(true).build();
+					executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+							new LinkedBlockingQueue<Runnable>(BBConfiguration.getPushQueueCapacity()), threads);
+				}
+				ex=executor;
+			}
+		}
+		return ex;
+	}
 
 
 	public boolean validate(List<Integer> pushProfiles) throws IOException, BaasBoxPushException {
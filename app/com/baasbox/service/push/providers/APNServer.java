@@ -26,12 +26,18 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.codec.digest.DigestUtils;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 
+import com.baasbox.BBConfiguration;
 import com.baasbox.configuration.IosCertificateHandler;
 import com.baasbox.exception.BaasBoxPushException;
+import com.baasbox.metrics.BaasBoxMetric;
 import com.baasbox.service.logging.BaasBoxLogger;
 import com.baasbox.service.logging.PushLogger;
 import com.baasbox.service.push.PushNotInitializedException;
@@ -44,6 +50,7 @@ import com.notnoop.apns.APNS;
 import com.notnoop.apns.ApnsDelegate;
 import com.notnoop.apns.ApnsNotification;
 import com.notnoop.apns.ApnsService;
+import com.notnoop.apns.ApnsServiceBuilder;
 import com.notnoop.apns.DeliveryError;
 import com.notnoop.apns.PayloadBuilder;
 import com.notnoop.exceptions.NetworkIOException;
@@ -51,27 +58,99 @@ import com.notnoop.exceptions.NetworkIOException;
 
 public class APNServer  extends PushProviderAbstract {
 
+	/**
+	 * The connections opened to APNs for a push profile and environment, with the configuration used to open them.
+	 * Each connection is a single-connection ApnsService, so the delivery errors are still reported synchronously to the caller.
+	 * <p>
+	 * The senders hold a reference while they use the connections: once the service is removed from the cache
+	 * it is closed by the last sender that releases it, so nobody sends through a stopped connection.
+	 */
+	private static class CachedService {
+		final String key;
+		final String fingerprint;
+		final ApnsService[] services;
+		final AtomicInteger next = new AtomicInteger();
+		//senders using the connections, -1 when they have been closed
+		final AtomicInteger users = new AtomicInteger();
+		volatile boolean retired = false;
+
+		CachedService(String key, String fingerprint, ApnsService[] services) {
+			this.key = key;
+			this.fingerprint = fingerprint;
+			this.services = services;
+		}
+
+		ApnsService get() {
+			return services[Math.abs(next.getAndIncrement() % services.length)];
+		}
+
+		/**
+		 * @return false if the connections have been already closed
+		 */
+		boolean acquire() {
+			int n;
+			do {
+				n = users.get();
+				if (n < 0) return false;
+			} while (!users.compareAndSet(n, n + 1));
+			return true;
+		}
+
+		void release() {
+			if (users.decrementAndGet() == 0 && retired) closeIfUnused();
+		}
+
+		/**
+		 * To be called by who removed the service from the cache: the connections are closed as soon as nobody uses them
+		 */
+		void retire() {
+			retired = true;
+			closeIfUnused();
+		}
+
+		private void closeIfUnused() {
+			if (users.compareAndSet(0, -1)) close(this);
+		}
+	}
+
+	//connections per profile and environment, rebuilt when the certificate or its password change
+	private static final ConcurrentHashMap<String, CachedService> services = new ConcurrentHashMap<String, CachedService>();
+	private static final ObjectMapper mapper = new ObjectMapper();
+
 	private String certificate;
 	private String password;
 	private boolean sandbox;
 	private int timeout;
+	private String profile;
 	private boolean isInit=false;
 
-	private ApnsDelegate apnDelegate=new ApnsDelegate(){
-		PushLogger pushLogger = PushLogger.getInstance();
-		
+	private static String serviceKey(String profile, boolean sandbox) {
+		return (profile==null ? "1" : profile) + (sandbox ? ".sandbox" : ".production");
+	}
+
+	private static class Delegate implements ApnsDelegate {
+		private final String key;
+
+		Delegate(String key) {
+			this.key = key;
+		}
+
 		@Override
 		public void cacheLengthExceeded(int arg0) {
-			pushLogger.addMessage("The resend cache needed a bigger size: %d",arg0);
+			PushLogger.getInstance().addMessage("The resend cache needed a bigger size: %d",arg0);
+			BaasBoxMetric.Track.apnsEvent(key, "cache_length_exceeded", 1);
 		}
 
 		@Override
 		public void connectionClosed(DeliveryError err, int msgId) {
-			pushLogger.addMessage("The connection was closed and/or an error packet was received. Message id: %d error: %s error code: %d",msgId,err.name(), err.code());
+			PushLogger.getInstance().addMessage("The connection was closed and/or an error packet was received. Message id: %d error: %s error code: %d",msgId,err.name(), err.code());
+			if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("APNs connection " + key + " closed: " + err.name());
+			BaasBoxMetric.Track.apnsEvent(key, "connection_closed", 1);
 		}
 
 		@Override
 		public void messageSendFailed(ApnsNotification notification, Throwable e) {
+			PushLogger pushLogger = PushLogger.getInstance();
 			pushLogger.addMessage("***** Error sending the message:");
 			if (notification!=null){
 				pushLogger.addMessage("** message : ",notification);					
@@ -79,20 +158,23 @@ public class APNServer  extends PushProviderAbstract {
 				pushLogger.addMessage("** unfortunately there is no info to log but the error..");
 			}
 			pushLogger.addMessage("** error: %s",ExceptionUtils.getMessage(e));
+			BaasBoxMetric.Track.apnsEvent(key, "failed", 1);
 		}
 
 		@Override
 		public void messageSent(ApnsNotification notification, boolean resent) {
+			PushLogger pushLogger = PushLogger.getInstance();
 			if (resent)  pushLogger.addMessage("+++ Message %s was sent after an error",notification);	
 			else pushLogger.addMessage("+++ Message %s was sent",notification);	
+			BaasBoxMetric.Track.apnsEvent(key, "sent", 1);
 		}
 
 		@Override
 		public void notificationsResent(int arg0) {
-			pushLogger.addMessage("..%d message(s) has/ve queued for resending due to an error-response from server",arg0 );
+			PushLogger.getInstance().addMessage("..%d message(s) has/ve queued for resending due to an error-response from server",arg0 );
+			BaasBoxMetric.Track.apnsEvent(key, "resent", arg0);
 		}
-		
-	};
+	}
 	
 	APNServer(){
 
@@ -102,7 +184,7 @@ public class APNServer  extends PushProviderAbstract {
 	public boolean send(String message, List<String> deviceid, JsonNode bodyJson) throws Exception{	
 		PushLogger pushLogger = PushLogger.getInstance();
 		pushLogger.addMessage("............ APN Push Message: -%s- to the device(s) %s" , message, deviceid);
-		ApnsService service = null;
+		CachedService cached = null;
 		try{
 			if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("APN Push message: "+message+" to the device "+deviceid);
 			if (!isInit) {
@@ -113,7 +195,7 @@ public class APNServer  extends PushProviderAbstract {
 			
 			String payload = null;
 			try{
-				service=getService();
+				cached=getService();
 			} catch (com.notnoop.exceptions.InvalidSSLConfig e) {
 				pushLogger.addMessage("Error sending push notification ...");
 				pushLogger.addMessage("   Exception is: %s ", ExceptionUtils.getStackTrace(e));
@@ -210,11 +292,13 @@ public class APNServer  extends PushProviderAbstract {
 			}
 			payload	=payloadBuilder.build();
 		
+			ApnsService service = cached.get();
 			Collection<? extends ApnsNotification> result = null;
 			if(timeout<=0){
 				try {	
 					result = service.push(deviceid, payload);	
 				} catch (NetworkIOException e) {
+					evict(cached);
 					pushLogger.addMessage("Error sending push notification ...");
 					pushLogger.addMessage("   Exception is: %s ", ExceptionUtils.getStackTrace(e));
 					BaasBoxLogger.error("Error sending push notification");
@@ -228,6 +312,7 @@ public class APNServer  extends PushProviderAbstract {
 					pushLogger.addMessage("Timeout is > 0 (%d), expiration date is set to %s", timeout, expiry.toString());
 					result = service.push (deviceid,payload,expiry);
 				} catch (NetworkIOException e) {
+					evict(cached);
 					pushLogger.addMessage("Error sending push notification ...");
 					pushLogger.addMessage("   Exception is: %s ", ExceptionUtils.getStackTrace(e));
 					BaasBoxLogger.error("Error sending enhanced push notification");
@@ -252,7 +337,7 @@ public class APNServer  extends PushProviderAbstract {
 			pushLogger.addMessage(ExceptionUtils.getMessage(e));
 			throw e;
 		}finally{
-			if (service!=null) service.stop();
+			if (cached!=null) cached.release();
 		}
 	}
 
@@ -340,35 +425,86 @@ public class APNServer  extends PushProviderAbstract {
 
 
 
-	private  ApnsService getService() {
-		ApnsService service;
-		PushLogger pushLogger = PushLogger.getInstance();
-		if (!sandbox) {
-			service=APNS.newService()
-			.withCert(certificate, password)
-			.withProductionDestination()
-			.withDelegate(apnDelegate)
-			.build();
-			pushLogger.addMessage("............ APNS production mode");
-		}	
-		else  {
-			service=APNS.newService()
-				.withCert(certificate, password)
-				.withSandboxDestination()
-				.withDelegate(apnDelegate)
-				.build();
-			pushLogger.addMessage("............ APNS  sandbox mode");
+	/**
+	 * Returns the connections for the current profile and environment, opening them if the configuration changed.
+	 * The caller has to {@link CachedService#release()} them when done
+	 */
+	private CachedService getService() {
+		String key = serviceKey(profile, sandbox);
+		File certificateFile = new File(certificate);
+		String fingerprint = certificate + "|" + certificateFile.lastModified() + "|" + DigestUtils.sha256Hex(password);
+		while (true) {
+			CachedService cached = lookupOrOpen(key, fingerprint);
+			//a service just closed has been already removed from the cache: the next lookup finds or opens another one
+			if (cached.acquire()) return cached;
 		}
-		return service;
+	}
+
+	private CachedService lookupOrOpen(String key, String fingerprint) {
+		CachedService cached = services.get(key);
+		if (cached!=null && cached.fingerprint.equals(fingerprint)) return cached;
+		synchronized (services) {
+			cached = services.get(key);
+			if (cached!=null && cached.fingerprint.equals(fingerprint)) return cached;
+			PushLogger pushLogger = PushLogger.getInstance();
+			ApnsService[] connections = new ApnsService[Math.max(1, BBConfiguration.getPushIosConnections())];
+			try{
+				for (int i=0;i<connections.length;i++){
+					ApnsServiceBuilder builder = APNS.newService()
+						.withCert(certificate, password)
+						.withDelegate(new Delegate(key));
+					if (sandbox) builder.withSandboxDestination();
+					else builder.withProductionDestination();
+					connections[i]=builder.build();
+				}
+			}catch (RuntimeException e){
+				for (ApnsService connection : connections) stop(key, connection);
+				throw e;
+			}
+			pushLogger.addMessage("............ APNS %s mode", sandbox ? "sandbox" : "production");
+			if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("Opened " + connections.length + " APNs connection(s) for " + key);
+			BaasBoxMetric.Track.apnsEvent(key, "services_created", connections.length);
+			BaasBoxMetric.Track.apnsEvent(key, "services_active", connections.length);
+			CachedService newService = new CachedService(key, fingerprint, connections);
+			//the senders still using the old connections close them when they are done
+			CachedService old = services.put(key, newService);
+			if (old!=null) old.retire();
+			return newService;
+		}
+	}
+
+	//closes the connections after an error, once the other senders are done with them: they will be reopened by the next call
+	private static void evict(CachedService cached) {
+		if (services.remove(cached.key, cached)) cached.retire();
+	}
+
+	private static void close(CachedService cached) {
+		for (ApnsService connection : cached.services) stop(cached.key, connection);
+		BaasBoxMetric.Track.apnsEvent(cached.key, "services_active", -cached.services.length);
+	}
+
+	private static void stop(String key, ApnsService connection) {
+		if (connection==null) return;
+		try{
+			connection.stop();
+		}catch (Exception e){
+			BaasBoxLogger.warn("Error closing the APNs connection " + key + ": " + ExceptionUtils.getMessage(e));
+		}
+	}
+
+	/**
+	 * Closes all the APNs connections
+	 */
+	public static void closeAll() {
+		for (CachedService cached : services.values()) evict(cached);
 	}
 
 	@Override
 	public void setConfiguration(ImmutableMap<ConfigurationKeys, String> configuration) {
 		String json = configuration.get(ConfigurationKeys.IOS_CERTIFICATE);
 		String name = null;
-		ObjectMapper mp = new ObjectMapper();
 		try{
-			ConfigurationFileContainer cfc = mp.readValue(json, ConfigurationFileContainer.class);
+			ConfigurationFileContainer cfc = mapper.readValue(json, ConfigurationFileContainer.class);
 			if (cfc==null){
 				isInit=false;
 				return;
@@ -385,6 +521,7 @@ public class APNServer  extends PushProviderAbstract {
 		password=configuration.get(ConfigurationKeys.IOS_CERTIFICATE_PASSWORD);
 		sandbox=configuration.get(ConfigurationKeys.IOS_SANDBOX).equalsIgnoreCase("true");
 		timeout=Integer.parseInt(configuration.get(ConfigurationKeys.APPLE_TIMEOUT));
+		profile=configuration.get(ConfigurationKeys.PUSH_PROFILE);
 		isInit=StringUtils.isNotEmpty(this.certificate) && StringUtils.isNotEmpty(password);	
 	}
 
@@ -46,7 +46,7 @@ public class Factory {
 	}
 	
 	public enum ConfigurationKeys{
-		ANDROID_API_KEY,APPLE_TIMEOUT,IOS_CERTIFICATE,IOS_CERTIFICATE_PASSWORD,IOS_SANDBOX
+		ANDROID_API_KEY,APPLE_TIMEOUT,IOS_CERTIFICATE,IOS_CERTIFICATE_PASSWORD,IOS_SANDBOX,PUSH_PROFILE
 	}
 	public static IPushServer getIstance(VendorOS vendor){
 		if (BBConfiguration.getPushMock()){
@@ -24,6 +24,7 @@ import com.baasbox.dao.exception.SqlInjectionException;
 import com.baasbox.service.webservices.HttpClientService;
 import com.baasbox.service.scripting.base.*;
 import com.baasbox.service.scripting.js.Json;
+import com.baasbox.util.DocumentJsonConverter;
 import com.baasbox.util.QueryParams;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.NullNode;
@@ -76,7 +77,7 @@ public class ScriptingService {
             embedded = null;
             script.removeField(ScriptsDao.LOCAL_STORAGE);
         } else {
-            embedded = new ODocument().fromJSON(data.toString());
+            embedded = DocumentJsonConverter.toDocument(data, false);
             script.field(ScriptsDao.LOCAL_STORAGE,embedded);
         }
         dao.save(script);
@@ -102,17 +103,15 @@ public class ScriptingService {
 
             Optional<ODocument> storage1 = Optional.ofNullable(storage);
 
-            JsonNode current = storage1.map(ODocument::toJSON)
-                    .map(Json.mapper()::readTreeOrMissing)
+            JsonNode current = storage1.<JsonNode>map((s) -> DocumentJsonConverter.toJson(s, false))
                     .orElse(NullNode.getInstance());
-            if (current.isMissingNode()) throw new ScriptEvalException("Error reading local storage as json");
 
             JsonNode updated = updaterFn.call(current);
             ODocument result;
             if (updated ==null||updated.isNull()){
                 script.removeField(ScriptsDao.LOCAL_STORAGE);
             } else {
-                result = new ODocument().fromJSON(updated.toString());
+                result = DocumentJsonConverter.toDocument(updated, false);
                 script.field(ScriptsDao.LOCAL_STORAGE, result);
             }
             dao.save(script);
@@ -152,7 +151,7 @@ public class ScriptingService {
 
     public static ScriptStatus update(String name,String code) throws ScriptException {
         ScriptsDao dao = ScriptsDao.getInstance();
-        updateCacheVersion();
+        updateCacheVersion(name);
         ODocument updated = dao.update(name,code);
         compile(updated,false);
 
@@ -162,13 +161,13 @@ public class ScriptingService {
             ScriptResult result = invoke(install);
             status = result.toScriptStatus();
             if (!status.ok){
-                updateCacheVersion();
+                updateCacheVersion(name);
                 dao.revertToLastVersion(updated);
 
             }
         } catch (ScriptEvalException e){
             if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("Script installation failed: deleting");
-            updateCacheVersion();
+            updateCacheVersion(name);
             dao.invalidate(updated);
             dao.revertToLastVersion(updated);
             throw e;
@@ -243,7 +242,7 @@ public class ScriptingService {
      * @return
      */
     public static boolean delete(String name) throws ScriptException{
-        updateCacheVersion();
+        updateCacheVersion(name);
         ScriptsDao dao = ScriptsDao.getInstance();
         ODocument script = dao.getByName(name);
         //script not found
@@ -262,14 +261,14 @@ public class ScriptingService {
     }
 
     public static boolean forceDelete(String name) throws ScriptException {
-        updateCacheVersion();
+        updateCacheVersion(name);
         ScriptsDao dao = ScriptsDao.getInstance();
         return dao.delete(name);
     }
 
 
     public static Boolean activate(String name, boolean activate) {
-        updateCacheVersion();
+        updateCacheVersion(name);
         ScriptsDao dao = ScriptsDao.getInstance();
         ODocument doc = dao.getByName(name);
         if (doc == null){
@@ -347,10 +346,10 @@ public class ScriptingService {
 
 
     private static ODocument createScript(ScriptsDao dao,JsonNode node) throws ScriptException {
-        updateCacheVersion();
         String lang = node.get(ScriptsDao.LANG).asText();
         ScriptLanguage language = ScriptLanguage.forName(lang);
         String name = node.get(ScriptsDao.NAME).asText();
+        updateCacheVersion(name);
         String code = node.get(ScriptsDao.CODE).asText();
         JsonNode initialStorage = node.get(ScriptsDao.LOCAL_STORAGE);
         JsonNode library = node.get(ScriptsDao.LIB);
@@ -454,17 +453,39 @@ public class ScriptingService {
 
     /// cache management
 
+    // every change of a script takes a new value of the counter and stamps the changed module with it:
+    // engines drop a cached module if it has been loaded before its stamp (or the global one)
     private static final AtomicLong SCRIPT_UPDATE_COUNTER = new AtomicLong(Long.MIN_VALUE);
+    private static final ConcurrentHashMap<String,Long> MODULE_VERSIONS = new ConcurrentHashMap<>();
+    private static final AtomicLong GLOBAL_VERSION = new AtomicLong(Long.MIN_VALUE);
 
-    private static void updateCacheVersion(){
-        SCRIPT_UPDATE_COUNTER.incrementAndGet();
+    private static void updateCacheVersion(String name){
+        long version = SCRIPT_UPDATE_COUNTER.incrementAndGet();
+        MODULE_VERSIONS.merge(name, version, Math::max);
     }
 
+    /**
+     * Discards all the compiled modules. To be called when the scripts are replaced in bulk, e.g. by a database import
+     */
+    public static void invalidateCache(){
+        long version = SCRIPT_UPDATE_COUNTER.incrementAndGet();
+        GLOBAL_VERSION.accumulateAndGet(version, Math::max);
+        MODULE_VERSIONS.clear();
+    }
 
     public static long getCacheVersion() {
         return SCRIPT_UPDATE_COUNTER.get();
     }
 
+    /**
+     * @return the version of the last change of the module. A module loaded when the cache version was lower must be reloaded
+     */
+    public static long getModuleVersion(String name) {
+        Long version = MODULE_VERSIONS.get(name);
+        long global = GLOBAL_VERSION.get();
+        return version == null ? global : Math.max(version, global);
+    }
+
     public static String main() {
         return MAIN.get();
     }
@@ -29,14 +29,25 @@ import jdk.nashorn.api.scripting.ScriptObjectMirror;
 import org.apache.commons.lang.exception.ExceptionUtils;
 import com.baasbox.service.logging.BaasBoxLogger;
 
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
 import javax.script.ScriptException;
+import javax.script.SimpleScriptContext;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Nashorn engine implementation
  *
+ * Each instance has its own javascript global and module cache, and it is used by one thread at a time
+ * (see {@link NashornEngine}). All the instances share the same {@link ScriptEngine}, so the code
+ * compiled by one of them is reused by the others.
+ *
  * Created by Andrea Tortorella on 10/06/14.
  */
 class Nashorn {
@@ -44,29 +55,41 @@ class Nashorn {
     private static final String COMPILE_FUNCTION = "compile";
     private static final String EMIT_FUNCTION = "emit";
 
+    private static class CachedModule {
+        ScriptObjectMirror mirror;
+        //cache version when the module started loading
+        final long loadedAt;
+        //modules required while loading or running this one: their exports may be captured by this module
+        final Map<String,CachedModule> dependencies = new HashMap<String,CachedModule>();
 
+        CachedModule(long loadedAt) {
+            this.loadedAt = loadedAt;
+        }
+    }
 
-    private Map<String,ScriptObjectMirror> cachedModules = new HashMap<String,ScriptObjectMirror>();
+    private Map<String,CachedModule> cachedModules = new HashMap<String,CachedModule>();
+    //modules being loaded or running, the innermost on top
+    private Deque<CachedModule> running = new ArrayDeque<CachedModule>();
 
     private ScriptEngine mEngine;
     private ScriptObjectMirror mRootAccess;
     private NashornMapper mMapper;
-    private long mLocalVersionCount;
 
     Nashorn(ScriptEngine engine) {
         mEngine = engine;
         mMapper = new NashornMapper();
-        mLocalVersionCount = ScriptingService.getCacheVersion();
     }
 
     /**
-     * Initialization logic
+     * Initialization logic: runs the prelude in a new global of the shared engine
      */
-    void init() {
+    void init(CompiledScript prelude) {
         try {
             if(BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("Initializing prelude");
+            ScriptContext context = new SimpleScriptContext();
+            context.setBindings(mEngine.createBindings(), ScriptContext.ENGINE_SCOPE);
             // get access to prelude and save mirror.
-            ScriptObjectMirror mirror = (ScriptObjectMirror)mEngine.eval(ResLoader.jsPrelude());
+            ScriptObjectMirror mirror = (ScriptObjectMirror)prelude.eval(context);
             mRootAccess = mirror;
             mMapper.setMirror(mRootAccess);
         } catch (ScriptException e){
@@ -83,13 +106,19 @@ class Nashorn {
      */
     ScriptResult eval(ScriptCall call) throws ScriptEvalException{
         try {
-            ScriptObjectMirror moduleRef = getModule(call);
+            CachedModule module = getModule(call);
 
             if (call.event == null) {
                 return null;
             }
 
-            Object result = emitEvent(moduleRef, call.event, call.eventData);
+            Object result;
+            running.push(module);
+            try {
+                result = emitEvent(module.mirror, call.event, call.eventData);
+            } finally {
+                running.pop();
+            }
             ScriptResult scriptResult = mMapper.convertResult(result);
             call.validate(scriptResult);
             if (BaasBoxLogger.isTraceEnabled())BaasBoxLogger.trace("ScriptResult: %s",scriptResult.toString());
@@ -117,19 +146,27 @@ class Nashorn {
 
     public Object require(String name) {
         if (BaasBoxLogger.isTraceEnabled()) BaasBoxLogger.trace("Required: %s",name);
-        syncCache();
-        ScriptObjectMirror cached = cachedModules.get(name);
-        if (cached == null) {
+        CachedModule cached = cachedModules.get(name);
+        if (cached == null || !isValid(name, cached)) {
+            cachedModules.remove(name);
+            cached = new CachedModule(ScriptingService.getCacheVersion());
+            running.push(cached);
             try {
-                cached = loadModule(name);
+                cached.mirror = loadModule(name);
             } catch (com.baasbox.dao.exception.ScriptException e) {
                 throw new RuntimeException(e);
+            } finally {
+                running.pop();
             }
-            if (cached !=null){
-                cachedModules.put(name,cached);
+            if (cached.mirror == null) {
+                return null;
             }
+            cachedModules.put(name,cached);
         }
-        return cached;
+        if (!running.isEmpty()) {
+            running.peek().dependencies.put(name,cached);
+        }
+        return cached.mirror;
     }
 
     private ScriptObjectMirror loadModule(String name) throws com.baasbox.dao.exception.ScriptException {
@@ -165,26 +202,40 @@ class Nashorn {
         }
     }
 
-    private ScriptObjectMirror getModule(ScriptCall call) {
-        syncCache();
-
-        ScriptObjectMirror cached = cachedModules.get(call.scriptName);
-        if (cached == null){
+    private CachedModule getModule(ScriptCall call) {
+        CachedModule cached = cachedModules.get(call.scriptName);
+        if (cached == null || !isValid(call.scriptName, cached)){
             if (BaasBoxLogger.isTraceEnabled()) BaasBoxLogger.trace("Loading module: %s",call.scriptName);
-            cached = makeModule(call.scriptName,call.source);
-            cached = compileModule(cached);
+            cachedModules.remove(call.scriptName);
+            cached = new CachedModule(ScriptingService.getCacheVersion());
+            running.push(cached);
+            try {
+                cached.mirror = compileModule(makeModule(call.scriptName,call.source));
+            } finally {
+                running.pop();
+            }
             if(BaasBoxLogger.isTraceEnabled()) BaasBoxLogger.trace("Module compiled: %s",call.scriptName);
             cachedModules.put(call.scriptName,cached);
         }
         return cached;
     }
 
-    private void syncCache() {
-        long current = ScriptingService.getCacheVersion();
-        if (mLocalVersionCount!=current){
-            cachedModules.clear();
-            mLocalVersionCount=current;
+    /**
+     * A cached module is still valid if neither it nor any module it required have changed since it was loaded
+     */
+    private boolean isValid(String name, CachedModule module) {
+        return isValid(name, module, new HashSet<String>());
+    }
+
+    private boolean isValid(String name, CachedModule module, Set<String> visited) {
+        if (!visited.add(name)) return true;
+        if (module.loadedAt < ScriptingService.getModuleVersion(name)) return false;
+        for (Map.Entry<String,CachedModule> dependency : module.dependencies.entrySet()) {
+            //the dependency has been reloaded: this module may hold the exports of the old one
+            if (cachedModules.get(dependency.getKey()) != dependency.getValue()) return false;
+            if (!isValid(dependency.getKey(), dependency.getValue(), visited)) return false;
         }
+        return true;
     }
 
     private Object emitEvent(ScriptObjectMirror mirror,String eventName,Object eventData) throws ScriptEvalException {
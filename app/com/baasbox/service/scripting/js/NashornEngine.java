@@ -18,38 +18,51 @@
 
 package com.baasbox.service.scripting.js;
 
+import com.baasbox.BBConfiguration;
 import com.baasbox.service.scripting.base.*;
 import com.baasbox.service.logging.BaasBoxLogger;
+import jdk.nashorn.api.scripting.NashornScriptEngineFactory;
 
 import javax.script.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
+ * Runs the scripts on a bounded pool of {@link Nashorn} instances.
+ * An instance is checked out for the whole evaluation of a script call, nested calls made by the script
+ * on the same thread (require, plugin-to-plugin invocations) reuse it.
+ * All the instances are globals of a single nashorn engine: the prelude is compiled once and
+ * the code of the modules is compiled once and kept in the engine class cache.
+ *
  * Created by Andrea Tortorella on 10/06/14.
  */
 public class NashornEngine implements BaasboxScriptEngine {
     private static volatile NashornEngine sEngine;
     private static final Object slock = new Object();
 
+    //the instance checked out by the current thread, if any
+    private static final ThreadLocal<Nashorn> CURRENT = new ThreadLocal<Nashorn>();
 
-    private static final ThreadLocal<Nashorn> NASHORN = new ThreadLocal<Nashorn>(){
-        @Override
-        protected Nashorn initialValue() {
-            if (BaasBoxLogger.isDebugEnabled())BaasBoxLogger.debug("Creating new nashorn instance");
-            ScriptEngine engine = sEngine.newEngine();
-            Nashorn nashorn = new Nashorn(engine);
-            nashorn.init();
-            return nashorn;
-        }
-    };
-
-    private ScriptEngine newEngine() {
-        return nashornFactory.getEngineByName("nashorn");
-    }
+    private final ScriptEngine mEngine;
+    private final CompiledScript mPrelude;
+    private final BlockingQueue<Nashorn> mIdle = new LinkedBlockingQueue<Nashorn>();
+    private final AtomicInteger mCreated = new AtomicInteger();
+    private final int mPoolSize;
+    private final long mTimeout;
 
-    private ScriptEngineManager nashornFactory;
     private NashornEngine(){
-
-        nashornFactory = new ScriptEngineManager(null);
+        NashornScriptEngineFactory factory = new NashornScriptEngineFactory();
+        mEngine = factory.getScriptEngine(new String[]{"--class-cache-size=" + BBConfiguration.getScriptEngineClassCacheSize()});
+        try {
+            mPrelude = ((Compilable)mEngine).compile(ResLoader.jsPrelude());
+        } catch (ScriptException e){
+            //fixme this should never throw
+            throw new RuntimeException(e);
+        }
+        mPoolSize = Math.max(1, BBConfiguration.getScriptEnginePoolSize());
+        mTimeout = BBConfiguration.getScriptEnginePoolTimeout();
     }
 
     public static NashornEngine getNashorn(){
@@ -63,21 +76,77 @@ public class NashornEngine implements BaasboxScriptEngine {
         return sEngine;
     }
 
+    private Nashorn newNashorn() {
+        if (BaasBoxLogger.isDebugEnabled())BaasBoxLogger.debug("Creating new nashorn instance");
+        Nashorn nashorn = new Nashorn(mEngine);
+        nashorn.init(mPrelude);
+        return nashorn;
+    }
 
+    private Nashorn checkout() throws ScriptEvalException {
+        Nashorn nashorn = mIdle.poll();
+        if (nashorn != null) return nashorn;
+        int created;
+        while ((created = mCreated.get()) < mPoolSize) {
+            if (mCreated.compareAndSet(created, created + 1)) {
+                try {
+                    return newNashorn();
+                } catch (RuntimeException e){
+                    mCreated.decrementAndGet();
+                    throw e;
+                }
+            }
+        }
+        try {
+            nashorn = mIdle.poll(mTimeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new ScriptEvalException("Interrupted while waiting for a script engine", e);
+        }
+        if (nashorn == null) throw new ScriptEvalException("No script engine available after " + mTimeout + "ms");
+        return nashorn;
+    }
+
+    private void checkin(Nashorn nashorn) {
+        mIdle.offer(nashorn);
+    }
 
     @Override
     public ScriptResult eval(ScriptCall call) throws ScriptEvalException {
-        Nashorn evaluator = NASHORN.get();
+        Nashorn current = CURRENT.get();
+        if (current != null) {
+            return current.eval(call);
+        }
+        Nashorn evaluator = checkout();
+        CURRENT.set(evaluator);
         try {
             return evaluator.eval(call);
         } catch (ScriptEvalException e){
             BaasBoxLogger.error("Eval failure");
             throw e;
+        } finally {
+            CURRENT.remove();
+            checkin(evaluator);
         }
     }
 
 
     public Object require(String name) {
-        return NASHORN.get().require(name);
+        Nashorn current = CURRENT.get();
+        if (current != null) {
+            return current.require(name);
+        }
+        //modules are required by running scripts, this is just a safety net
+        Nashorn evaluator;
+        try {
+            evaluator = checkout();
+        } catch (ScriptEvalException e){
+            throw new RuntimeException(e);
+        }
+        try {
+            return evaluator.require(name);
+        } finally {
+            checkin(evaluator);
+        }
     }
 }
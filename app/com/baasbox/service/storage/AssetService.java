@@ -85,6 +85,20 @@ public class AssetService {
 	
 
 	
+	/**
+	 * @return the content of a file asset, from the {@link BinaryCache} when possible. The returned array must not be modified
+	 */
+	public static byte[] getContent(ODocument asset) {
+		byte[] content = BinaryCache.getAsset(asset, null);
+		if (content != null) return content;
+		ORecordBytes record = asset.field("file");
+		if (record == null) return null;
+		//toStream() returns the loaded content without copying it
+		content = record.toStream();
+		BinaryCache.putAsset(asset, null, content);
+		return content;
+	}
+
 	public static ByteArrayOutputStream getFileAsStream (String fileAssetName) throws SqlInjectionException, IOException{
 		FileAssetDao dao = FileAssetDao.getInstance();
 		ODocument fileAsset=dao.getByName(fileAssetName);
@@ -136,9 +150,14 @@ public class AssetService {
 		
 		//check if the image has been previously resized
 		String sizePattern= dimensions.toString();
+		byte[] resizedImage = BinaryCache.getAsset(asset, sizePattern);
+		if (resizedImage!=null) return resizedImage;
 		try{
-			byte[] resizedImage = dao.getStoredResizedPicture( asset,  sizePattern);
-			if (resizedImage!=null) return resizedImage;
+			resizedImage = dao.getStoredResizedPicture( asset,  sizePattern);
+			if (resizedImage!=null) {
+				BinaryCache.putAsset(asset, sizePattern, resizedImage);
+				return resizedImage;
+			}
 			
 			ByteArrayOutputStream fileContent = StorageUtils.extractFileFromDoc(asset);
 			String contentType = getContentType(asset);
@@ -153,6 +172,7 @@ public class AssetService {
 			
 			//save the resized image for future requests
 			dao.storeResizedPicture(asset, sizePattern, resizedImage);
+			BinaryCache.putAsset(asset, sizePattern, resizedImage);
 			return resizedImage;
 		}catch ( InvalidModelException e) {
 			throw new RuntimeException("A very strange error occurred! ",e);
@@ -177,16 +197,21 @@ public class AssetService {
 	
 	public static void deleteByRid(String rid) throws Throwable {
 		AssetDao dao = AssetDao.getInstance();
-		dao.delete(rid);
+		ODocument asset=dao.get(rid);
+		dao.delete(asset.getIdentity());
+		BinaryCache.invalidateAsset((String)asset.field("name"));
 	}
 	public static void deleteByRid(ORID rid) throws Throwable {
 		AssetDao dao = AssetDao.getInstance();
+		ODocument asset=dao.get(rid);
 		dao.delete(rid);
+		BinaryCache.invalidateAsset((String)asset.field("name"));
 	}	
 	public static void deleteByName(String name) throws Throwable {
 		AssetDao dao = AssetDao.getInstance();
 		ODocument asset=getByName(name);
 		if (asset==null) throw new AssetNotFoundException();
 		dao.delete(asset.getIdentity());
+		BinaryCache.invalidateAsset(name);
 	}	
 }
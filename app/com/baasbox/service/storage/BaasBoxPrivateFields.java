@@ -17,6 +17,9 @@
 package com.baasbox.service.storage;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 
 import com.baasbox.enumerations.Permissions;
 
@@ -34,6 +37,15 @@ public enum BaasBoxPrivateFields {
 	private String field;
 	private boolean visibleByTheClient=false;
 	private boolean aclField=false;
+	
+	private static final Set<String> hiddenFields;
+	static{
+		Set<String> hidden=new HashSet<String>();
+		for (BaasBoxPrivateFields r : BaasBoxPrivateFields.values()){
+			if (!r.isVisibleByTheClient()) hidden.add(r.toString());
+		}
+		hiddenFields=Collections.unmodifiableSet(hidden);
+	}
 
 
 	private BaasBoxPrivateFields(String field){
@@ -63,4 +75,11 @@ public enum BaasBoxPrivateFields {
 		}
 		return (String[]) fields.toArray(new String[BaasBoxPrivateFields.values().length]);
 	}
+	
+	/**
+	 * @return the names of the fields that are never sent to the clients (_links, _audit, _allow...)
+	 */
+	public static Set<String> getHiddenFields(){
+		return hiddenFields;
+	}
 }
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2014.
+ *
+ * BaasBox - info-at-baasbox.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baasbox.service.storage;
+
+import com.baasbox.BBConfiguration;
+import com.baasbox.dao.FileAssetDao;
+import com.baasbox.db.DbHelper;
+import com.baasbox.util.ByteLruCache;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+
+/**
+ * Keeps in memory the content of the assets and the resized images most recently requested.
+ * <p>
+ * The keys contain the version of the content (its hash, or the version of the record for the assets stored without it),
+ * so an updated content is never served from the cache. Deleted assets and files are removed explicitly.
+ * The cache does not check the permissions: the caller has to load the document through the connection of the user first.
+ */
+public class BinaryCache {
+
+	private static volatile ByteLruCache cache;
+
+	/**
+	 * @param sizePattern the size of a resized image, null for the original content
+	 * @return the cached content of the asset, or null
+	 */
+	public static byte[] getAsset(ODocument asset, String sizePattern) {
+		return getCache().get(assetKey(asset, sizePattern));
+	}
+
+	public static void putAsset(ODocument asset, String sizePattern, byte[] content) {
+		getCache().put(assetKey(asset, sizePattern), content);
+	}
+
+	/**
+	 * @return the cached resized image of the file, or null. The content of a file never changes
+	 */
+	public static byte[] getFile(String id, String sizePattern) {
+		return getCache().get(filePrefix(id) + sizePattern);
+	}
+
+	public static void putFile(String id, String sizePattern, byte[] content) {
+		getCache().put(filePrefix(id) + sizePattern, content);
+	}
+
+	public static void invalidateAsset(String name) {
+		getCache().invalidatePrefix(assetPrefix(name));
+	}
+
+	public static void invalidateFile(String id) {
+		getCache().invalidatePrefix(filePrefix(id));
+	}
+
+	public static void clear() {
+		if (cache != null) cache.clear();
+	}
+
+	public static ByteLruCache getCache() {
+		ByteLruCache c = cache;
+		if (c == null) {
+			synchronized (BinaryCache.class) {
+				if (cache == null) {
+					cache = new ByteLruCache(BBConfiguration.getBinaryCacheSize(), BBConfiguration.getBinaryCacheMaxEntrySize(), BBConfiguration.getBinaryCacheOffHeap());
+				}
+				c = cache;
+			}
+		}
+		return c;
+	}
+
+	private static String assetKey(ODocument asset, String sizePattern) {
+		String hash = asset.field(FileAssetDao.CONTENT_HASH_FIELD_NAME);
+		String version = hash == null ? Integer.toString(asset.getVersion()) : hash;
+		return assetPrefix((String) asset.field("name")) + version + "/" + (sizePattern == null ? "" : sizePattern);
+	}
+
+	//the trailing separator keeps the prefix of an asset from matching the ones of the assets whose name starts with it
+	private static String assetPrefix(String name) {
+		return DbHelper.getCurrentAppCode() + "/asset/" + name + "/";
+	}
+
+	private static String filePrefix(String id) {
+		return DbHelper.getCurrentAppCode() + "/file/" + id + "/";
+	}
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2014.
+ *
+ * BaasBox - info-at-baasbox.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baasbox.service.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.exception.ExceptionUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.sax.BodyContentHandler;
+import org.apache.tika.sax.WriteOutContentHandler;
+
+import com.baasbox.BBConfiguration;
+import com.baasbox.dao.FileDao;
+import com.baasbox.db.DbHelper;
+import com.baasbox.service.logging.BaasBoxLogger;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.orientechnologies.orient.core.db.record.ODatabaseRecordTx;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+
+/**
+ * Extracts the metadata and the text of the uploaded files through Apache Tika.
+ * <p>
+ * The upload only detects the content type; the extraction is queued on a bounded pool of workers, which read
+ * the stored content and write the result on the file document. The progress is tracked by the
+ * {@link FileDao#EXTRACTION_STATUS_FIELD_NAME} field of the file.
+ */
+public class ContentExtractor {
+
+	public enum Status {
+		PENDING, DONE, TRUNCATED, FAILED, SKIPPED;
+
+		@Override
+		public String toString() {
+			return name().toLowerCase();
+		}
+	}
+
+	//Tika parsers are thread safe, and loading their configuration is expensive
+	private static final AutoDetectParser parser = new AutoDetectParser();
+	private static volatile ThreadPoolExecutor executor;
+
+	/**
+	 * Detects the content type of a file reading just its first bytes
+	 * @param is the content, it must support mark/reset: it is reset to the beginning when the method returns
+	 */
+	public static String detectContentType(InputStream is, String fileName) throws IOException {
+		Metadata metadata = new Metadata();
+		metadata.set(Metadata.RESOURCE_NAME_KEY, fileName);
+		String contentType = parser.getDetector().detect(is, metadata).toString();
+		return StringUtils.isEmpty(contentType) ? "application/octet-stream" : contentType;
+	}
+
+	/**
+	 * Queues the extraction of the metadata and the text of a file just stored
+	 * @return the status of the extraction: {@link Status#PENDING}, or {@link Status#SKIPPED} if the queue is full
+	 */
+	public static Status extract(final String fileId) {
+		final String appcode = DbHelper.getCurrentAppCode();
+		try {
+			getExecutor().execute(() -> run(appcode, fileId));
+			return Status.PENDING;
+		} catch (RejectedExecutionException e) {
+			BaasBoxLogger.warn("Too many files waiting for the content extraction, skipping " + fileId);
+			return Status.SKIPPED;
+		}
+	}
+
+	/**
+	 * Stops the workers. Queued extractions are discarded and their files stay in the {@link Status#PENDING} status
+	 */
+	public static void shutdown() {
+		synchronized (ContentExtractor.class) {
+			if (executor != null) executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	private static void run(String appcode, String fileId) {
+		ODatabaseRecordTx db = null;
+		try {
+			db = DbHelper.open(appcode, BBConfiguration.getBaasBoxAdminUsername(), BBConfiguration.getBaasBoxAdminPassword());
+			FileDao dao = FileDao.getInstance();
+			ODocument file = dao.getById(fileId);
+			if (file == null) return;
+			long start = System.currentTimeMillis();
+			String fileName = file.field(FileDao.FILENAME_FIELD_NAME);
+			Metadata metadata = new Metadata();
+			metadata.set(Metadata.RESOURCE_NAME_KEY, fileName);
+			WriteOutContentHandler text = new WriteOutContentHandler(BBConfiguration.getFilesExtractionMaxTextLength());
+			Status status = Status.DONE;
+			try (InputStream content = dao.getContent(file)) {
+				parser.parse(content, new BodyContentHandler(text), metadata, new ParseContext());
+			} catch (Exception e) {
+				if (text.isWriteLimitReached(e)) {
+					status = Status.TRUNCATED;
+				} else {
+					BaasBoxLogger.warn("Could not parse the file " + fileName, e);
+					metadata.add("_bb_parser_error", ExceptionUtils.getMessage(e));
+					metadata.add("_bb_parser_exception", ExceptionUtils.getFullStackTrace(e));
+					metadata.add("_bb_parser_version", BBConfiguration.getApiVersion());
+					status = Status.FAILED;
+				}
+			}
+			dao.storeExtractedContent(file, toMap(metadata, fileName), text.toString(), status.toString());
+			if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("Content of the file " + fileId + " extracted in " + (System.currentTimeMillis() - start) + " ms: " + status);
+		} catch (Throwable e) {
+			BaasBoxLogger.error("Error extracting the content of the file " + fileId + ": " + ExceptionUtils.getFullStackTrace(e));
+		} finally {
+			if (db != null) DbHelper.close(db);
+		}
+	}
+
+	private static HashMap<String, Object> toMap(Metadata metadata, String fileName) {
+		HashMap<String, Object> extractedMetaData = new HashMap<String, Object>();
+		for (String key : metadata.names()) {
+			try {
+				if (metadata.isMultiValued(key)) {
+					extractedMetaData.put(key.replace(":", "_").replace(" ", "_").trim(), Arrays.asList(metadata.getValues(key)));
+				} else {
+					extractedMetaData.put(key.replace(":", "_").replace(" ", "_").trim(), metadata.get(key));
+				}
+			} catch (Throwable e) {
+				BaasBoxLogger.warn("Unable to extract metadata for file " + fileName + ", key " + key);
+			}
+		}
+		return extractedMetaData;
+	}
+
+	private static ThreadPoolExecutor getExecutor() {
+		ThreadPoolExecutor ex = executor;
+		if (ex == null) {
+			synchronized (ContentExtractor.class) {
+				if (executor == null) {
+					int workers = BBConfiguration.getFilesExtractionWorkers();
+					ThreadFactory threads = new ThreadFactoryBuilder().setNameFormat("baasbox-content-extractor-%d").setDaemon(true).build();
+					executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+							new LinkedBlockingQueue<Runnable>(BBConfiguration.getFilesExtractionQueueCapacity()), threads);
+				}
+				ex = executor;
+			}
+		}
+		return ex;
+	}
+}
@@ -17,8 +17,12 @@
 package com.baasbox.service.storage;
 
 import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
+import org.apache.commons.lang.exception.ExceptionUtils;
+
 import com.baasbox.controllers.actions.exceptions.RidNotFoundException;
 import com.baasbox.dao.DocumentDao;
 import com.baasbox.dao.GenericDao;
@@ -43,8 +47,12 @@ import com.baasbox.service.query.JsonTree;
 import com.baasbox.service.query.MissingNodeException;
 import com.baasbox.service.query.PartsParser;
 import com.baasbox.service.user.UserService;
+import com.baasbox.util.DocumentJsonConverter;
 import com.baasbox.util.QueryParams;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.orientechnologies.orient.core.exception.ODatabaseException;
 import com.orientechnologies.orient.core.exception.OSecurityException;
@@ -52,6 +60,7 @@ import com.orientechnologies.orient.core.exception.OSerializationException;
 import com.orientechnologies.orient.core.id.ORID;
 import com.orientechnologies.orient.core.metadata.security.ORole;
 import com.orientechnologies.orient.core.metadata.security.OUser;
+import com.orientechnologies.orient.core.command.OCommandResultListener;
 import com.orientechnologies.orient.core.record.impl.ODocument;
 import com.orientechnologies.orient.core.storage.ORecordDuplicatedException;
 
@@ -62,6 +71,29 @@ public class DocumentService {
 	public static final String FIELD_LINKS = NodeDao.FIELD_LINK_TO_VERTEX;
 	private static final String OBJECT_QUERY_ALIAS = "result";
 
+	public static final String BULK_OPERATION = "op";
+	public static final String BULK_DATA = "data";
+	public static final String BULK_CREATE = "create";
+	public static final String BULK_UPDATE = "update";
+	public static final String BULK_DELETE = "delete";
+	public static final String BULK_ERROR = "error";
+
+	/**
+	 * Why a bulk operation failed
+	 */
+	public enum BulkError {
+		NOT_FOUND, FORBIDDEN, OLD_VERSION, INVALID, INTERNAL;
+
+		public static BulkError of(Throwable e){
+			if (e instanceof RidNotFoundException || e instanceof DocumentNotFoundException || e instanceof InvalidParameterException || e instanceof ODatabaseException) return NOT_FOUND;
+			if (e instanceof OSecurityException) return FORBIDDEN;
+			if (e instanceof UpdateOldVersionException) return OLD_VERSION;
+			if (e instanceof InvalidJsonException || e instanceof InvalidModelException || e instanceof AclNotValidException
+					|| e instanceof ORecordDuplicatedException || e instanceof IllegalArgumentException) return INVALID;
+			return INTERNAL;
+		}
+	}
+
 	public static ODocument create(String collection, ObjectNode bodyJson) throws Throwable, InvalidCollectionException,InvalidModelException,ORecordDuplicatedException {
 		DocumentDao dao = DocumentDao.getInstance(collection);
 		DbHelper.requestTransaction();
@@ -70,7 +102,7 @@ public class DocumentService {
 			doc = dao.create();
 			PermissionJsonWrapper acl = PermissionsHelper.returnAcl(bodyJson, true);
 			bodyJson=dao.removeClassAndRid(bodyJson);
-			dao.update(doc,(ODocument) (new ODocument()).fromJSON(bodyJson.toString()));
+			dao.update(doc,DocumentJsonConverter.toDocument(bodyJson, true));
 			PermissionsHelper.setAcl(doc, acl);
 			//since 0.9.4 clients can choose their own IDs (inside a plugin). So if provided we use them
 			if (bodyJson.get(BaasBoxPrivateFields.ID.toString())!=null && bodyJson.get(BaasBoxPrivateFields.ID.toString()).isTextual()){
@@ -123,7 +155,7 @@ public class DocumentService {
 			DocumentDao dao = DocumentDao.getInstance(collectionName);
 			PermissionJsonWrapper acl = PermissionsHelper.returnAcl(bodyJson, true);
 			bodyJson=dao.removeClassAndRid(bodyJson);
-			dao.update(doc,(ODocument) (new ODocument()).fromJSON(bodyJson.toString()));
+			dao.update(doc,DocumentJsonConverter.toDocument(bodyJson, true));
 			PermissionsHelper.setAcl(doc, acl);
 			DbHelper.commitTransaction();
 		}catch(AclNotValidException | UpdateOldVersionException | InvalidCollectionException e){
@@ -193,6 +225,11 @@ public class DocumentService {
 		return dao.get(criteria);
 	}
 
+	public static void streamDocuments(String collectionName, QueryParams criteria, OCommandResultListener listener) throws SqlInjectionException, InvalidCollectionException{
+		DocumentDao dao = DocumentDao.getInstance(collectionName);
+		dao.stream(criteria, listener);
+	}
+
 	/**
 	 * @param rid
 	 * @return
@@ -309,4 +346,108 @@ public class DocumentService {
         return rid;
     }
 
+	/**
+	 * Applies a list of operations to the documents of a collection. Each operation is a JSON object:
+	 * <ul>
+	 * <li>{"op":"create", "data":{...}}</li>
+	 * <li>{"op":"update", "id":"uuid", "data":{...}}</li>
+	 * <li>{"op":"delete", "id":"uuid"}</li>
+	 * </ul>
+	 * The operations are committed in transactions of batchSize operations. If one of them fails the batch is rolled back
+	 * and its operations are applied again one by one, so only the failing ones are lost.
+	 * <p>
+	 * Inside a transaction already open (e.g. by a plugin) the operations are part of it: they are applied in order
+	 * and the first failure is thrown, leaving the caller to roll the whole transaction back.
+	 * 
+	 * @param collectionName
+	 * @param operations
+	 * @param batchSize
+	 * @return the outcome of each operation, in the same order: index, op, id and, if it failed, the {@link BulkError} and its message
+	 * @throws InvalidCollectionException
+	 * @throws Throwable the failure of an operation applied inside the caller's transaction
+	 */
+	public static ArrayNode bulk(String collectionName, Iterator<JsonNode> operations, int batchSize) throws Throwable{
+		DocumentDao.getInstance(collectionName);
+		ArrayNode results = JsonNodeFactory.instance.arrayNode();
+		if (DbHelper.isInTransaction()){
+			while (operations.hasNext()){
+				results.add(applyOperation(collectionName, operations.next(), results.size()));
+			}
+			return results;
+		}
+		List<JsonNode> batch = new ArrayList<JsonNode>(batchSize);
+		while (operations.hasNext()){
+			batch.add(operations.next());
+			if (batch.size()>=batchSize){
+				results.addAll(applyBatch(collectionName, batch, results.size()));
+				batch.clear();
+			}
+		}
+		if (!batch.isEmpty()) results.addAll(applyBatch(collectionName, batch, results.size()));
+		return results;
+	}
+
+	private static List<JsonNode> applyBatch(String collectionName, List<JsonNode> batch, int firstIndex) {
+		List<JsonNode> results = new ArrayList<JsonNode>(batch.size());
+		DbHelper.requestTransaction();
+		try{
+			for (int i=0;i<batch.size();i++){
+				results.add(applyOperation(collectionName, batch.get(i), firstIndex+i));
+			}
+			DbHelper.commitTransaction();
+			return results;
+		}catch (Throwable e){
+			DbHelper.rollbackTransaction();
+			if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("Bulk batch starting at " + firstIndex + " rolled back, applying its operations one by one: " + ExceptionUtils.getMessage(e));
+		}
+		results.clear();
+		for (int i=0;i<batch.size();i++){
+			JsonNode operation = batch.get(i);
+			DbHelper.requestTransaction();
+			try{
+				ObjectNode result = applyOperation(collectionName, operation, firstIndex+i);
+				DbHelper.commitTransaction();
+				results.add(result);
+			}catch (Throwable e){
+				DbHelper.rollbackTransaction();
+				BulkError error = BulkError.of(e);
+				if (error==BulkError.INTERNAL) BaasBoxLogger.error(ExceptionUtils.getFullStackTrace(e));
+				ObjectNode result = bulkResult(operation, firstIndex+i);
+				result.put(BULK_ERROR, error.name());
+				result.put("message", ExceptionUtils.getMessage(e));
+				results.add(result);
+			}
+		}
+		return results;
+	}
+
+	private static ObjectNode applyOperation(String collectionName, JsonNode operation, int index) throws Throwable {
+		if (operation==null || !operation.isObject()) throw new InvalidJsonException("The operation must be a JSON object");
+		String op = operation.path(BULK_OPERATION).asText();
+		JsonNode data = operation.get(BULK_DATA);
+		if ((BULK_CREATE.equals(op) || BULK_UPDATE.equals(op)) && (data==null || !data.isObject())) throw new InvalidJsonException("The " + BULK_DATA + " field must be a JSON object");
+		ObjectNode result = bulkResult(operation, index);
+		if (BULK_CREATE.equals(op)){
+			ODocument doc = create(collectionName, ((ObjectNode)data).deepCopy());
+			result.put(BaasBoxPrivateFields.ID.toString(), (String)doc.field(BaasBoxPrivateFields.ID.toString()));
+			return result;
+		}
+		if (!operation.path(BaasBoxPrivateFields.ID.toString()).isTextual()) throw new InvalidJsonException("The " + BaasBoxPrivateFields.ID.toString() + " field is required");
+		String rid = getRidByString(operation.get(BaasBoxPrivateFields.ID.toString()).asText(), true);
+		if (BULK_UPDATE.equals(op)) update(collectionName, rid, ((ObjectNode)data).deepCopy());
+		else if (BULK_DELETE.equals(op)) delete(collectionName, rid);
+		else throw new InvalidJsonException("Unknown operation: " + op + ". Valid operations are " + BULK_CREATE + ", " + BULK_UPDATE + " and " + BULK_DELETE);
+		return result;
+	}
+
+	private static ObjectNode bulkResult(JsonNode operation, int index){
+		ObjectNode result = JsonNodeFactory.instance.objectNode();
+		result.put("index", index);
+		if (operation!=null && operation.isObject()){
+			if (operation.has(BULK_OPERATION)) result.put(BULK_OPERATION, operation.get(BULK_OPERATION));
+			if (operation.has(BaasBoxPrivateFields.ID.toString())) result.put(BaasBoxPrivateFields.ID.toString(), operation.get(BaasBoxPrivateFields.ID.toString()));
+		}
+		return result;
+	}
+
 }
@@ -25,12 +25,15 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
-import org.apache.commons.io.output.ByteArrayOutputStream;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.baasbox.BBConfiguration;
 import com.baasbox.configuration.ImagesConfiguration;
 import com.baasbox.controllers.CustomHttpCode;
 import com.baasbox.dao.FileDao;
@@ -50,7 +53,6 @@ import com.baasbox.exception.InvalidSizePatternException;
 import com.baasbox.exception.RoleNotFoundException;
 import com.baasbox.exception.UserNotFoundException;
 import com.baasbox.service.storage.StorageUtils.ImageDimensions;
-import com.baasbox.service.storage.StorageUtils.WritebleImageFormat;
 import com.baasbox.service.user.RoleService;
 import com.baasbox.service.user.UserService;
 import com.baasbox.util.QueryParams;
@@ -63,6 +65,7 @@ public class FileService {
 	public static final String BINARY_FIELD_NAME=FileDao.BINARY_FIELD_NAME;
 	public final static String CONTENT_TYPE_FIELD_NAME=FileDao.CONTENT_TYPE_FIELD_NAME;
 	public final static String CONTENT_LENGTH_FIELD_NAME=FileDao.CONTENT_LENGTH_FIELD_NAME;
+	public final static String CONTENT_HASH_FIELD_NAME=FileDao.CONTENT_HASH_FIELD_NAME;
 	
 		public static ODocument createFile(String fileName,String data,String contentType, byte[] content) throws Throwable{
 			InputStream is = new ByteArrayInputStream(content); 
@@ -87,12 +90,21 @@ public class FileService {
 			return doc;
 		}
 		
+		/**
+		 * Stores the file and sets its permissions. The metadata and the text of the file are extracted
+		 * in background by the {@link ContentExtractor}
+		 */
 		public static ODocument createFile(String fileName, String dataJson,
 				String aclJsonString, String contentType, long length,
-				InputStream is, HashMap<String, Object> extractedMetaData,
-				String extractedContent) throws Throwable {
-			ODocument doc = createFile(fileName, dataJson, contentType, length, is, extractedMetaData,
-					extractedContent);
+				InputStream is) throws Throwable {
+			FileDao dao = FileDao.getInstance();
+			ODocument doc=dao.create(fileName,contentType,length,is);
+			if (dataJson!=null && !dataJson.trim().isEmpty()) {
+				ODocument metaDoc=(new ODocument()).fromJSON("{ '"+DATA_FIELD_NAME+"' : " + dataJson + "}");
+				doc.merge(metaDoc, true, false);
+			}
+			doc.field(FileDao.EXTRACTION_STATUS_FIELD_NAME,ContentExtractor.Status.PENDING.toString());
+			dao.save(doc);
 			//sets the permissions
 			ObjectMapper mapper = new ObjectMapper();
 			JsonNode aclJson=null;
@@ -102,6 +114,11 @@ public class FileService {
 				throw e;
 			}
 			setAcl(doc, aclJson);
+			ContentExtractor.Status status = ContentExtractor.extract((String)doc.field("id"));
+			if (status!=ContentExtractor.Status.PENDING){
+				doc.field(FileDao.EXTRACTION_STATUS_FIELD_NAME,status.toString());
+				dao.save(doc);
+			}
 			return doc;
 		}//createFile with permission
 		
@@ -169,11 +186,21 @@ public class FileService {
 			return dao.getById(id);
 		}
 		
+		/**
+		 * @return the content of the file, read a chunk at a time
+		 */
+		public static InputStream getContent(ODocument file) throws InvalidModelException {
+			FileDao dao = FileDao.getInstance();
+			return dao.getContent(file);
+		}
+
 		public static void deleteById(String id) throws Throwable, SqlInjectionException, FileNotFoundException{
 			FileDao dao = FileDao.getInstance();
 			ODocument file=getById(id);
 			if (file==null) throw new FileNotFoundException();
 			dao.delete(file.getIdentity());
+			dao.deleteContent(file);
+			BinaryCache.invalidateFile(id);
 		}
 
 
@@ -267,32 +294,35 @@ public class FileService {
 			//are the dimensions allowed?
 			//the check is delegated to the caller
 			String sizePattern= dimensions.toString();
+			byte[] resizedImage = BinaryCache.getFile(id, sizePattern);
+			if (resizedImage!=null) return resizedImage;
+			FileDao dao=FileDao.getInstance();
 			try{
-				FileDao dao=FileDao.getInstance();
-				byte[] resizedImage = dao.getStoredResizedPicture( file,  sizePattern);
-				if (resizedImage!=null) return resizedImage;
-				
-				ByteArrayOutputStream fileContent = StorageUtils.extractFileFromDoc(file);
-				if (fileContent.toByteArray().length==0) return new byte[]{};
-				String contentType = getContentType(file);
-				String ext = contentType.substring(contentType.indexOf("/")+1);
-				WritebleImageFormat format;
-				try{
-					format = WritebleImageFormat.valueOf(ext);
-				}catch (Exception e){
-					format= WritebleImageFormat.png;
-				}
-				resizedImage=StorageUtils.resizeImage(fileContent.toByteArray(), format, dimensions);
-				
-				//save the resized image for future requests
-				dao.storeResizedPicture(file, sizePattern, resizedImage);
-				return resizedImage;
+				resizedImage = dao.getStoredResizedPicture( file,  sizePattern);
 			}catch ( InvalidModelException e) {
 				throw new RuntimeException("A very strange error occurred! ",e);
-			}catch (OutOfMemoryError e){
-				throw new FileTooBigException();
 			}
-
+			if (resizedImage!=null) {
+				BinaryCache.putFile(id, sizePattern, resizedImage);
+				return resizedImage;
+			}
+			//the resize happens on the workers, the concurrent requests for the same size wait for the same resize
+			try{
+				resizedImage = ImageResizer.resize(id, dimensions).get(BBConfiguration.getImagesResizeTimeout(), TimeUnit.SECONDS);
+				BinaryCache.putFile(id, sizePattern, resizedImage);
+				return resizedImage;
+			}catch (TimeoutException e){
+				throw new FileTooBigException("The resize of the image " + id + " is taking too long");
+			}catch (InterruptedException e){
+				Thread.currentThread().interrupt();
+				throw new FileTooBigException(e);
+			}catch (ExecutionException e){
+				Throwable cause = e.getCause();
+				if (cause instanceof FileTooBigException) throw (FileTooBigException) cause;
+				if (cause instanceof DocumentIsNotAFileException) throw (DocumentIsNotAFileException) cause;
+				if (cause instanceof IOException) throw (IOException) cause;
+				throw new RuntimeException(cause);
+			}
 		}
 
 		public static String getContentType(ODocument file) {
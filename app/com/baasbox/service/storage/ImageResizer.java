@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2014.
+ *
+ * BaasBox - info-at-baasbox.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baasbox.service.storage;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.exception.ExceptionUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import com.baasbox.BBConfiguration;
+import com.baasbox.configuration.ImagesConfiguration;
+import com.baasbox.dao.FileDao;
+import com.baasbox.db.DbHelper;
+import com.baasbox.exception.DocumentIsNotAFileException;
+import com.baasbox.exception.FileTooBigException;
+import com.baasbox.service.logging.BaasBoxLogger;
+import com.baasbox.service.storage.StorageUtils.ImageDimensions;
+import com.baasbox.service.storage.StorageUtils.WritebleImageFormat;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.orientechnologies.orient.core.db.record.ODatabaseRecordTx;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+
+/**
+ * Resizes the images of the files on a bounded pool of workers, so the memory used by the resizes is bounded as well.
+ * <p>
+ * Concurrent requests for the same file and size share a single resize. The resized image is stored
+ * with the file, so it is computed just once. The workers access the database as the internal admin:
+ * the caller has to check the user can read the file.
+ */
+public class ImageResizer {
+
+	private static volatile ThreadPoolExecutor executor;
+	//resizes queued or running, by file id and size
+	private static final ConcurrentHashMap<String, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<String, CompletableFuture<byte[]>>();
+
+	/**
+	 * @return the resized image. If the queue of the workers is full the future fails with a {@link FileTooBigException}
+	 */
+	public static CompletableFuture<byte[]> resize(final String fileId, final ImageDimensions dimensions) {
+		final String key = fileId + "/" + dimensions;
+		final CompletableFuture<byte[]> future = new CompletableFuture<byte[]>();
+		CompletableFuture<byte[]> running = inFlight.putIfAbsent(key, future);
+		if (running != null) return running;
+		final String appcode = DbHelper.getCurrentAppCode();
+		try {
+			getExecutor().execute(() -> {
+				try {
+					future.complete(resizeAndStore(appcode, fileId, dimensions));
+				} catch (OutOfMemoryError e) {
+					future.completeExceptionally(new FileTooBigException("Not enough memory to resize the file " + fileId));
+				} catch (Throwable e) {
+					future.completeExceptionally(e);
+				} finally {
+					inFlight.remove(key, future);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			inFlight.remove(key, future);
+			future.completeExceptionally(new FileTooBigException("Too many images waiting to be resized, retry later"));
+		}
+		return future;
+	}
+
+	/**
+	 * Queues the resize of the image in all the sizes allowed by {@link ImagesConfiguration#IMAGE_ALLOWED_AUTOMATIC_RESIZE_FORMATS},
+	 * so they are ready when they are requested for the first time
+	 */
+	public static void resizeToAllowedSizes(String fileId) {
+		String formats = ImagesConfiguration.IMAGE_ALLOWED_AUTOMATIC_RESIZE_FORMATS.getValueAsString();
+		if (StringUtils.isBlank(formats)) return;
+		for (String pattern : formats.trim().split("\\s+")) {
+			try {
+				resize(fileId, StorageUtils.convertPatternToDimensions(pattern)).exceptionally(e -> {
+					BaasBoxLogger.warn("Unable to resize the image " + fileId + " to " + pattern + ": " + ExceptionUtils.getMessage(e));
+					return null;
+				});
+			} catch (Exception e) {
+				BaasBoxLogger.warn("The allowed image size " + pattern + " is not valid: " + ExceptionUtils.getMessage(e));
+			}
+		}
+	}
+
+	/**
+	 * Stops the workers. Queued resizes are discarded
+	 */
+	public static void shutdown() {
+		synchronized (ImageResizer.class) {
+			if (executor != null) executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	private static byte[] resizeAndStore(String appcode, String fileId, ImageDimensions dimensions) throws Throwable {
+		ODatabaseRecordTx db = null;
+		try {
+			db = DbHelper.open(appcode, BBConfiguration.getBaasBoxAdminUsername(), BBConfiguration.getBaasBoxAdminPassword());
+			FileDao dao = FileDao.getInstance();
+			ODocument file = dao.getById(fileId);
+			if (file == null) throw new DocumentIsNotAFileException("The file " + fileId + " does not exist");
+			String sizePattern = dimensions.toString();
+			byte[] resizedImage = dao.getStoredResizedPicture(file, sizePattern);
+			if (resizedImage != null) return resizedImage;
+
+			long start = System.currentTimeMillis();
+			byte[] content = StorageUtils.extractFileFromDoc(file).toByteArray();
+			if (content.length == 0) return new byte[]{};
+			String contentType = FileService.getContentType(file);
+			String ext = contentType.substring(contentType.indexOf("/") + 1);
+			WritebleImageFormat format;
+			try {
+				format = WritebleImageFormat.valueOf(ext);
+			} catch (Exception e) {
+				format = WritebleImageFormat.png;
+			}
+			resizedImage = StorageUtils.resizeImage(content, format, dimensions);
+			//save the resized image for future requests
+			dao.storeResizedPicture(file, sizePattern, resizedImage);
+			if (BaasBoxLogger.isDebugEnabled()) BaasBoxLogger.debug("Image " + fileId + " resized to " + sizePattern + " in " + (System.currentTimeMillis() - start) + " ms");
+			return resizedImage;
+		} finally {
+			if (db != null) DbHelper.close(db);
+		}
+	}
+
+	private static ThreadPoolExecutor getExecutor() {
+		ThreadPoolExecutor ex = executor;
+		if (ex == null) {
+			synchronized (ImageResizer.class) {
+				if (executor == null) {
+					int workers = BBConfiguration.getImagesResizeWorkers();
+					ThreadFactory threads = new ThreadFactoryBuilder().setNameFormat("baasbox-image-resizer-%d").setDaemon(true).build();
+					executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+							new LinkedBlockingQueue<Runnable>(BBConfiguration.getImagesResizeQueueCapacity()), threads);
+				}
+				ex = executor;
+			}
+		}
+		return ex;
+	}
+}
@@ -3,9 +3,11 @@ package com.baasbox.service.storage;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 
 import javax.imageio.ImageIO;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.output.ByteArrayOutputStream;
 import org.imgscalr.Scalr;
 
@@ -14,6 +16,7 @@ import com.baasbox.dao.FileDao;
 import com.baasbox.dao.GenericDao;
 import com.baasbox.dao.NodeDao;
 import com.baasbox.dao.exception.DocumentNotFoundException;
+import com.baasbox.dao.exception.InvalidModelException;
 import com.baasbox.db.DbHelper;
 import com.baasbox.exception.DocumentIsNotAFileException;
 import com.baasbox.exception.InvalidSizePatternException;
@@ -162,6 +165,15 @@ public class StorageUtils {
 
 	public static ByteArrayOutputStream extractFileFromDoc(ODocument doc) throws DocumentIsNotAFileException, IOException{
 		if (!docIsAFile(doc)) throw new DocumentIsNotAFileException();
+		if (doc.containsField(FileDao.CHUNKS_FIELD_NAME)){
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			try (InputStream content = FileDao.getInstance().getContent(doc)){
+				IOUtils.copy(content, out);
+			}catch (InvalidModelException e){
+				throw new DocumentIsNotAFileException("The document is not a file");
+			}
+			return out;
+		}
 		if (!doc.containsField("file")) throw new DocumentIsNotAFileException("the file field does not exist");
 		ORecordBytes record = null;
 		try {
@@ -43,6 +43,7 @@ import com.baasbox.BBConfiguration;
 import com.baasbox.configuration.Application;
 import com.baasbox.configuration.Internal;
 import com.baasbox.configuration.PasswordRecovery;
+import com.baasbox.dao.DeviceDao;
 import com.baasbox.dao.GenericDao;
 import com.baasbox.dao.LinkDao;
 import com.baasbox.dao.NodeDao;
@@ -80,6 +81,7 @@ import com.orientechnologies.orient.core.id.ORID;
 import com.orientechnologies.orient.core.metadata.security.ORole;
 import com.orientechnologies.orient.core.metadata.security.OUser;
 import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.storage.ORecordDuplicatedException;
 import com.orientechnologies.orient.core.sql.query.OSQLSynchQuery;
 
 public class UserService {
@@ -170,73 +172,77 @@ public class UserService {
 				generated) ;
 	}
 
+	/**
+	 * Registers the device of the current user in the device registry (see {@link DeviceDao}) and in its login_info list.
+	 * A device (os and pushToken pair) belongs to one user only, so it is removed from the previous owner, if any
+	 */
 	public static void registerDevice(HashMap<String,Object> data) throws SqlInjectionException{
 		String username = DbHelper.getCurrentUserNameFromConnection();
 		String pushToken=(String) data.get(UserDao.USER_PUSH_TOKEN);
 		String os=(String) data.get(UserDao.USER_DEVICE_OS);
-		boolean found=false;
 
 		com.baasbox.db.DbHelper.reconnectAsAdmin();
-		
-		List<ODocument> sqlresult = (List<ODocument>) com.baasbox.db.DbHelper.genericSQLStatementExecute("select from _BB_UserAttributes where login_info contains (pushToken = '"+pushToken+"') AND login_info contains (os = '"+os+"')",null);
-
-		//prevents more users use the same os/token pair and duplications of os/token pairs
-		for(ODocument record: sqlresult ) {
-			List<ODocument> login_Infos=record.field(UserDao.USER_LOGIN_INFO);
-			for (ODocument login_Info : login_Infos){
-				if (login_Info.field(UserDao.USER_PUSH_TOKEN).equals(pushToken) && (login_Info.field(UserDao.USER_DEVICE_OS).equals(os))){
-					login_Infos.remove(login_Info);
-					break;
-				}
+		try{
+			ODocument user=getUserProfilebyUsername(username);
+			ORID previousOwner;
+			try{
+				previousOwner = DeviceDao.getInstance().register(user.getIdentity(), os, pushToken);
+			}catch (ORecordDuplicatedException e){
+				//the same device has been registered concurrently
+				previousOwner = DeviceDao.getInstance().register(user.getIdentity(), os, pushToken);
+			}
+			if (previousOwner!=null){
+				ODocument previousUser = DbHelper.getConnection().load(previousOwner);
+				if (previousUser!=null) removeLoginInfo((ODocument)previousUser.field(UserDao.ATTRIBUTES_SYSTEM), os, pushToken);
 			}
-			record.save();	
-		}
 	
-		ODocument user=getUserProfilebyUsername(username);
-		ODocument systemProps=user.field(UserDao.ATTRIBUTES_SYSTEM);
-		ArrayList<ODocument> loginInfos=systemProps.field(UserDao.USER_LOGIN_INFO);
-		
-		for (ODocument loginInfo : loginInfos){
-
-			if (loginInfo.field(UserDao.USER_PUSH_TOKEN)!=null && loginInfo.field(UserDao.USER_PUSH_TOKEN).equals(pushToken) && loginInfo.field(UserDao.USER_DEVICE_OS).equals(os)){
-				found=true;
-				break;
+			ODocument systemProps=user.field(UserDao.ATTRIBUTES_SYSTEM);
+			ArrayList<ODocument> loginInfos=systemProps.field(UserDao.USER_LOGIN_INFO);
+			if (findLoginInfo(loginInfos, os, pushToken)==null){
+				loginInfos.add(new ODocument(data));
+				systemProps.save();
 			}
+		}finally{
+			com.baasbox.db.DbHelper.reconnectAsAuthenticatedUser();
 		}
-		if (!found){
-			loginInfos.add(new ODocument(data));
-			systemProps.save();
-		}
-		
-		com.baasbox.db.DbHelper.reconnectAsAuthenticatedUser();
-
 	}
+
+	/**
+	 * Removes the device with the given token from the current user
+	 */
 	public static void unregisterDevice(String pushToken) throws SqlInjectionException{
 		ODocument user=getCurrentUser();
-		ODocument systemProps=user.field(UserDao.ATTRIBUTES_SYSTEM);
-		ArrayList<ODocument> loginInfos=systemProps.field(UserDao.USER_LOGIN_INFO);
-		for (ODocument loginInfo : loginInfos){
-			if (loginInfo.field(UserDao.USER_PUSH_TOKEN)!=null && loginInfo.field(UserDao.USER_PUSH_TOKEN).equals(pushToken)){
-				loginInfos.remove(loginInfo);
-				break;
-			}
+		DeviceDao dao = DeviceDao.getInstance();
+		for (ODocument device : dao.getByUser(user.getIdentity())){
+			if (pushToken.equals(device.field(DeviceDao.PUSH_TOKEN))) dao.delete(device);
 		}
-		systemProps.save();
+		ODocument systemProps=user.field(UserDao.ATTRIBUTES_SYSTEM);
+		removeLoginInfo(systemProps, null, pushToken);
 	}
 	
-	
-
 	public static void logout(String pushToken) throws SqlInjectionException {
-		ODocument user=getCurrentUser();
-		ODocument systemProps=user.field(UserDao.ATTRIBUTES_SYSTEM);
-		ArrayList<ODocument> loginInfos=systemProps.field(UserDao.USER_LOGIN_INFO);
+		unregisterDevice(pushToken);
+	}
+
+	private static ODocument findLoginInfo(List<ODocument> loginInfos, String os, String pushToken){
+		if (loginInfos==null) return null;
 		for (ODocument loginInfo : loginInfos){
-			if (loginInfo.field(UserDao.USER_PUSH_TOKEN)!=null && loginInfo.field(UserDao.USER_PUSH_TOKEN).equals(pushToken)){
-				loginInfos.remove(loginInfo);
-				break;
+			if (pushToken.equals(loginInfo.field(UserDao.USER_PUSH_TOKEN)) && (os==null || os.equals(loginInfo.field(UserDao.USER_DEVICE_OS)))){
+				return loginInfo;
 			}
 		}
-		systemProps.save();
+		return null;
+	}
+
+	//os may be null to remove the token whatever its os is
+	private static void removeLoginInfo(ODocument systemProps, String os, String pushToken){
+		if (systemProps==null) return;
+		List<ODocument> loginInfos=systemProps.field(UserDao.USER_LOGIN_INFO);
+		ODocument loginInfo=findLoginInfo(loginInfos, os, pushToken);
+		if (loginInfo!=null){
+			loginInfos.remove(loginInfo);
+			systemProps.save();
+		}
 	}
 
 	public static ODocument  signUp (
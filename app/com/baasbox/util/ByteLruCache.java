@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2014.
+ *
+ * BaasBox - info-at-baasbox.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baasbox.util;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A least recently used cache of byte arrays, bounded by the total size of its values rather than by their number.
+ * <p>
+ * The values can be kept off the heap, in direct buffers, so a large cache does not lengthen the GC pauses:
+ * in that case every hit copies the value back into a new array. On the heap the cached array itself is returned,
+ * and it must not be modified.
+ */
+public class ByteLruCache {
+
+	private final long maxBytes;
+	private final long maxEntryBytes;
+	private final boolean offHeap;
+	//access ordered: the first entry is the least recently used
+	private final LinkedHashMap<String, Object> entries = new LinkedHashMap<String, Object>(16, 0.75f, true);
+	private long bytes = 0;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * @param maxBytes the total size of the cached values, 0 disables the cache
+	 * @param maxEntryBytes values larger than this are not cached
+	 * @param offHeap true to keep the values in direct buffers
+	 */
+	public ByteLruCache(long maxBytes, long maxEntryBytes, boolean offHeap) {
+		this.maxBytes = maxBytes;
+		this.maxEntryBytes = Math.min(maxEntryBytes, maxBytes);
+		this.offHeap = offHeap;
+	}
+
+	/**
+	 * @return the cached value, or null
+	 */
+	public byte[] get(String key) {
+		Object value;
+		synchronized (this) {
+			value = entries.get(key);
+		}
+		if (value == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		if (value instanceof byte[]) return (byte[]) value;
+		//duplicate() does not share the position with the concurrent readers
+		ByteBuffer buffer = ((ByteBuffer) value).duplicate();
+		buffer.clear();
+		byte[] copy = new byte[buffer.remaining()];
+		buffer.get(copy);
+		return copy;
+	}
+
+	/**
+	 * Caches a value, evicting the least recently used ones if needed. Values larger than the max entry size are ignored
+	 */
+	public void put(String key, byte[] value) {
+		if (value == null || value.length > maxEntryBytes) return;
+		Object stored = value;
+		if (offHeap) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(value.length);
+			buffer.put(value);
+			stored = buffer;
+		}
+		synchronized (this) {
+			Object previous = entries.put(key, stored);
+			if (previous != null) bytes -= sizeOf(previous);
+			bytes += value.length;
+			Iterator<Object> it = entries.values().iterator();
+			while (bytes > maxBytes && it.hasNext()) {
+				bytes -= sizeOf(it.next());
+				it.remove();
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Removes all the values whose key starts with the given prefix
+	 */
+	public synchronized void invalidatePrefix(String prefix) {
+		Iterator<Map.Entry<String, Object>> it = entries.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<String, Object> entry = it.next();
+			if (entry.getKey().startsWith(prefix)) {
+				bytes -= sizeOf(entry.getValue());
+				it.remove();
+			}
+		}
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+	}
+
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	public synchronized int getSize() {
+		return entries.size();
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	private static long sizeOf(Object value) {
+		return value instanceof byte[] ? ((byte[]) value).length : ((ByteBuffer) value).capacity();
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2014.
+ *
+ * BaasBox - info-at-baasbox.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baasbox.util;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * A single byte range requested through the HTTP Range header (RFC 7233).
+ * <p>
+ * Only one range per request is supported: a header asking for more ranges, or not understood, is ignored
+ * and the whole content is returned, as the RFC allows.
+ */
+public class ByteRange {
+
+	private static final Pattern RANGE = Pattern.compile("^\\s*bytes\\s*=\\s*(\\d*)\\s*-\\s*(\\d*)\\s*$", Pattern.CASE_INSENSITIVE);
+
+	private final long start;
+	private final long end;
+	private final long total;
+
+	private ByteRange(long start, long end, long total) {
+		this.start = start;
+		this.end = end;
+		this.total = total;
+	}
+
+	/**
+	 * @param header the value of the Range header
+	 * @param total the length of the content
+	 * @return the requested range, or null if the whole content has to be returned
+	 */
+	public static ByteRange parse(String header, long total) {
+		if (StringUtils.isEmpty(header)) return null;
+		Matcher matcher = RANGE.matcher(header);
+		if (!matcher.matches()) return null;
+		String first = matcher.group(1);
+		String last = matcher.group(2);
+		try {
+			if (first.isEmpty()) {
+				//suffix range: the last N bytes
+				if (last.isEmpty()) return null;
+				long suffix = Long.parseLong(last);
+				if (suffix == 0) return new ByteRange(total, total - 1, total);
+				return new ByteRange(Math.max(0, total - suffix), total - 1, total);
+			}
+			long start = Long.parseLong(first);
+			long end = last.isEmpty() ? total - 1 : Math.min(Long.parseLong(last), total - 1);
+			if (!last.isEmpty() && Long.parseLong(last) < start) return null;
+			return new ByteRange(start, end, total);
+		} catch (NumberFormatException e) {
+			//too many digits
+			return null;
+		}
+	}
+
+	/**
+	 * Checks the If-Range precondition: the range is served only if the client copy is still the current one
+	 * @param ifRange the value of the If-Range header, either an entity tag or a date
+	 * @param etag the current entity tag of the content, may be null
+	 * @param lastModified the last modification time of the content in milliseconds, 0 if unknown
+	 * @return true if there is no If-Range header, or if it matches the current content
+	 */
+	public static boolean ifRangeMatches(String ifRange, String etag, long lastModified) {
+		if (StringUtils.isEmpty(ifRange)) return true;
+		ifRange = ifRange.trim();
+		if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+			//weak tags never match
+			return etag != null && !etag.startsWith("W/") && ifRange.equals(etag);
+		}
+		if (lastModified <= 0) return false;
+		long date = HttpValidators.parseHttpDate(ifRange);
+		//HTTP dates have a precision of one second
+		return date >= 0 && date / 1000 == lastModified / 1000;
+	}
+
+	public boolean isSatisfiable() {
+		return start < total && start <= end;
+	}
+
+	public long getStart() {
+		return start;
+	}
+
+	public long getEnd() {
+		return end;
+	}
+
+	public long getLength() {
+		return end - start + 1;
+	}
+
+	/**
+	 * @return the value of the Content-Range header for this range
+	 */
+	public String toContentRange() {
+		if (!isSatisfiable()) return "bytes */" + total;
+		return "bytes " + start + "-" + end + "/" + total;
+	}
+}
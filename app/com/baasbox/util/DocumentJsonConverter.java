@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2014.
+ *
+ * BaasBox - info-at-baasbox.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baasbox.util;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.apache.commons.codec.binary.Base64;
+
+import com.baasbox.db.DbHelper;
+import com.baasbox.service.storage.BaasBoxPrivateFields;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.orientechnologies.orient.core.db.record.OIdentifiable;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.metadata.schema.OType;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.serialization.serializer.record.string.ORecordSerializerStringAbstract;
+
+/**
+ * Converts Jackson trees to documents and back walking them, instead of writing them as text and parsing it again.
+ * <p>
+ * The values get the types {@link ODocument#fromJSON(String)} gives them: the JSON objects become embedded documents,
+ * the arrays embedded lists, the strings shaped as record ids (#12:3) links and the decimal numbers floats, doubles
+ * or decimals according to their precision.
+ * The objects carrying OrientDB attributes (@rid, @type, @fieldTypes...) other than @version
+ * are still handed to fromJSON, since they may describe links and field types.
+ */
+public class DocumentJsonConverter {
+
+	private static final JsonNodeFactory factory = JsonNodeFactory.instance;
+	private static final String VERSION = "@version";
+	private static final Pattern RID = Pattern.compile("#-?\\d+:-?\\d+");
+
+	private static final Set<String> PRIVATE_FIELDS = new HashSet<String>(Arrays.asList(BaasBoxPrivateFields.getFields()));
+
+	/**
+	 * @param json a JSON object
+	 * @param skipPrivateFields if true the BaasBox private fields (id, _author, _allow...) are not copied
+	 * @return a new document with the fields of the object. Its version is the @version field, if any
+	 */
+	public static ODocument toDocument(JsonNode json, boolean skipPrivateFields){
+		if (json==null || !json.isObject()) throw new IllegalArgumentException("A JSON object is required, got: " + json);
+		if (hasAttributes(json)) {
+			ObjectNode copy = ((ObjectNode)json).deepCopy();
+			if (skipPrivateFields) copy.remove(PRIVATE_FIELDS);
+			return new ODocument().fromJSON(copy.toString());
+		}
+		ODocument doc = new ODocument();
+		Iterator<Entry<String, JsonNode>> fields = json.fields();
+		while (fields.hasNext()){
+			Entry<String, JsonNode> field = fields.next();
+			if (VERSION.equals(field.getKey())){
+				doc.getRecordVersion().setCounter(field.getValue().asInt());
+			}else if (!skipPrivateFields || !PRIVATE_FIELDS.contains(field.getKey())){
+				doc.field(field.getKey(), toValue(field.getValue(), doc));
+			}
+		}
+		return doc;
+	}
+
+	/**
+	 * The JSON representation of the document, as {@link JSONFormats.Formats#DOCUMENT_PUBLIC} writes it: @rid, @version and @class,
+	 * the embedded documents, the links as record ids and the dates in the database format.
+	 * @param doc
+	 * @param skipHiddenFields if true the BaasBox private fields not visible by the clients (_links, _audit, _allow...) are skipped
+	 */
+	public static ObjectNode toJson(ODocument doc, boolean skipHiddenFields){
+		DateFormat dateFormat = DbHelper.getConnection().getStorage().getConfiguration().getDateTimeFormatInstance();
+		ObjectNode json = factory.objectNode();
+		if (doc.getIdentity().isValid()) json.put("@rid", doc.getIdentity().toString());
+		json.put(VERSION, doc.getVersion());
+		if (doc.getClassName()!=null) json.put("@class", doc.getClassName());
+		for (String name : doc.fieldNames()){
+			if (skipHiddenFields && BaasBoxPrivateFields.getHiddenFields().contains(name)) continue;
+			json.put(name, toJsonValue(doc.field(name), dateFormat));
+		}
+		return json;
+	}
+
+	public static ArrayNode toJson(List<ODocument> docs, boolean skipHiddenFields){
+		ArrayNode json = factory.arrayNode();
+		for (ODocument doc : docs){
+			json.add(toJson(doc, skipHiddenFields));
+		}
+		return json;
+	}
+
+	private static Object toValue(JsonNode node, ODocument owner){
+		if (node==null || node.isNull()) return null;
+		if (node.isObject()){
+			ODocument embedded = hasAttributes(node) ? new ODocument().fromJSON(node.toString()) : toEmbedded(node);
+			if (!embedded.getIdentity().isValid()) embedded.addOwner(owner);
+			return embedded;
+		}
+		if (node.isArray()){
+			List<Object> list = new ArrayList<Object>(node.size());
+			for (JsonNode item : node){
+				list.add(toValue(item, owner));
+			}
+			return list;
+		}
+		if (node.isTextual()){
+			//fromJSON stores the record ids as links
+			return RID.matcher(node.textValue()).matches() ? new ORecordId(node.textValue()) : node.textValue();
+		}
+		if (node.isBoolean()) return node.booleanValue();
+		if (node.isBigInteger()) return new BigDecimal(node.bigIntegerValue());
+		if (node.isFloatingPointNumber()) return toDecimal(node.asText());
+		if (node.isNumber()) return node.numberValue();
+		return node.asText();
+	}
+
+	//the type detection of fromJSON: a float if no precision is lost, otherwise a double or a decimal
+	private static Object toDecimal(String value){
+		OType type = ORecordSerializerStringAbstract.getType(value);
+		if (type==OType.FLOAT) return Float.valueOf(value);
+		if (type==OType.DECIMAL) return new BigDecimal(value);
+		return Double.valueOf(value);
+	}
+
+	private static ODocument toEmbedded(JsonNode json){
+		ODocument doc = new ODocument();
+		Iterator<Entry<String, JsonNode>> fields = json.fields();
+		while (fields.hasNext()){
+			Entry<String, JsonNode> field = fields.next();
+			if (VERSION.equals(field.getKey())) continue;
+			doc.field(field.getKey(), toValue(field.getValue(), doc));
+		}
+		return doc;
+	}
+
+	private static JsonNode toJsonValue(Object value, DateFormat dateFormat){
+		if (value==null) return factory.nullNode();
+		if (value instanceof ODocument && !((ODocument)value).getIdentity().isPersistent()){
+			ODocument embedded = (ODocument)value;
+			ObjectNode json = factory.objectNode();
+			json.put(VERSION, embedded.getVersion());
+			if (embedded.getClassName()!=null) json.put("@class", embedded.getClassName());
+			for (String name : embedded.fieldNames()){
+				json.put(name, toJsonValue(embedded.field(name), dateFormat));
+			}
+			return json;
+		}
+		if (value instanceof OIdentifiable) return factory.textNode(((OIdentifiable)value).getIdentity().toString());
+		if (value instanceof String) return factory.textNode((String)value);
+		if (value instanceof Boolean) return factory.booleanNode((Boolean)value);
+		if (value instanceof Integer || value instanceof Short || value instanceof Byte) return factory.numberNode(((Number)value).intValue());
+		if (value instanceof Long) return factory.numberNode((Long)value);
+		if (value instanceof Float) return factory.numberNode((Float)value);
+		if (value instanceof Double) return factory.numberNode((Double)value);
+		if (value instanceof BigDecimal) return factory.numberNode((BigDecimal)value);
+		if (value instanceof BigInteger) return factory.numberNode(new BigDecimal((BigInteger)value));
+		if (value instanceof Date) return factory.textNode(dateFormat.format((Date)value));
+		if (value instanceof byte[]) return factory.textNode(Base64.encodeBase64String((byte[])value));
+		if (value instanceof Map){
+			ObjectNode json = factory.objectNode();
+			for (Entry<?, ?> entry : ((Map<?, ?>)value).entrySet()){
+				json.put(String.valueOf(entry.getKey()), toJsonValue(entry.getValue(), dateFormat));
+			}
+			return json;
+		}
+		if (value instanceof Collection || value instanceof Object[]){
+			ArrayNode json = factory.arrayNode();
+			Iterable<?> items = value instanceof Collection ? (Collection<?>)value : Arrays.asList((Object[])value);
+			for (Object item : items){
+				json.add(toJsonValue(item, dateFormat));
+			}
+			return json;
+		}
+		return factory.textNode(value.toString());
+	}
+
+	/**
+	 * @return true if the object has OrientDB attributes that only fromJSON can handle.
+	 * The @version, written by {@link #toJson(ODocument, boolean)} for the embedded documents too, is not one of them
+	 */
+	private static boolean hasAttributes(JsonNode json){
+		Iterator<String> names = json.fieldNames();
+		while (names.hasNext()){
+			String name = names.next();
+			if (name.startsWith("@") && !VERSION.equals(name)) return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2014.
+ *
+ * BaasBox - info-at-baasbox.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baasbox.util;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+import java.util.Locale;
+
+import org.apache.commons.lang3.StringUtils;
+
+import play.mvc.Http;
+
+import com.baasbox.BBInternalConstants;
+import com.baasbox.dao.NodeDao;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+
+/**
+ * Entity tags and modification dates (RFC 7232), so clients can revalidate the objects they already have
+ * and receive a 304 Not Modified instead of the whole content.
+ */
+public class HttpValidators {
+
+	private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US).withZone(ZoneOffset.UTC);
+
+	/**
+	 * @return a strong entity tag for the given version of a document
+	 */
+	public static String documentETag(ODocument doc) {
+		return "\"" + doc.getIdentity() + "-" + doc.getVersion() + "\"";
+	}
+
+	/**
+	 * @return the time of the last update of a node (documents, files, assets), or of its creation. 0 if unknown
+	 */
+	public static long lastModified(ODocument doc) {
+		Date date = null;
+		Object audit = doc.field(BBInternalConstants.FIELD_AUDIT);
+		if (audit instanceof ODocument) date = ((ODocument) audit).field("modifiedOn");
+		if (date == null && doc.containsField(NodeDao.FIELD_CREATION_DATE)) date = doc.field(NodeDao.FIELD_CREATION_DATE);
+		return date == null ? 0 : date.getTime();
+	}
+
+	/**
+	 * Sets the ETag and Last-Modified headers of the response, and checks the If-None-Match and If-Modified-Since headers of the request.
+	 * To be called before the content is loaded or serialized
+	 * @param etag the current entity tag, may be null
+	 * @param lastModified the time of the last modification in milliseconds, 0 if unknown
+	 * @return true if the client copy is still valid and a 304 Not Modified has to be returned
+	 */
+	public static boolean checkNotModified(Http.Context ctx, String etag, long lastModified) {
+		if (etag != null) ctx.response().setHeader("ETag", etag);
+		if (lastModified > 0) ctx.response().setHeader("Last-Modified", formatHttpDate(lastModified));
+		return isNotModified(ctx.request().getHeader("If-None-Match"), ctx.request().getHeader("If-Modified-Since"), etag, lastModified);
+	}
+
+	public static boolean isNotModified(String ifNoneMatch, String ifModifiedSince, String etag, long lastModified) {
+		if (!StringUtils.isEmpty(ifNoneMatch)) {
+			//If-None-Match takes precedence, and it uses the weak comparison
+			if (etag == null) return false;
+			if (ifNoneMatch.trim().equals("*")) return true;
+			String opaque = opaqueTag(etag);
+			for (String tag : ifNoneMatch.split(",")) {
+				if (opaqueTag(tag.trim()).equals(opaque)) return true;
+			}
+			return false;
+		}
+		if (StringUtils.isEmpty(ifModifiedSince) || lastModified <= 0) return false;
+		long since = parseHttpDate(ifModifiedSince);
+		//HTTP dates have a precision of one second
+		return since >= 0 && lastModified / 1000 <= since / 1000;
+	}
+
+	public static String formatHttpDate(long time) {
+		return HTTP_DATE.format(Instant.ofEpochMilli(time));
+	}
+
+	/**
+	 * @return the date in milliseconds, -1 if it is not a valid HTTP date
+	 */
+	public static long parseHttpDate(String date) {
+		try {
+			return ZonedDateTime.parse(date.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+		} catch (DateTimeParseException e) {
+			return -1;
+		}
+	}
+
+	private static String opaqueTag(String tag) {
+		return tag.startsWith("W/") ? tag.substring(2) : tag;
+	}
+}
@@ -42,7 +42,7 @@ public class JSONFormats {
 				+"out.user:1 out.user.password:-2 out.user.roles.name:1 out.user.roles.isrole:-2 out.user.roles.inheritedRole:-2 out.user.roles.rules:-2 out.user.roles:0 out.user.roles.mode:-2 out.user.roles.internal:-2 out.user.roles.modifiable:-2 out.user.roles.assignable:-2 out.user.roles.description:-2 _creation_date:-2 out.visibleByAnonymousUsers:1 out.visibleByTheUser:1 out.visibleByFriends:1 out.visibleByRegisteredUsers:1 "
 				+"in.user:1 in.user.password:-2 in.user.roles.name:1 in.user.roles.isrole:-2 in.user.roles.inheritedRole:-2 in.user.roles.rules:-2 in.user.roles:0 in.user.roles.mode:-2 in.user.roles.internal:-2 in.user.roles.modifiable:-2 in.user.roles.assignable:-2 in.user.roles.description:-2 _creation_date:-2 in.visibleByAnonymousUsers:1 in.visibleByTheUser:1 in.visibleByFriends:1 in.visibleByRegisteredUsers:1 _links:-2 _audit:-2 in.system:-2 _allow:-2 _allowRead:-2"
 				+",version,class,attribSameRow,alwaysFetchEmbedded,indent:0"),
-		FILE("fetchPlan:resized:-2 audit:0 _links:0 _allow:0 _allowread:0 _allowwrite:0 _allowUpdate:0 _allowDelete:0 file:-2 metadata:1 text_content:-2,version,attribSameRow,indent:0"),
+		FILE("fetchPlan:resized:-2 audit:0 _links:0 _allow:0 _allowread:0 _allowwrite:0 _allowUpdate:0 _allowDelete:0 file:-2 chunks:-2 chunkSize:-2 contentHash:-2 metadata:1 text_content:-2,version,attribSameRow,indent:0"),
 		ROLES("indent:0,fetchPlan:rules:-2 inheritedRole:-2"),
         DOCUMENT_PUBLIC("fetchPlan:_audit:-2 _links:-2 _allow:0 _allowread:0 _allowwrite:0 _allowUpdate:0 _allowDelete:0,rid,version,class,attribSameRow,alwaysFetchEmbedded,indent:0"),
 		GENERIC("fetchPlan:user.password:-2 user.roles.name:1 user.roles.inheritedRole:-2 user.roles.rules:-2 user.roles:0 user.roles.mode:-2 user.roles.internal:-2 user.roles.modifiable:-2 user.roles.assignable:-2 user.roles.description:-2 _creation_date:-2 visibleByAnonymousUsers:1 visibleByTheUser:1 visibleByFriends:1 visibleByRegisteredUsers:1 _links:-2 _audit:-2 system:-2 _allow:-2 _allowRead:-2 "
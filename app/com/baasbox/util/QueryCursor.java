@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2014.
+ *
+ * BaasBox - info-at-baasbox.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baasbox.util;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Date;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.lang3.StringUtils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+
+/**
+ * Keyset (seek) pagination.
+ * Instead of skipping the records of the previous pages, the next page is selected by a predicate on the sort key
+ * and on the @rid of the last record returned, so any page costs as the first one.
+ * <p>
+ * The predicate is a single range condition on the sort key, that an index on the key can answer, followed by a
+ * filter that drops the records already returned having the same key. OrientDB 1.7 cannot use an index for an OR
+ * between the conditions, so the textbook form {@code key > ? or (key = ? and @rid > ?)} would scan the class.
+ * The records sharing the key of the last record are read again on the next page: a key with many duplicates
+ * makes the pages more expensive.
+ * <p>
+ * The client receives an opaque token in the {@link #NEXT_CURSOR_HEADER} header and passes it back in the
+ * {@link IQueryParametersKeys#CURSOR} query string parameter. An empty cursor parameter asks for the first page.
+ * Only one sort field is supported, records having a null sort field are not returned.
+ */
+public class QueryCursor {
+
+	public static final String NEXT_CURSOR_HEADER = "X-BB-NEXT-CURSOR";
+
+	private static final String RID = "@rid";
+	private static final Pattern ORDER_BY = Pattern.compile("^\\s*([A-Za-z_][\\w.]*|@rid)(?:\\s+(asc|desc))?\\s*$", Pattern.CASE_INSENSITIVE);
+	private static final ObjectMapper mapper = new ObjectMapper();
+
+	public static class InvalidCursorException extends IllegalArgumentException {
+		public InvalidCursorException(String message) {
+			super(message);
+		}
+	}
+
+	private final String field;
+	private final boolean descending;
+	//null on the first page
+	private final Object lastValue;
+	private final ORID lastRid;
+
+	private QueryCursor(String field, boolean descending, Object lastValue, ORID lastRid) {
+		this.field = field;
+		this.descending = descending;
+		this.lastValue = lastValue;
+		this.lastRid = lastRid;
+	}
+
+	/**
+	 * @param token the cursor received by the client, empty for the first page
+	 * @param orderBy the orderBy parameter of the query, if any. When the token is not empty it must match the sort of the token
+	 */
+	public static QueryCursor parse(String token, String orderBy) {
+		String field = RID;
+		boolean descending = false;
+		if (!StringUtils.isBlank(orderBy)) {
+			Matcher m = ORDER_BY.matcher(orderBy);
+			if (!m.matches()) throw new InvalidCursorException("cursor supports only one orderBy field, optionally followed by asc or desc");
+			field = RID.equalsIgnoreCase(m.group(1)) ? RID : m.group(1);
+			descending = "desc".equalsIgnoreCase(m.group(2));
+		}
+		if (StringUtils.isBlank(token)) return new QueryCursor(field, descending, null, null);
+
+		JsonNode node;
+		try {
+			node = mapper.readTree(Base64.decodeBase64(token));
+		} catch (IOException | RuntimeException e) {
+			node = null;
+		}
+		if (node == null || !node.isObject() || !node.has("f") || !node.has("r")) throw new InvalidCursorException("cursor is not valid");
+		String tokenField = node.get("f").asText();
+		boolean tokenDescending = node.path("d").asBoolean(false);
+		if (!StringUtils.isBlank(orderBy) && (!tokenField.equals(field) || tokenDescending != descending))
+			throw new InvalidCursorException("orderBy cannot change while paginating with a cursor");
+		if (!ORDER_BY.matcher(tokenField).matches()) throw new InvalidCursorException("cursor is not valid");
+		ORID rid;
+		try {
+			rid = new ORecordId(node.get("r").asText());
+		} catch (RuntimeException e) {
+			throw new InvalidCursorException("cursor is not valid");
+		}
+		Object value = null;
+		if (!RID.equals(tokenField)) value = decodeValue(node.get("t"), node.get("v"));
+		return new QueryCursor(tokenField, tokenDescending, value, rid);
+	}
+
+	public boolean isFirstPage() {
+		return lastRid == null;
+	}
+
+	/**
+	 * @return the condition selecting the records after the cursor. It has to be ANDed with the where clause of the query
+	 */
+	public String getPredicate() {
+		if (RID.equals(field)) {
+			return isFirstPage() ? "" : "@rid " + (descending ? "<" : ">") + " ?";
+		}
+		if (isFirstPage()) return field + " is not null";
+		//the range on the key can use an index, the records with the last key already returned are filtered out
+		return field + " " + (descending ? "<=" : ">=") + " ? and not (" + field + " = ? and @rid " + (descending ? ">=" : "<=") + " ?)";
+	}
+
+	/**
+	 * @return the positional parameters of the {@link #getPredicate()} condition
+	 */
+	public Object[] getPredicateParams() {
+		if (isFirstPage()) return new Object[]{};
+		if (RID.equals(field)) return new Object[]{lastRid};
+		return new Object[]{lastValue, lastValue, lastRid};
+	}
+
+	public String getOrderBy() {
+		String dir = descending ? " desc" : " asc";
+		if (RID.equals(field)) return RID + dir;
+		return field + dir + ", " + RID + dir;
+	}
+
+	/**
+	 * Builds the token to retrieve the records that follow the given one
+	 * @param last the last record of the current page
+	 */
+	public String next(ODocument last) {
+		ObjectNode node = mapper.createObjectNode();
+		node.put("f", field);
+		if (descending) node.put("d", true);
+		node.put("r", last.getIdentity().toString());
+		if (!RID.equals(field)) encodeValue(node, last.field(field));
+		try {
+			return Base64.encodeBase64URLSafeString(mapper.writeValueAsBytes(node));
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static void encodeValue(ObjectNode node, Object value) {
+		if (value instanceof String) {
+			node.put("t", "s");
+			node.put("v", (String) value);
+		} else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte || value instanceof BigInteger) {
+			node.put("t", "l");
+			node.put("v", ((Number) value).longValue());
+		} else if (value instanceof Float || value instanceof Double) {
+			node.put("t", "d");
+			node.put("v", ((Number) value).doubleValue());
+		} else if (value instanceof BigDecimal) {
+			node.put("t", "n");
+			node.put("v", value.toString());
+		} else if (value instanceof Date) {
+			node.put("t", "t");
+			node.put("v", ((Date) value).getTime());
+		} else if (value instanceof Boolean) {
+			node.put("t", "b");
+			node.put("v", ((Boolean) value).booleanValue());
+		} else {
+			throw new InvalidCursorException("the orderBy field must be a string, a number, a date or a boolean to be used with a cursor");
+		}
+	}
+
+	private static Object decodeValue(JsonNode type, JsonNode value) {
+		if (type == null || value == null) throw new InvalidCursorException("cursor is not valid");
+		switch (type.asText()) {
+			case "s": return value.asText();
+			case "l": return value.asLong();
+			case "d": return value.asDouble();
+			case "n":
+				try {
+					return new BigDecimal(value.asText());
+				} catch (NumberFormatException e) {
+					throw new InvalidCursorException("cursor is not valid");
+				}
+			case "t": return new Date(value.asLong());
+			case "b": return value.asBoolean();
+			default: throw new InvalidCursorException("cursor is not valid");
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "QueryCursor [field=" + field + ", descending=" + descending + ", lastValue=" + lastValue + ", lastRid=" + lastRid + "]";
+	}
+}
@@ -19,6 +19,7 @@ package com.baasbox.util;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import com.fasterxml.jackson.databind.JsonNode;
@@ -29,6 +30,7 @@ import org.apache.commons.lang3.StringUtils;
 import com.baasbox.BBConfiguration;
 
 import com.baasbox.service.logging.BaasBoxLogger;
+import com.orientechnologies.orient.core.record.impl.ODocument;
 
 
 public class QueryParams implements IQueryParametersKeys{
@@ -42,6 +44,7 @@ public class QueryParams implements IQueryParametersKeys{
 	private String orderBy="";
 	private Integer depth=new Integer(BBConfiguration.configuration.getString(BBConfiguration.QUERY_RECORD_DEPTH));;
 	private Object[] params={};
+	private QueryCursor cursor=null;
 
 
 	protected QueryParams(){};
@@ -171,6 +174,13 @@ public class QueryParams implements IQueryParametersKeys{
 		return skip;
 	}
 	
+	/**
+	 * @return the keyset pagination cursor, null if the query is paginated by page and skip
+	 */
+	public QueryCursor getCursor() {
+		return cursor;
+	}
+	
 	/**
 	 * @return the params
 	 */
@@ -194,6 +204,7 @@ public class QueryParams implements IQueryParametersKeys{
 				+ (groupBy != null ? "groupBy=" + groupBy + ", " : "")		
 				+ (orderBy != null ? "orderBy=" + orderBy + ", " : "")
 				+ (depth != null ? "depth=" + depth + " " : "")
+				+ (cursor != null ? ", cursor=" + cursor + " " : "")
 				+ "]";
 	}
 
@@ -243,6 +254,42 @@ public class QueryParams implements IQueryParametersKeys{
 		return this;
 	}
 	
+	/***
+	 * Switches the query to keyset pagination: the predicate of the cursor is ANDed to the where clause (its parameters are appended to the current ones),
+	 * the sort is replaced by the one of the cursor and page and skip are ignored. Call it after the where clause and the params have been set.
+	 * The count of the records returns the number of the records following the cursor
+	 * @param cursor
+	 * @return
+	 */
+	public QueryParams cursor(QueryCursor cursor){
+		this.cursor=cursor;
+		if (cursor==null) return this;
+		String predicate=cursor.getPredicate();
+		if (!StringUtils.isEmpty(predicate)){
+			this.where=StringUtils.isEmpty(this.where) ? predicate : "( " + this.where + " ) and ( " + predicate + " )";
+			Object[] cursorParams=cursor.getPredicateParams();
+			Object[] oldParams=this.params==null ? new Object[]{} : this.params;
+			Object[] newParams=new Object[oldParams.length+cursorParams.length];
+			System.arraycopy(oldParams,0,newParams,0,oldParams.length);
+			System.arraycopy(cursorParams,0,newParams,oldParams.length,cursorParams.length);
+			this.params=newParams;
+		}
+		this.orderBy=cursor.getOrderBy();
+		this.page=0;
+		this.skip=null;
+		return this;
+	}
+	
+	/***
+	 * Returns the token to retrieve the page following the given one
+	 * @param records the records returned by the query
+	 * @return the token, or null if the query does not use a cursor or there are no more records
+	 */
+	public String nextCursor(List<ODocument> records){
+		if (cursor==null || records==null || records.isEmpty() || records.size()<recordPerPage) return null;
+		return cursor.next(records.get(records.size()-1));
+	}
+	
 	public static QueryParams getInstance(){
 		return new QueryParams();
 	}
@@ -300,6 +347,7 @@ public class QueryParams implements IQueryParametersKeys{
 		String depthFromQS=null;
 		String countFromQS=null;
 		String skipFromQS=null;
+		String cursorFromQS=null;
 		
 		if (BaasBoxLogger.isTraceEnabled()) BaasBoxLogger.trace("Method Start");
 //		Map <String,String[]> queryString = header.queryString();
@@ -323,6 +371,8 @@ public class QueryParams implements IQueryParametersKeys{
 			countFromQS=queryString.get(IQueryParametersKeys.COUNT)[0];
 		if (queryString.get(IQueryParametersKeys.SKIP)!=null)
 			skipFromQS=queryString.get(IQueryParametersKeys.SKIP)[0];
+		if (queryString.get(IQueryParametersKeys.CURSOR)!=null)
+			cursorFromQS=queryString.get(IQueryParametersKeys.CURSOR)[0];
 		
 		params = queryString.get(IQueryParametersKeys.PARAMS);
 		
@@ -356,6 +406,12 @@ public class QueryParams implements IQueryParametersKeys{
 			throw new NumberFormatException(IQueryParametersKeys.SKIP + " parameter must be a valid Integer");
 		}	
 		QueryParams qryp = new QueryParams(fields,groupBy,where, page, recordPerPage, orderBy, depth,params,count,skip);
+		if (cursorFromQS!=null){
+			//projections and groupings do not return the @rid of the records
+			if (!StringUtils.isEmpty(fields) || !StringUtils.isEmpty(groupBy))
+				throw new QueryCursor.InvalidCursorException(IQueryParametersKeys.CURSOR + " parameter cannot be used with " + IQueryParametersKeys.FIELDS + " or " + IQueryParametersKeys.GROUP_BY);
+			qryp.cursor(QueryCursor.parse(cursorFromQS, orderBy));
+		}
 		
 		if (BaasBoxLogger.isTraceEnabled()) BaasBoxLogger.trace("Method End");
 		
@@ -155,3 +155,17 @@ create property _BB_Script._invalid boolean;
 alter property _BB_Script._invalid mandatory=true;
 alter property _BB_Script._invalid notnull=true;
 create index _BB_Script.name unique;
+
+--push devices: one record for each os/pushToken pair, linked to the owner
+create class _BB_Device;
+create property _BB_Device.os String;
+alter property _BB_Device.os mandatory=true;
+alter property _BB_Device.os notnull=true;
+create property _BB_Device.pushToken String;
+alter property _BB_Device.pushToken mandatory=true;
+alter property _BB_Device.pushToken notnull=true;
+create property _BB_Device.user link _BB_User;
+alter property _BB_Device.user mandatory=true;
+alter property _BB_Device.user notnull=true;
+create index _BB_Device.os_pushToken on _BB_Device (os, pushToken) unique;
+create index _BB_Device.user notunique;
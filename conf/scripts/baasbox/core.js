@@ -598,6 +598,22 @@ Documents.grant = function(coll,id,permissions){
 
 
 
+Documents.bulk = function(coll,operations,batchSize){
+    if(!(coll && operations instanceof Array)){
+        throw new TypeError("you must specify a collection and an array of operations");
+    }
+    var params = {
+        collection: coll,
+        operations: operations
+    };
+    if(batchSize){
+        params.batchSize = batchSize;
+    }
+    return _command({resource: 'documents',
+                     name: 'bulk',
+                     params: params});
+};
+
 Documents.save = function(){
     var coll = null,
         obj = null,
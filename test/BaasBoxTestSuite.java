@@ -34,6 +34,7 @@ import org.junit.runners.Suite;
 		AdminUserFunctionalTest.class,
 		DocumentCMDFunctionalTest.class
 		,DocumentCountFunctionalTest.class,
+		DocumentBulkFunctionalTest.class,
 		DocumentListFunctionalTest.class,
 		UserAssetGetTest.class,
 		UserChangePasswordTest.class,
@@ -0,0 +1,150 @@
+import static play.test.Helpers.DELETE;
+import static play.test.Helpers.GET;
+import static play.test.Helpers.HTMLUNIT;
+import static play.test.Helpers.POST;
+import static play.test.Helpers.PUT;
+import static play.test.Helpers.running;
+
+import java.util.UUID;
+
+import javax.ws.rs.core.MediaType;
+
+import org.apache.http.HttpHeaders;
+import org.junit.Test;
+
+import play.libs.F.Callback;
+import play.libs.Json;
+import play.mvc.Http.Status;
+import play.test.TestBrowser;
+
+import com.baasbox.service.permissions.Tags;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import core.AbstractDocumentTest;
+import core.TestConfig;
+
+public class DocumentBulkFunctionalTest extends AbstractDocumentTest
+{
+	@Override
+	public String getRouteAddress()
+	{
+		return SERVICE_ROUTE + TestConfig.TEST_COLLECTION_NAME + "/bulk";
+	}
+
+	@Override
+	public String getMethod()
+	{
+		return POST;
+	}
+
+	@Override
+	protected void assertContent(String s)
+	{
+	}
+
+	@Test
+	public void testServerBulk()
+	{
+		running
+		(
+			getTestServer(),
+			HTMLUNIT,
+			new Callback<TestBrowser>()
+			{
+				public void invoke(TestBrowser browser)
+				{
+					String sFakeCollection = new AdminCollectionFunctionalTest().routeCreateCollection();
+
+					ArrayNode operations = Json.newObject().arrayNode();
+					ObjectNode create = operations.addObject();
+					create.put("op", "create");
+					create.put("data", getPayload("/documentCreatePayload.json"));
+					create = operations.addObject();
+					create.put("op", "create");
+					create.put("data", getPayload("/documentCreatePayload.json"));
+					ObjectNode delete = operations.addObject();
+					delete.put("op", "delete");
+					delete.put("id", UUID.randomUUID().toString());
+
+					setHeader(TestConfig.KEY_APPCODE, TestConfig.VALUE_APPCODE);
+					setHeader(TestConfig.KEY_AUTH, TestConfig.AUTH_ADMIN_ENC);
+					setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON);
+					httpRequest(getURLAddress(sFakeCollection) + "/bulk?batchSize=2", POST, operations);
+					assertServer("testServerBulk", Status.OK, "\"index\":1,\"op\":\"create\"", true);
+					assertServer("testServerBulk - missing document", Status.OK, "\"status\":404", true);
+
+					setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_FORM_URLENCODED);
+					httpRequest(getURLAddress(sFakeCollection) + "/count", GET);
+					assertServer("testServerBulk - count", Status.OK, "\"count\":2", true);
+				}
+			}
+		);
+	}
+
+	@Test
+	public void testServerBulkMissingOperation()
+	{
+		running
+		(
+			getTestServer(),
+			HTMLUNIT,
+			new Callback<TestBrowser>()
+			{
+				public void invoke(TestBrowser browser)
+				{
+					String sFakeCollection = new AdminCollectionFunctionalTest().routeCreateCollection();
+
+					setHeader(TestConfig.KEY_APPCODE, TestConfig.VALUE_APPCODE);
+					setHeader(TestConfig.KEY_AUTH, TestConfig.AUTH_ADMIN_ENC);
+					setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON);
+					httpRequest(getURLAddress(sFakeCollection) + "/bulk", POST, "/documentCreatePayload.json");
+					assertServer("testServerBulkMissingOperation", Status.OK, "\"status\":400", true);
+				}
+			}
+		);
+	}
+
+	@Test
+	public void testServerBulkWithUpdateDisabled()
+	{
+		running
+		(
+			getTestServer(),
+			HTMLUNIT,
+			new Callback<TestBrowser>()
+			{
+				public void invoke(TestBrowser browser)
+				{
+					String sFakeCollection = new AdminCollectionFunctionalTest().routeCreateCollection();
+					String sFakeUser = createNewUser("bulkUser");
+					String sEndpoint = TestConfig.SERVER_URL + "/admin/endpoints/" + Tags.Reserved.STORAGE_UPDATE.name + "/enabled";
+
+					setHeader(TestConfig.KEY_APPCODE, TestConfig.VALUE_APPCODE);
+					setHeader(TestConfig.KEY_AUTH, TestConfig.AUTH_ADMIN_ENC);
+					httpRequest(sEndpoint, DELETE);
+					assertServer("testServerBulkWithUpdateDisabled - disable update", Status.OK, null, false);
+					try
+					{
+						ArrayNode operations = Json.newObject().arrayNode();
+						ObjectNode create = operations.addObject();
+						create.put("op", "create");
+						create.put("data", getPayload("/documentCreatePayload.json"));
+
+						setHeader(TestConfig.KEY_AUTH, TestConfig.encodeAuth(sFakeUser, "passw1"));
+						setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON);
+						httpRequest(getURLAddress(sFakeCollection) + "/bulk", POST, operations);
+						assertServer("testServerBulkWithUpdateDisabled", Status.FORBIDDEN, null, false);
+					}
+					finally
+					{
+						removeHeader(HttpHeaders.CONTENT_TYPE);
+						setHeader(TestConfig.KEY_AUTH, TestConfig.AUTH_ADMIN_ENC);
+						httpRequest(sEndpoint, PUT);
+						assertServer("testServerBulkWithUpdateDisabled - enable update", Status.OK, null, false);
+					}
+				}
+			}
+		);
+	}
+}
@@ -21,6 +21,8 @@ import static play.test.Helpers.DELETE;
 import static play.test.Helpers.GET;
 import static play.test.Helpers.HTMLUNIT;
 import static play.test.Helpers.POST;
+import static play.test.Helpers.contentAsString;
+import static play.test.Helpers.header;
 import static play.test.Helpers.PUT;
 import static play.test.Helpers.routeAndCall;
 import static play.test.Helpers.running;
@@ -426,9 +428,38 @@ public class DocumentCMDFunctionalTest extends AbstractDocumentTest
 					Result result = routeAndCall(request);
 					assertRoute(result, "testAccessDocumentsWithoutAuth.revoke", Status.BAD_REQUEST, "The body payload cannot be empty.", true);
 				}
-			});					
+			});
 	}
-	
+
+	@Test
+	public void testRouteNotModified(){
+		running
+		(
+			getFakeApplication(),
+			new Runnable() 	{
+				public void run() {
+					String sFakeCollection = new AdminCollectionFunctionalTest().routeCreateCollection();
+					Result result = routeCreateDocument(getRouteAddress(sFakeCollection));
+					assertRoute(result, "testRouteNotModified CREATE", Status.OK, null, true);
+					String sUUID = getUuid(result);
+
+					result = routeGetDocument(getRouteAddress(sFakeCollection) + "/" + sUUID);
+					assertRoute(result, "testRouteNotModified GET", Status.OK, null, true);
+					String sETag = header(HttpHeaders.ETAG, result);
+					Assert.assertNotNull("testRouteNotModified: the ETag header is missing", sETag);
+
+					FakeRequest request = new FakeRequest(GET, getRouteAddress(sFakeCollection) + "/" + sUUID);
+					request = request.withHeader(TestConfig.KEY_APPCODE, TestConfig.VALUE_APPCODE);
+					request = request.withHeader(TestConfig.KEY_AUTH, TestConfig.AUTH_ADMIN_ENC);
+					request = request.withHeader(HttpHeaders.IF_NONE_MATCH, sETag);
+					result = routeAndCall(request);
+					assertRoute(result, "testRouteNotModified GET If-None-Match", Status.NOT_MODIFIED, null, false);
+					Assert.assertEquals("testRouteNotModified: a 304 must not have a body", "", contentAsString(result));
+					Assert.assertNull("testRouteNotModified: a 304 must not be wrapped", header(HttpHeaders.CONTENT_TYPE, result));
+				}
+			});
+	}
+
 	@Test
 	public void testServerCMDDocument()
 	{
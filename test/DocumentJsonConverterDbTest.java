@@ -0,0 +1,149 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static play.test.Helpers.fakeApplication;
+import static play.test.Helpers.running;
+
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.commons.lang.exception.ExceptionUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.baasbox.db.DbHelper;
+import com.baasbox.service.scripting.ScriptingService;
+import com.baasbox.service.scripting.js.Json;
+import com.baasbox.service.storage.BaasBoxPrivateFields;
+import com.baasbox.service.storage.CollectionService;
+import com.baasbox.service.storage.DocumentService;
+import com.baasbox.util.DocumentJsonConverter;
+import com.baasbox.util.JSONFormats;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.orientechnologies.orient.core.db.record.OIdentifiable;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+
+/**
+ * Checks that {@link DocumentJsonConverter} writes the documents as the public JSON format of OrientDB does,
+ * and that the documents it reads back keep their field types
+ */
+public class DocumentJsonConverterDbTest {
+    private static final String COLLECTION = "converter_test_" + UUID.randomUUID().toString().replace("-", "_");
+    private static final String SCRIPT = "test.converter_" + ScriptTestHelpers.randomScriptName();
+
+    @BeforeClass
+    public static void init(){
+        running(fakeApplication(), () -> {
+            ScriptTestHelpers.createScript(SCRIPT, "scripts/local_storage_test.js");
+            try {
+                DbHelper.open("1234567890", "admin", "admin");
+                CollectionService.create(COLLECTION);
+            } catch (Throwable e) {
+                fail(ExceptionUtils.getFullStackTrace(e));
+            } finally {
+                DbHelper.close(DbHelper.getConnection());
+            }
+        });
+    }
+
+    private static ODocument createDocument() throws Throwable{
+        ODocument target = DocumentService.create(COLLECTION, (ObjectNode) Json.mapper().readTree("{\"name\":\"target\"}"));
+        ObjectNode body = (ObjectNode) Json.mapper().readTree("{\"title\":\"a\",\"votes\":3,\"views\":12345678901234,\"price\":1.5,"
+                + "\"ok\":true,\"none\":null,\"author\":{\"name\":\"b\",\"tags\":[\"x\"]},\"tags\":[\"x\",2,{\"y\":true}]}");
+        body.put("link", target.getIdentity().toString());
+        ODocument doc = DocumentService.create(COLLECTION, body);
+        doc.field("created", new Date());
+        doc.save();
+        return DbHelper.getConnection().load(doc.getIdentity());
+    }
+
+    @Test
+    public void sameJsonAsThePublicFormat(){
+        running(fakeApplication(), () -> {
+            try {
+                DbHelper.open("1234567890", "admin", "admin");
+                ODocument doc = createDocument();
+                assertTrue(doc.field("link") instanceof OIdentifiable);
+
+                ObjectNode expected = (ObjectNode) Json.mapper().readTree(JSONFormats.prepareDocToJson(doc, JSONFormats.Formats.DOCUMENT_PUBLIC));
+                expected.remove(BaasBoxPrivateFields.getHiddenFields());
+                JsonNode actual = Json.mapper().readTree(DocumentJsonConverter.toJson(doc, true).toString());
+                assertEquals(expected, actual);
+
+                for (String hidden : BaasBoxPrivateFields.getHiddenFields()){
+                    assertFalse(hidden, actual.has(hidden));
+                }
+                assertEquals(doc.getIdentity().toString(), actual.path("@rid").asText());
+                assertEquals(doc.getVersion(), actual.path("@version").asInt());
+                assertEquals(COLLECTION, actual.path("@class").asText());
+                assertEquals(((OIdentifiable) doc.field("link")).getIdentity().toString(), actual.path("link").asText());
+            } catch (Throwable e) {
+                fail(ExceptionUtils.getFullStackTrace(e));
+            } finally {
+                DbHelper.close(DbHelper.getConnection());
+            }
+        });
+    }
+
+    @Test
+    public void roundTripKeepsTypes(){
+        running(fakeApplication(), () -> {
+            try {
+                DbHelper.open("1234567890", "admin", "admin");
+                ODocument doc = createDocument();
+                ODocument copy = DocumentJsonConverter.toDocument(DocumentJsonConverter.toJson(doc, false), false);
+                for (String name : new String[]{"title", "votes", "views", "price", "ok", "link"}){
+                    if (doc.field(name) instanceof OIdentifiable){
+                        assertTrue(name, copy.field(name) instanceof ORecordId);
+                        assertEquals(name, ((OIdentifiable) doc.field(name)).getIdentity(), copy.field(name));
+                    } else {
+                        assertEquals(name, ((Object) doc.field(name)).getClass(), ((Object) copy.field(name)).getClass());
+                        assertEquals(name, doc.field(name), copy.field(name));
+                    }
+                }
+                assertTrue(((ODocument) copy.field("author")).isEmbedded());
+                assertEquals(3, ((List<?>) copy.field("tags")).size());
+                assertEquals(doc.getVersion(), copy.getVersion());
+            } catch (Throwable e) {
+                fail(ExceptionUtils.getFullStackTrace(e));
+            } finally {
+                DbHelper.close(DbHelper.getConnection());
+            }
+        });
+    }
+
+    @Test
+    public void pluginStorageRoundTrip(){
+        running(fakeApplication(), () -> {
+            try {
+                DbHelper.open("1234567890", "admin", "admin");
+                ODocument target = DocumentService.create(COLLECTION, (ObjectNode) Json.mapper().readTree("{\"name\":\"target\"}"));
+                ObjectNode data = (ObjectNode) Json.mapper().readTree("{\"count\":1,\"ratio\":0.25,\"nested\":{\"list\":[1,\"a\"]}}");
+                data.put("link", target.getIdentity().toString());
+                ScriptingService.resetStore(SCRIPT, data);
+
+                ODocument stored = ScriptingService.getStore(SCRIPT);
+                JsonNode json = DocumentJsonConverter.toJson(stored, false);
+                //an update that leaves the storage as it is must not change it
+                ScriptingService.swap(SCRIPT, (current) -> current);
+                ODocument swapped = ScriptingService.getStore(SCRIPT);
+
+                assertTrue(swapped.field("link") instanceof OIdentifiable);
+                assertEquals(target.getIdentity(), ((OIdentifiable) swapped.field("link")).getIdentity());
+                assertEquals(((Object) stored.field("ratio")).getClass(), ((Object) swapped.field("ratio")).getClass());
+                assertEquals(Json.mapper().readTree(json.toString()),
+                        Json.mapper().readTree(DocumentJsonConverter.toJson(swapped, false).toString()));
+                assertEquals(1, json.path("count").asInt());
+                assertEquals("a", json.path("nested").path("list").path(1).asText());
+            } catch (Throwable e) {
+                fail(ExceptionUtils.getFullStackTrace(e));
+            } finally {
+                DbHelper.close(DbHelper.getConnection());
+            }
+        });
+    }
+}
@@ -19,27 +19,43 @@
 
 import static play.test.Helpers.GET;
 import static play.test.Helpers.HTMLUNIT;
+import static play.test.Helpers.POST;
 import static play.test.Helpers.fakeApplication;
 import static play.test.Helpers.routeAndCall;
 import static play.test.Helpers.running;
 import static play.test.Helpers.testServer;
 
+import java.util.HashSet;
+import java.util.Set;
+
 import javax.ws.rs.core.MediaType;
 
 import org.apache.http.HttpHeaders;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Assert;
 import org.junit.Test;
 
 import play.libs.F.Callback;
+import play.libs.Json;
 import play.mvc.Result;
 import play.mvc.Http.Status;
 import play.test.FakeRequest;
 import play.test.TestBrowser;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
 import core.AbstractDocumentTest;
 import core.TestConfig;
 
 
 public class DocumentListFunctionalTest extends AbstractDocumentTest
 {
+	//the documents in the streamed collection, several chunks of output
+	private static final int STREAMED_DOCUMENTS = 1000;
+
 	@Override
 	public String getRouteAddress()
 	{
@@ -149,6 +165,71 @@ public class DocumentListFunctionalTest extends AbstractDocumentTest
 		);
 	}
 
+	@Test
+	public void testServerListDocumentsStream()
+	{
+		running
+		(
+			getTestServer(), 
+			HTMLUNIT, 
+			new Callback<TestBrowser>() 
+	        {
+				public void invoke(TestBrowser browser) 
+				{
+					String sFakeCollection = new AdminCollectionFunctionalTest().serverCreateCollection();
+					
+					serverCreateDocument(getURLAddress(sFakeCollection));
+					assertServer("testServerListDocumentsStream CREATE document in fake collection", Status.OK, null, true);
+					serverCreateDocument(getURLAddress(sFakeCollection));
+					assertServer("testServerListDocumentsStream CREATE second document in fake collection", Status.OK, null, true);
+
+					// Enough documents to fill several chunks
+					ArrayNode operations = Json.newObject().arrayNode();
+					for (int i = 0; i < STREAMED_DOCUMENTS - 2; i++)
+					{
+						ObjectNode create = operations.addObject();
+						create.put("op", "create");
+						create.put("data", getPayload("/documentCreatePayload.json"));
+					}
+					setHeader(TestConfig.KEY_APPCODE, TestConfig.VALUE_APPCODE);
+					setHeader(TestConfig.KEY_AUTH, TestConfig.AUTH_ADMIN_ENC);
+					setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON);
+					httpRequest(getURLAddress(sFakeCollection) + "/bulk", POST, operations);
+					assertServer("testServerListDocumentsStream CREATE documents in bulk", Status.OK, null, false);
+
+					// Test streamed list of documents
+					setHeader(TestConfig.KEY_APPCODE, TestConfig.VALUE_APPCODE);
+					setHeader(TestConfig.KEY_AUTH, TestConfig.AUTH_ADMIN_ENC);
+					setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_FORM_URLENCODED);
+					httpRequest(getURLAddress(sFakeCollection) + "?stream=true", getMethod());
+					assertServer("testServerListDocumentsStream not empty collection", Status.OK, null, true);
+					try
+					{
+						JSONArray data = ((JSONObject)toJSON(getResponse())).getJSONArray("data");
+						Assert.assertEquals("testServerListDocumentsStream: documents streamed", STREAMED_DOCUMENTS, data.length());
+						Set<String> ids = new HashSet<String>();
+						for (int i = 0; i < data.length(); i++)
+						{
+							ids.add(data.getJSONObject(i).getString("id"));
+						}
+						Assert.assertEquals("testServerListDocumentsStream: distinct documents streamed", STREAMED_DOCUMENTS, ids.size());
+					}
+					catch (JSONException e)
+					{
+						Assert.fail("testServerListDocumentsStream: the streamed body is not valid: " + e.getMessage());
+					}
+					
+					// Test streamed list of a collection that does not exist
+					setHeader(TestConfig.KEY_APPCODE, TestConfig.VALUE_APPCODE);
+					setHeader(TestConfig.KEY_AUTH, TestConfig.AUTH_ADMIN_ENC);
+					setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_FORM_URLENCODED);
+					httpRequest(TestConfig.SERVER_URL + SERVICE_ROUTE + COLLECTION_NOT_EXIST + "?stream=true", getMethod());
+					assertServer("testServerListDocumentsStream bad collection", Status.NOT_FOUND, TestConfig.MSG_INVALID_COLLECTION, true);
+				}
+	        }
+		);
+	}
+
 	@Test
 	public void testServerListDocumentsBadCollection()
 	{
@@ -117,6 +117,29 @@ public class PushSendTest extends AbstractTest {
 					result = routeAndCall(request);
 					assertRoute(result,"testSendPushWithNewApi - ok", 200, null, true);
 					
+					//send push notifications in background
+					node = updatePayloadFieldValue("/pushPayloadWithoutProfileSpecifiedWithUser.json", "users", new String[]{sFakeUser});
+					request = new FakeRequest("POST", "/push/message?async=true");
+					request = request.withHeader(TestConfig.KEY_APPCODE, TestConfig.VALUE_APPCODE);
+					request = request.withHeader(TestConfig.KEY_AUTH,TestConfig.encodeAuth(sFakeUserNotAccess, sPwd));
+					request = request.withJsonBody(node,"POST");
+					result = routeAndCall(request);
+					assertRoute(result,"testSendPushAsync - queued", Status.ACCEPTED, "\"id\":\"", true);
+					String jobId = Json.parse(play.test.Helpers.contentAsString(result)).get("data").get("id").textValue();
+					
+					request = new FakeRequest("GET", "/push/job/" + jobId);
+					request = request.withHeader(TestConfig.KEY_APPCODE, TestConfig.VALUE_APPCODE);
+					request = request.withHeader(TestConfig.KEY_AUTH,TestConfig.encodeAuth(sFakeUserNotAccess, sPwd));
+					result = routeAndCall(request);
+					assertRoute(result,"testSendPushAsync - job status", 200, "\"id\":\""+jobId+"\"", true);
+					
+					//the job is not visible to other users
+					request = new FakeRequest("GET", "/push/job/" + jobId);
+					request = request.withHeader(TestConfig.KEY_APPCODE, TestConfig.VALUE_APPCODE);
+					request = request.withHeader(TestConfig.KEY_TOKEN, sessionToken);
+					result = routeAndCall(request);
+					assertRoute(result,"testSendPushAsync - job of another user", 404, null, false);
+					
 					//test verbose for admins
 					node = updatePayloadFieldValue("/pushPayloadWithoutProfileSpecifiedWithUser.json", "users", new String[]{sFakeUser});
 					request = new FakeRequest("POST", "/push/message?verbose=true");
@@ -8,6 +8,7 @@ import static play.test.Helpers.contentAsString;
 import static play.test.Helpers.fakeApplication;
 import static play.test.Helpers.routeAndCall;
 import static play.test.Helpers.running;
+import static play.test.Helpers.status;
 
 import java.util.Date;
 import java.util.UUID;
@@ -22,7 +23,9 @@ import play.test.FakeRequest;
 import com.baasbox.db.DbHelper;
 import com.baasbox.service.scripting.js.Json;
 import com.baasbox.service.storage.CollectionService;
+import com.baasbox.service.storage.DocumentService;
 import com.baasbox.service.user.UserService;
+import com.baasbox.util.QueryParams;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -95,6 +98,41 @@ public class ScriptsAdminAndTransactionsTest {
 
 
 
+    @Test
+    public void bulkFailureRollsBackTheTransaction(){
+        running(fakeApplication(),()->{
+            try {
+                String collName = "script-bulk-collection-"+UUID.randomUUID();
+                DbHelper.open("1234567890", "admin", "admin");
+                try {
+                    CollectionService.create(collName);
+                } finally {
+                    DbHelper.close(DbHelper.getConnection());
+                }
+
+                ObjectNode node = Json.mapper().createObjectNode();
+                node.put("collection",collName);
+                node.put("op","bulk");
+                FakeRequest req = new FakeRequest(POST,"/plugin/"+TEST_TRANSACT);
+                req = req.withHeader(TestConfig.KEY_APPCODE,TestConfig.VALUE_APPCODE);
+                req = req.withHeader(TestConfig.KEY_AUTH,TestConfig.encodeAuth(USER,USER));
+                req = req.withJsonBody(node);
+                Result res = routeAndCall(req);
+                assertTrue(contentAsString(res), status(res)!=200);
+
+                //neither the document saved before the bulk nor the one created by it are kept
+                DbHelper.open("1234567890", "admin", "admin");
+                try {
+                    assertEquals(0, DocumentService.getCount(collName, QueryParams.getInstance()));
+                } finally {
+                    DbHelper.close(DbHelper.getConnection());
+                }
+            }catch (Throwable e){
+                fail(ExceptionUtils.getStackTrace(e));
+            }
+        });
+    }
+
     @Test
     public void testCanUserSwitchToAdmin(){
         running(fakeApplication(),()->{
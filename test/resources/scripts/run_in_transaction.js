@@ -19,6 +19,19 @@ http().post(function(e){
           }
 
         return {status: 200, content: doc};
+    } else if('bulk' == op) {
+          try{
+              Box.DB.beginTransaction();
+              Box.Documents.save(coll,{doc: 'before bulk'});
+              Box.Documents.bulk(coll,[{op: 'create', data: {doc: 'bulk'}},
+                                       {op: 'delete', id: 'missing'}]);
+              Box.DB.commit();
+          }catch (e){
+              Box.DB.rollback();
+              throw e;
+          }
+
+        return {status: 200, content: 'committed'};
     } else{
         return {status: 400, content: 'wrong operation'};
     }
@@ -0,0 +1,64 @@
+package unit;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.baasbox.util.ByteLruCache;
+
+public class ByteLruCacheTest {
+
+    @Test
+    public void evictsLeastRecentlyUsed(){
+        ByteLruCache cache = new ByteLruCache(10, 10, false);
+        cache.put("a", new byte[4]);
+        cache.put("b", new byte[4]);
+        assertNotNull(cache.get("a"));
+        cache.put("c", new byte[4]);
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("c"));
+        assertEquals(8, cache.getBytes());
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void skipsLargeEntries(){
+        ByteLruCache cache = new ByteLruCache(100, 5, false);
+        cache.put("a", new byte[6]);
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.getBytes());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void replacesEntries(){
+        ByteLruCache cache = new ByteLruCache(100, 100, false);
+        cache.put("a", new byte[10]);
+        cache.put("a", new byte[3]);
+        assertEquals(3, cache.getBytes());
+        assertEquals(1, cache.getSize());
+    }
+
+    @Test
+    public void offHeapCopies(){
+        ByteLruCache cache = new ByteLruCache(100, 100, true);
+        cache.put("a", new byte[]{1, 2, 3});
+        byte[] first = cache.get("a");
+        first[0] = 9;
+        assertArrayEquals(new byte[]{1, 2, 3}, cache.get("a"));
+        assertEquals(2, cache.getHits());
+    }
+
+    @Test
+    public void invalidatesByPrefix(){
+        ByteLruCache cache = new ByteLruCache(100, 100, false);
+        cache.put("app/asset/logo/1/", new byte[5]);
+        cache.put("app/asset/logo/1/100-100", new byte[5]);
+        cache.put("app/asset/logo2/1/", new byte[5]);
+        cache.invalidatePrefix("app/asset/logo/");
+        assertEquals(1, cache.getSize());
+        assertEquals(5, cache.getBytes());
+        assertNotNull(cache.get("app/asset/logo2/1/"));
+    }
+}
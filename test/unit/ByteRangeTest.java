@@ -0,0 +1,73 @@
+package unit;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.baasbox.util.ByteRange;
+
+public class ByteRangeTest {
+
+    @Test
+    public void noHeaderMeansTheWholeContent(){
+        assertNull(ByteRange.parse(null, 100));
+        assertNull(ByteRange.parse("", 100));
+    }
+
+    @Test
+    public void closedRange(){
+        ByteRange range = ByteRange.parse("bytes=10-19", 100);
+        assertTrue(range.isSatisfiable());
+        assertEquals(10, range.getStart());
+        assertEquals(19, range.getEnd());
+        assertEquals(10, range.getLength());
+        assertEquals("bytes 10-19/100", range.toContentRange());
+    }
+
+    @Test
+    public void openRangeEndsWithTheContent(){
+        ByteRange range = ByteRange.parse("bytes=90-", 100);
+        assertEquals(90, range.getStart());
+        assertEquals(99, range.getEnd());
+        range = ByteRange.parse("bytes=90-1000", 100);
+        assertEquals(99, range.getEnd());
+    }
+
+    @Test
+    public void suffixRange(){
+        ByteRange range = ByteRange.parse("bytes=-30", 100);
+        assertEquals(70, range.getStart());
+        assertEquals(99, range.getEnd());
+        range = ByteRange.parse("bytes=-300", 100);
+        assertEquals(0, range.getStart());
+    }
+
+    @Test
+    public void unsatisfiableRange(){
+        ByteRange range = ByteRange.parse("bytes=100-", 100);
+        assertFalse(range.isSatisfiable());
+        assertEquals("bytes */100", range.toContentRange());
+        assertFalse(ByteRange.parse("bytes=-0", 100).isSatisfiable());
+    }
+
+    @Test
+    public void unsupportedRangesAreIgnored(){
+        assertNull(ByteRange.parse("bytes=0-10,20-30", 100));
+        assertNull(ByteRange.parse("items=0-10", 100));
+        assertNull(ByteRange.parse("bytes=20-10", 100));
+        assertNull(ByteRange.parse("bytes=-", 100));
+        assertNull(ByteRange.parse("bytes=99999999999999999999-", 100));
+    }
+
+    @Test
+    public void ifRange(){
+        assertTrue(ByteRange.ifRangeMatches(null, "\"a\"", 0));
+        assertTrue(ByteRange.ifRangeMatches("\"a\"", "\"a\"", 0));
+        assertFalse(ByteRange.ifRangeMatches("\"b\"", "\"a\"", 0));
+        assertFalse(ByteRange.ifRangeMatches("W/\"a\"", "W/\"a\"", 0));
+        assertTrue(ByteRange.ifRangeMatches("Thu, 01 Jan 2015 00:00:00 GMT", null, 1420070400500L));
+        assertFalse(ByteRange.ifRangeMatches("Thu, 01 Jan 2015 00:00:00 GMT", null, 1420070401000L));
+        assertFalse(ByteRange.ifRangeMatches("Thu, 01 Jan 2015 00:00:00 GMT", null, 0));
+        assertFalse(ByteRange.ifRangeMatches("yesterday", null, 1420070400000L));
+    }
+}
@@ -0,0 +1,73 @@
+package unit;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import com.baasbox.dao.ChunkedInputStream;
+
+public class ChunkedInputStreamTest {
+
+    private static byte[] content(int length){
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++) content[i] = (byte) i;
+        return content;
+    }
+
+    private static InputStream stream(final byte[] content, final int chunkSize, final List<Integer> loaded){
+        return new ChunkedInputStream(content.length, chunkSize, index -> {
+            loaded.add(index);
+            int from = index * chunkSize;
+            return Arrays.copyOfRange(content, from, Math.min(from + chunkSize, content.length));
+        });
+    }
+
+    @Test
+    public void readsTheWholeContent() throws IOException {
+        byte[] content = content(1000);
+        List<Integer> loaded = new ArrayList<Integer>();
+        assertArrayEquals(content, IOUtils.toByteArray(stream(content, 64, loaded)));
+        assertEquals(16, loaded.size());
+    }
+
+    @Test
+    public void readsByteByByte() throws IOException {
+        byte[] content = content(10);
+        InputStream in = stream(content, 3, new ArrayList<Integer>());
+        for (int i = 0; i < 10; i++) assertEquals(i, in.read());
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void skippingDoesNotLoadChunks() throws IOException {
+        byte[] content = content(1000);
+        List<Integer> loaded = new ArrayList<Integer>();
+        InputStream in = stream(content, 100, loaded);
+        assertEquals(550, in.skip(550));
+        byte[] range = new byte[100];
+        IOUtils.readFully(in, range);
+        assertArrayEquals(Arrays.copyOfRange(content, 550, 650), range);
+        assertEquals(Arrays.asList(5, 6), loaded);
+        assertEquals(350, in.skip(1000));
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void emptyContent() throws IOException {
+        List<Integer> loaded = new ArrayList<Integer>();
+        assertEquals(0, IOUtils.toByteArray(stream(new byte[]{}, 10, loaded)).length);
+        assertTrue(loaded.isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void aMissingChunkIsAnError() throws IOException {
+        IOUtils.toByteArray(new ChunkedInputStream(100, 10, index -> index < 5 ? new byte[10] : null));
+    }
+}
@@ -0,0 +1,84 @@
+package unit;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.baasbox.util.DocumentJsonConverter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+
+public class DocumentJsonConverterTest {
+
+    private static JsonNode json(String s) throws Exception{
+        return new ObjectMapper().readTree(s);
+    }
+
+    @Test
+    public void scalarsAndNesting() throws Exception{
+        ODocument doc = DocumentJsonConverter.toDocument(json("{\"title\":\"a\",\"votes\":3,\"price\":1.5,\"ok\":true,\"none\":null,"
+                + "\"author\":{\"name\":\"b\"},\"tags\":[\"x\",{\"y\":1}]}"), false);
+        assertEquals("a", doc.field("title"));
+        assertEquals(3, ((Number)doc.field("votes")).intValue());
+        assertEquals(1.5, ((Number)doc.field("price")).doubleValue(), 0);
+        assertEquals(Boolean.TRUE, doc.field("ok"));
+        assertTrue(doc.containsField("none"));
+        assertNull(doc.field("none"));
+
+        ODocument author = doc.field("author");
+        assertEquals("b", author.field("name"));
+        assertTrue(author.isEmbedded());
+
+        List<Object> tags = doc.field("tags");
+        assertEquals("x", tags.get(0));
+        assertTrue(((ODocument)tags.get(1)).isEmbedded());
+    }
+
+    @Test
+    public void privateFieldsAndVersion() throws Exception{
+        JsonNode body = json("{\"@version\":4,\"id\":\"abc\",\"_author\":\"me\",\"_allow\":[],\"title\":\"a\"}");
+        ODocument skipped = DocumentJsonConverter.toDocument(body, true);
+        assertEquals(4, skipped.getVersion());
+        assertFalse(skipped.containsField("id"));
+        assertFalse(skipped.containsField("_author"));
+        assertFalse(skipped.containsField("_allow"));
+        assertEquals("a", skipped.field("title"));
+
+        ODocument kept = DocumentJsonConverter.toDocument(body, false);
+        assertEquals("abc", kept.field("id"));
+        assertFalse(kept.containsField("@version"));
+    }
+
+    @Test
+    public void sameTypesAsFromJSON() throws Exception{
+        String body = "{\"link\":\"#12:3\",\"notALink\":\"#12\",\"links\":[\"#12:4\"],"
+                + "\"small\":1.5,\"precise\":0.12345678901234,\"count\":7,\"big\":12345678901234}";
+        ODocument doc = DocumentJsonConverter.toDocument(json(body), false);
+        ODocument parsed = new ODocument().fromJSON(body);
+        assertEquals(new ORecordId(12, 3), doc.field("link"));
+        assertEquals("#12", doc.field("notALink"));
+        assertTrue(((List<?>)doc.field("links")).get(0) instanceof ORecordId);
+        for (String name : new String[]{"link", "notALink", "small", "precise", "count", "big"}){
+            assertEquals(name, parsed.field(name), doc.field(name));
+            assertEquals(name, ((Object)parsed.field(name)).getClass(), ((Object)doc.field(name)).getClass());
+        }
+    }
+
+    @Test
+    public void embeddedVersionIsIgnored() throws Exception{
+        ODocument doc = DocumentJsonConverter.toDocument(json("{\"author\":{\"@version\":0,\"name\":\"b\"}}"), false);
+        ODocument author = doc.field("author");
+        assertTrue(author.isEmbedded());
+        assertEquals("b", author.field("name"));
+        assertFalse(author.containsField("@version"));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void requiresAnObject() throws Exception{
+        DocumentJsonConverter.toDocument(json("[1,2]"), false);
+    }
+}
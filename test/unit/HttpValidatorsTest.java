@@ -0,0 +1,44 @@
+package unit;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.baasbox.util.HttpValidators;
+
+public class HttpValidatorsTest {
+
+    private static final long JAN_1_2015 = 1420070400000L;
+
+    @Test
+    public void httpDates(){
+        assertEquals("Thu, 01 Jan 2015 00:00:00 GMT", HttpValidators.formatHttpDate(JAN_1_2015 + 999));
+        assertEquals(JAN_1_2015, HttpValidators.parseHttpDate("Thu, 01 Jan 2015 00:00:00 GMT"));
+        assertEquals(-1, HttpValidators.parseHttpDate("yesterday"));
+    }
+
+    @Test
+    public void ifNoneMatch(){
+        assertTrue(HttpValidators.isNotModified("\"a\"", null, "\"a\"", 0));
+        assertTrue(HttpValidators.isNotModified("\"b\", \"a\"", null, "\"a\"", 0));
+        assertTrue(HttpValidators.isNotModified("W/\"a\"", null, "\"a\"", 0));
+        assertTrue(HttpValidators.isNotModified("*", null, "\"a\"", 0));
+        assertFalse(HttpValidators.isNotModified("\"b\"", null, "\"a\"", 0));
+        assertFalse(HttpValidators.isNotModified("\"a\"", null, null, 0));
+    }
+
+    @Test
+    public void ifNoneMatchTakesPrecedence(){
+        assertFalse(HttpValidators.isNotModified("\"b\"", "Thu, 01 Jan 2015 00:00:00 GMT", "\"a\"", JAN_1_2015));
+    }
+
+    @Test
+    public void ifModifiedSince(){
+        assertTrue(HttpValidators.isNotModified(null, "Thu, 01 Jan 2015 00:00:00 GMT", "\"a\"", JAN_1_2015 + 500));
+        assertTrue(HttpValidators.isNotModified(null, "Thu, 01 Jan 2015 00:00:10 GMT", "\"a\"", JAN_1_2015));
+        assertFalse(HttpValidators.isNotModified(null, "Thu, 01 Jan 2015 00:00:00 GMT", "\"a\"", JAN_1_2015 + 1000));
+        assertFalse(HttpValidators.isNotModified(null, "Thu, 01 Jan 2015 00:00:00 GMT", "\"a\"", 0));
+        assertFalse(HttpValidators.isNotModified(null, "not a date", "\"a\"", JAN_1_2015));
+        assertFalse(HttpValidators.isNotModified(null, null, "\"a\"", JAN_1_2015));
+    }
+}
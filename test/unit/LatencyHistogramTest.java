@@ -0,0 +1,80 @@
+package unit;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.baasbox.metrics.BaasBoxMetric;
+import com.baasbox.metrics.LatencyHistogram;
+import com.baasbox.metrics.PrometheusExporter;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void emptyHistogram(){
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtQuantile(0.99));
+    }
+
+    @Test
+    public void smallValuesAreExact(){
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) histogram.record(i);
+        assertEquals(50, histogram.getValueAtQuantile(0.5));
+        assertEquals(95, histogram.getValueAtQuantile(0.95));
+        assertEquals(100, histogram.getValueAtQuantile(1));
+        assertEquals(5050, histogram.getSum());
+        assertEquals(100, histogram.getMax());
+    }
+
+    @Test
+    public void largeValuesWithinPrecision(){
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) histogram.record(i * 1000L);
+        assertWithin(500000, histogram.getValueAtQuantile(0.5));
+        assertWithin(990000, histogram.getValueAtQuantile(0.99));
+        assertWithin(999000, histogram.getValueAtQuantile(0.999));
+        assertEquals(1000000, histogram.getValueAtQuantile(1));
+    }
+
+    @Test
+    public void outOfRangeValues(){
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(0, histogram.getValueAtQuantile(0.5));
+        assertEquals((1L << 36) - 1, histogram.getValueAtQuantile(1));
+    }
+
+    @Test
+    public void routeTemplates(){
+        assertEquals("/document/:collection/:id", BaasBoxMetric.Track.routeTemplate("/document/$collection<[^/]+>/$id<[^/]+>"));
+        assertEquals("/file/:id", BaasBoxMetric.Track.routeTemplate("/file/$id<.+>"));
+        assertEquals("/users", BaasBoxMetric.Track.routeTemplate("/users"));
+        assertEquals("unmatched", BaasBoxMetric.Track.routeTemplate(null));
+    }
+
+    @Test
+    public void unmatchedRoutesShareOneKey(){
+        assertEquals("GET /document/:collection", BaasBoxMetric.Track.routeKey("GET", "/document/$collection<[^/]+>"));
+        assertEquals(BaasBoxMetric.UNMATCHED_ROUTE, BaasBoxMetric.Track.routeKey("FOO", null));
+        assertEquals(BaasBoxMetric.UNMATCHED_ROUTE, BaasBoxMetric.Track.routeKey("BAR", ""));
+    }
+
+    @Test
+    public void prometheusRouteLabels(){
+        assertEquals("method=\"GET\",route=\"/document/:collection\"", PrometheusExporter.routeLabels("GET /document/:collection"));
+        assertEquals("method=\"\",route=\"unmatched\"", PrometheusExporter.routeLabels(BaasBoxMetric.UNMATCHED_ROUTE));
+    }
+
+    @Test
+    public void prometheusNames(){
+        assertEquals("baasbox_requests_counter_200", PrometheusExporter.metricName("requests.counter.200"));
+        assertEquals("a\\\"b\\\\c", PrometheusExporter.escapeLabel("a\"b\\c"));
+    }
+
+    private static void assertWithin(long expected, long actual){
+        assertTrue(actual + " is not within 2% of " + expected, Math.abs(actual - expected) <= expected / 50);
+    }
+}
@@ -0,0 +1,87 @@
+package unit;
+
+import static org.junit.Assert.*;
+
+import java.util.Date;
+
+import org.junit.Test;
+
+import com.baasbox.util.QueryCursor;
+import com.orientechnologies.orient.core.id.OClusterPositionFactory;
+import com.orientechnologies.orient.core.id.ORecordId;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+
+public class QueryCursorTest {
+
+    private static ODocument record(int cluster, long position, String field, Object value){
+        ODocument doc = new ODocument();
+        doc.setIdentity(cluster, OClusterPositionFactory.INSTANCE.valueOf(position));
+        if (field != null) doc.field(field, value);
+        return doc;
+    }
+
+    @Test
+    public void firstPageByRid(){
+        QueryCursor cursor = QueryCursor.parse("", null);
+        assertTrue(cursor.isFirstPage());
+        assertEquals("", cursor.getPredicate());
+        assertEquals(0, cursor.getPredicateParams().length);
+        assertEquals("@rid asc", cursor.getOrderBy());
+    }
+
+    @Test
+    public void nextPageByRid(){
+        String token = QueryCursor.parse("", null).next(record(12, 40, null, null));
+        QueryCursor cursor = QueryCursor.parse(token, null);
+        assertFalse(cursor.isFirstPage());
+        assertEquals("@rid > ?", cursor.getPredicate());
+        assertArrayEquals(new Object[]{new ORecordId(12, OClusterPositionFactory.INSTANCE.valueOf(40))}, cursor.getPredicateParams());
+    }
+
+    @Test
+    public void nextPageBySortKey(){
+        QueryCursor first = QueryCursor.parse(null, "name desc");
+        assertEquals("name is not null", first.getPredicate());
+        assertEquals("name desc, @rid desc", first.getOrderBy());
+
+        String token = first.next(record(9, 3, "name", "john"));
+        QueryCursor cursor = QueryCursor.parse(token, null);
+        assertEquals("name <= ? and not (name = ? and @rid >= ?)", cursor.getPredicate());
+        Object[] params = cursor.getPredicateParams();
+        assertEquals("john", params[0]);
+        assertEquals("john", params[1]);
+        assertEquals("#9:3", params[2].toString());
+        assertEquals("name desc, @rid desc", cursor.getOrderBy());
+    }
+
+    @Test
+    public void sortValuesKeepTheirType(){
+        Date now = new Date();
+        QueryCursor byDate = QueryCursor.parse(QueryCursor.parse("", "_creation_date").next(record(9, 3, "_creation_date", now)), "_creation_date");
+        assertEquals(now, byDate.getPredicateParams()[0]);
+        QueryCursor byNumber = QueryCursor.parse(QueryCursor.parse("", "age").next(record(9, 3, "age", 42)), "age asc");
+        assertEquals(42L, byNumber.getPredicateParams()[0]);
+        assertEquals("age >= ? and not (age = ? and @rid <= ?)", byNumber.getPredicate());
+    }
+
+    @Test(expected = QueryCursor.InvalidCursorException.class)
+    public void orderByCannotChange(){
+        String token = QueryCursor.parse("", "name").next(record(9, 3, "name", "john"));
+        QueryCursor.parse(token, "surname");
+    }
+
+    @Test(expected = QueryCursor.InvalidCursorException.class)
+    public void multipleSortFieldsAreRejected(){
+        QueryCursor.parse("", "name, surname");
+    }
+
+    @Test(expected = QueryCursor.InvalidCursorException.class)
+    public void garbageToken(){
+        QueryCursor.parse("dasndainasas", null);
+    }
+
+    @Test(expected = QueryCursor.InvalidCursorException.class)
+    public void unsupportedSortValue(){
+        QueryCursor.parse("", "address").next(record(9, 3, "address", new ODocument().field("city", "Rome")));
+    }
+}
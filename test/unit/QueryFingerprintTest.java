@@ -0,0 +1,41 @@
+package unit;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.baasbox.db.QueryStats;
+
+public class QueryFingerprintTest {
+
+    @Test
+    public void stripsLiterals(){
+        assertEquals("select from post where title = ? and votes > ?",
+                QueryStats.fingerprint("select from post where title = 'it''s' and votes > 10"));
+        assertEquals("select from post where title = ?",
+                QueryStats.fingerprint("SELECT FROM post WHERE title = \"a \\\" b\""));
+        assertEquals("select from post where price < ?", QueryStats.fingerprint("select from post where price < 10.5"));
+    }
+
+    @Test
+    public void sameQueryDifferentValues(){
+        assertEquals(QueryStats.fingerprint("select from post where id = 'a' skip 0 limit 10"),
+                QueryStats.fingerprint("select  from post\n where id = 'b' skip 20 limit 50"));
+    }
+
+    @Test
+    public void keepsIdentifiers(){
+        assertEquals("select field1, _bb_post2 from post2", QueryStats.fingerprint("select field1, _bb_post2 from post2"));
+    }
+
+    @Test
+    public void recordIdsAndLists(){
+        assertEquals("select from ? where tag in [?]", QueryStats.fingerprint("select from #12:3 where tag in ['a', 'b', 'c']"));
+        assertEquals("select from post where id in (?)", QueryStats.fingerprint("select from post where id in (?, ?,?)"));
+    }
+
+    @Test
+    public void nullStatement(){
+        assertEquals("", QueryStats.fingerprint(null));
+    }
+}
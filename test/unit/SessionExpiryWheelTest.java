@@ -0,0 +1,72 @@
+package unit;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.baasbox.security.Session;
+import com.baasbox.security.SessionExpiryWheel;
+
+public class SessionExpiryWheelTest {
+
+    private static Session session(String token, long expireTime){
+        return new Session(token, "1234567890", "user", "password", expireTime);
+    }
+
+    //expires the sessions whose expire time is passed
+    private static int advance(SessionExpiryWheel wheel, long now, List<String> expired){
+        return wheel.advance(now, s -> {
+            if (s.getExpireTime() >= now) return false;
+            expired.add(s.getToken());
+            return true;
+        });
+    }
+
+    @Test
+    public void expiresOnlyAfterTheExpireTime(){
+        SessionExpiryWheel wheel = new SessionExpiryWheel(16, 1000, 0);
+        wheel.schedule(session("a", 5500));
+        List<String> expired = new ArrayList<String>();
+        assertEquals(0, advance(wheel, 5000, expired));
+        assertEquals(0, advance(wheel, 5900, expired));
+        assertEquals(1, advance(wheel, 6000, expired));
+        assertEquals("a", expired.get(0));
+    }
+
+    @Test
+    public void sessionsDueInALaterRevolutionAreKept(){
+        SessionExpiryWheel wheel = new SessionExpiryWheel(4, 1000, 0);
+        wheel.schedule(session("a", 10500));
+        List<String> expired = new ArrayList<String>();
+        for (long now = 1000; now <= 10000; now += 1000) {
+            assertEquals(0, advance(wheel, now, expired));
+        }
+        assertEquals(1, advance(wheel, 11000, expired));
+    }
+
+    @Test
+    public void catchesUpAfterALongPause(){
+        SessionExpiryWheel wheel = new SessionExpiryWheel(8, 1000, 0);
+        wheel.schedule(session("a", 1500));
+        wheel.schedule(session("b", 3500));
+        wheel.schedule(session("c", 100000));
+        List<String> expired = new ArrayList<String>();
+        assertEquals(2, advance(wheel, 50000, expired));
+        assertTrue(expired.contains("a"));
+        assertTrue(expired.contains("b"));
+        assertEquals(1, advance(wheel, 101000, expired));
+        assertEquals("c", expired.get(2));
+    }
+
+    @Test
+    public void sizeIsRoundedToAPowerOfTwo(){
+        SessionExpiryWheel wheel = new SessionExpiryWheel(5, 1000, 0);
+        wheel.schedule(session("a", 7500));
+        List<String> expired = new ArrayList<String>();
+        assertEquals(0, advance(wheel, 7000, expired));
+        assertEquals(1, advance(wheel, 8000, expired));
+    }
+}
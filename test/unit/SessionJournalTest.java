@@ -0,0 +1,160 @@
+package unit;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.baasbox.security.Session;
+import com.baasbox.security.SessionJournal;
+
+public class SessionJournalTest {
+
+    private static final UnaryOperator<String> ENCRYPT = s -> new StringBuilder(s).reverse().toString();
+    private static final UnaryOperator<String> DECRYPT = ENCRYPT;
+
+    private File file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = File.createTempFile("sessions", ".journal");
+        file.delete();
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+        new File(file.getPath() + ".tmp").delete();
+    }
+
+    private static Session session(String token, String username, long expireTime){
+        return new Session(token, "1234567890", username, "pwd-" + username, expireTime);
+    }
+
+    private SessionJournal reopen(SessionJournal journal, List<Session> restored) throws IOException {
+        journal.close();
+        SessionJournal newJournal = new SessionJournal(file, ENCRYPT, DECRYPT);
+        restored.addAll(newJournal.open());
+        return newJournal;
+    }
+
+    @Test
+    public void sessionsSurviveReopening() throws IOException {
+        SessionJournal journal = new SessionJournal(file, ENCRYPT, DECRYPT);
+        assertTrue(journal.open().isEmpty());
+        journal.appendCreated(session("t1", "user1", 1000));
+        journal.appendCreated(session("t2", "user2", 2000));
+        journal.appendCreated(session("t3", "user1", 3000));
+        journal.appendRemoved(session("t2", "user2", 2000));
+
+        List<Session> restored = new java.util.ArrayList<Session>();
+        journal = reopen(journal, restored);
+        assertEquals(2, restored.size());
+        assertEquals("t1", restored.get(0).getToken());
+        assertEquals("pwd-user1", restored.get(0).getPassword());
+        assertEquals(1000, restored.get(0).getExpireTime());
+        assertEquals("t3", restored.get(1).getToken());
+        assertEquals(4, journal.getRecords());
+        journal.close();
+    }
+
+    @Test
+    public void passwordsAreNotWrittenInClear() throws IOException {
+        SessionJournal journal = new SessionJournal(file, ENCRYPT, DECRYPT);
+        journal.open();
+        journal.appendCreated(session("t1", "secret", 1000));
+        journal.close();
+        byte[] content = java.nio.file.Files.readAllBytes(file.toPath());
+        assertFalse(new String(content, "ISO-8859-1").contains("pwd-secret"));
+    }
+
+    @Test
+    public void compactionKeepsOnlyTheGivenSessions() throws IOException {
+        SessionJournal journal = new SessionJournal(file, ENCRYPT, DECRYPT);
+        journal.open();
+        for (int i = 0; i < 100; i++) journal.appendCreated(session("t" + i, "user", i));
+        journal.compact(Arrays.asList(session("t5", "user", 5), session("t7", "user", 7)));
+        assertEquals(2, journal.getRecords());
+        journal.appendCreated(session("t200", "user", 200));
+
+        List<Session> restored = new java.util.ArrayList<Session>();
+        journal = reopen(journal, restored);
+        assertEquals(3, restored.size());
+        assertEquals("t5", restored.get(0).getToken());
+        assertEquals("t7", restored.get(1).getToken());
+        assertEquals("t200", restored.get(2).getToken());
+        journal.close();
+    }
+
+    @Test
+    public void removalsDuringCompactionAreKept() throws Exception {
+        final SessionJournal journal = new SessionJournal(file, ENCRYPT, DECRYPT);
+        journal.open();
+        journal.appendCreated(session("t5", "user", 5));
+        journal.appendCreated(session("t7", "user", 7));
+        final Thread logout = new Thread(() -> {
+            try {
+                journal.appendRemoved(session("t5", "user", 5));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        journal.compact(() -> {
+            //the logout happens after the snapshot: it must wait for the rewrite and land in the new journal
+            logout.start();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Arrays.asList(session("t5", "user", 5), session("t7", "user", 7));
+        });
+        logout.join();
+
+        List<Session> restored = new java.util.ArrayList<Session>();
+        SessionJournal reopened = reopen(journal, restored);
+        assertEquals(1, restored.size());
+        assertEquals("t7", restored.get(0).getToken());
+        reopened.close();
+    }
+
+    @Test
+    public void aTornRecordEndsTheJournal() throws IOException {
+        SessionJournal journal = new SessionJournal(file, ENCRYPT, DECRYPT);
+        journal.open();
+        journal.appendCreated(session("t1", "user", 1));
+        journal.appendCreated(session("t2", "user", 2));
+        journal.close();
+        //corrupts the length of the second record
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(4);
+            int firstLength = raf.readInt();
+            raf.seek(4 + 4 + firstLength);
+            raf.writeInt(Integer.MAX_VALUE);
+        }
+        journal = new SessionJournal(file, ENCRYPT, DECRYPT);
+        List<Session> restored = journal.open();
+        assertEquals(1, restored.size());
+        //new records overwrite the torn one
+        journal.appendCreated(session("t3", "user", 3));
+        List<Session> again = new java.util.ArrayList<Session>();
+        journal = reopen(journal, again);
+        assertEquals(2, again.size());
+        assertEquals("t3", again.get(1).getToken());
+        journal.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void notAJournal() throws IOException {
+        java.nio.file.Files.write(file.toPath(), "hello world".getBytes("UTF-8"));
+        new SessionJournal(file, ENCRYPT, DECRYPT).open();
+    }
+}